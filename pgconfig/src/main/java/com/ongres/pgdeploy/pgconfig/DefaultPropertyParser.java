@@ -24,14 +24,17 @@
  */
 package com.ongres.pgdeploy.pgconfig;
 
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.ongres.pgdeploy.pgconfig.properties.DataType;
 import com.ongres.pgdeploy.pgconfig.properties.Property;
 import com.ongres.pgdeploy.pgconfig.properties.Unit;
 
+import java.io.BufferedReader;
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Map;
@@ -39,17 +42,28 @@ import java.util.Optional;
 import java.util.regex.Pattern;
 import java.util.stream.Stream;
 
- 
+/**
+ * Parses properties against the catalog in <tt>pgprops.csv</tt>. The catalog is read only once,
+ * the first time it is needed, and kept in memory as an immutable index keyed by property name,
+ * so every call to {@link #parse(String)} returns the same {@link Property} instance for the same
+ * name.
+ *
+ * <p>Each line of the catalog is <tt>name|unit|type|context</tt>, where the unit is the one of
+ * values given without unit, maybe with a size like <tt>8kB</tt>, and the context is the one
+ * reported by <tt>pg_settings</tt>. Only <tt>postmaster</tt> (and <tt>internal</tt>, which can't
+ * be changed anyway) properties need a restart to be applied; the rest are applied on reload.
+ */
 public class DefaultPropertyParser implements PropertyParser {
 
   private static String delimiter = "|";
 
-  protected static final Path file = Paths.get(
-      DefaultPropertyParser.class.getProtectionDomain().getCodeSource().getLocation().getPath())
-      .resolve("pgprops.csv");
+  protected static final String catalogResource = "/pgprops.csv";
 
   private static final Map<String,DataType> typeFromString = typeFromString();
 
+  private static final ImmutableSet<String> restartContexts =
+      ImmutableSet.of("postmaster", "internal");
+
   private static final Map<String,DataType> typeFromString() {
     Map<String, DataType> result = new HashMap<>(6);
 
@@ -65,30 +79,68 @@ public class DefaultPropertyParser implements PropertyParser {
 
   @Override
   public Optional<Property> parse(String property) {
-    try {
-      Optional<String> optionalLine = Files.lines(file)
-          .filter(line -> line.startsWith(property + delimiter))
-          .findAny();
+    if (property == null) {
+      return Optional.empty();
+    }
+    return Optional.ofNullable(CatalogHolder.CATALOG.get(property));
+  }
 
-      if (!optionalLine.isPresent()) {
-        return Optional.empty();
-      }
+  /** Reads the whole catalog in one pass. If it can't be read, the catalog is empty, so every
+   * property is reported as not found, just as it happened when the file was scanned per call.
+   */
+  private static ImmutableMap<String, Property> loadCatalog() {
+    Map<String, Property> result = new HashMap<>(512);
 
-      String[] split = optionalLine.get().split(Pattern.quote(delimiter));
+    try (InputStream is = DefaultPropertyParser.class.getResourceAsStream(catalogResource)) {
+      if (is == null) {
+        return ImmutableMap.of();
+      }
 
-      DataType type = typeFromString.getOrDefault(split[2], DataType.STRING);
-      Unit unit = getUnitFromValue(split[1]);
+      BufferedReader reader =
+          new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8));
 
-      return Optional.of(
-          new Property(property, true, type, Unit.getListFromUnit(unit))
-      );
+      String line;
+      while ((line = reader.readLine()) != null) {
+        String[] split = line.split(Pattern.quote(delimiter), -1);
+        if (split.length < 3 || split[0].isEmpty()) {
+          continue;
+        }
 
+        //Keep the first declaration, as the former line scan did
+        result.putIfAbsent(split[0], propertyFromColumns(split));
+      }
     } catch (IOException e) {
-      return Optional.empty();
+      return ImmutableMap.of();
     }
+
+    return ImmutableMap.copyOf(result);
   }
 
-  private Unit getUnitFromValue(String value) {
+  private static Property propertyFromColumns(String[] split) {
+    DataType type = typeFromString.getOrDefault(split[2], DataType.STRING);
+    Unit unit = getUnitFromValue(split[1]);
+
+    //Without context, a restart is the safe choice
+    boolean needToRestart = split.length < 4 || restartContexts.contains(split[3]);
+
+    return new Property(split[0], needToRestart, type, Unit.getListFromUnit(unit), unit,
+        getUnitSizeFromValue(split[1], unit));
+  }
+
+  /** The number before the unit, like the 8 of <tt>8kB</tt>, or 1 when there is none. */
+  private static long getUnitSizeFromValue(String value, Unit unit) {
+    String size = value.substring(0, value.length() - unit.getUnitName().length()).trim();
+    if (size.isEmpty()) {
+      return 1;
+    }
+    try {
+      return Math.max(1, Long.parseLong(size));
+    } catch (NumberFormatException e) {
+      return 1;
+    }
+  }
+
+  private static Unit getUnitFromValue(String value) {
 
     Optional<Unit> chosenUnitOptional = Stream.of(Unit.values())
         .filter(unit -> value.endsWith(unit.getUnitName()))
@@ -109,4 +161,8 @@ public class DefaultPropertyParser implements PropertyParser {
   private static class SingletonHolder {
     private static final DefaultPropertyParser INSTANCE = new DefaultPropertyParser();
   }
+
+  private static class CatalogHolder {
+    private static final ImmutableMap<String, Property> CATALOG = loadCatalog();
+  }
 }
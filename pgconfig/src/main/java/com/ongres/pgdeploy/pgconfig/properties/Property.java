@@ -39,6 +39,8 @@ public class Property {
   private final boolean needToRestart;
   private final DataType type;
   private final ImmutableList<Unit> availableUnits;
+  private final Unit baseUnit;
+  private final long baseUnitSize;
 
 
   public String getName() {
@@ -57,12 +59,34 @@ public class Property {
     return availableUnits;
   }
 
+  /** The unit of the values given without one, {@link Unit}<tt>.NONE</tt> if there is none.
+   */
+  public Unit getBaseUnit() {
+    return baseUnit;
+  }
+
+  /** How many of {@link #getBaseUnit()} a value given without unit stands for, like 8 for the
+   * 8kB pages of <tt>shared_buffers</tt>.
+   */
+  public long getBaseUnitSize() {
+    return baseUnitSize;
+  }
+
   public Property(
       String name, boolean needToRestart, DataType type, ImmutableList<Unit> availableUnits) {
+    this(name, needToRestart, type, availableUnits, Unit.NONE, 1);
+  }
+
+  public Property(
+      String name, boolean needToRestart, DataType type, ImmutableList<Unit> availableUnits,
+      Unit baseUnit, long baseUnitSize) {
+    Preconditions.checkArgument(baseUnitSize > 0, "The size of the base unit must be positive");
     this.name = name;
     this.needToRestart = needToRestart;
     this.type = type;
     this.availableUnits = availableUnits;
+    this.baseUnit = Preconditions.checkNotNull(baseUnit);
+    this.baseUnitSize = baseUnitSize;
   }
 
   public static Property fromName(String name) {
@@ -90,6 +114,9 @@ public class Property {
     if (type != property.type) {
       return false;
     }
+    if (baseUnit != property.baseUnit || baseUnitSize != property.baseUnitSize) {
+      return false;
+    }
     return availableUnits.equals(property.availableUnits);
   }
 
@@ -99,6 +126,8 @@ public class Property {
     result = 31 * result + (needToRestart ? 1 : 0);
     result = 31 * result + type.hashCode();
     result = 31 * result + availableUnits.hashCode();
+    result = 31 * result + baseUnit.hashCode();
+    result = 31 * result + Long.hashCode(baseUnitSize);
     return result;
   }
 
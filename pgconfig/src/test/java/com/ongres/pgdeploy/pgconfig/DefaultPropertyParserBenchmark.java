@@ -0,0 +1,132 @@
+/*
+ * Copyright 2017, OnGres.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.ongres.pgdeploy.pgconfig;
+
+import com.ongres.pgdeploy.pgconfig.properties.DataType;
+import com.ongres.pgdeploy.pgconfig.properties.Property;
+import com.ongres.pgdeploy.pgconfig.properties.Unit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Compares the throughput of {@link DefaultPropertyParser#parse(String)} against the former
+ * implementation, which scanned <tt>pgprops.csv</tt> on every call. Each invocation parses every
+ * property in the catalog plus a missing one, which is what building a big config costs.
+ *
+ * <p>Run it from the test classpath, e.g. with
+ * <tt>mvn -pl pgconfig test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.ongres.pgdeploy.pgconfig.DefaultPropertyParserBenchmark</tt>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DefaultPropertyParserBenchmark {
+
+  private static final String missingProperty = "not_a_property";
+
+  private Path catalogFile;
+  private List<String> propertyNames;
+  private PropertyParser parser;
+
+  @Setup
+  public void setup() throws Exception {
+    catalogFile = Paths.get(DefaultPropertyParser.class
+        .getResource(DefaultPropertyParser.catalogResource).toURI());
+
+    propertyNames = Files.readAllLines(catalogFile).stream()
+        .map(line -> line.substring(0, line.indexOf('|')))
+        .collect(Collectors.toList());
+    propertyNames.add(missingProperty);
+
+    parser = DefaultPropertyParser.getInstance();
+  }
+
+  @Benchmark
+  public void indexedCatalog(Blackhole blackhole) {
+    for (String name : propertyNames) {
+      blackhole.consume(parser.parse(name));
+    }
+  }
+
+  @Benchmark
+  public void fileScanPerCall(Blackhole blackhole) throws IOException {
+    for (String name : propertyNames) {
+      blackhole.consume(scanCatalogFile(name));
+    }
+  }
+
+  /**
+   * The lookup as it was done before the catalog was indexed.
+   */
+  private Optional<Property> scanCatalogFile(String property) throws IOException {
+    Optional<String> optionalLine;
+    try (Stream<String> lines = Files.lines(catalogFile)) {
+      optionalLine = lines
+          .filter(line -> line.startsWith(property + "|"))
+          .findAny();
+    }
+
+    if (!optionalLine.isPresent()) {
+      return Optional.empty();
+    }
+
+    String[] split = optionalLine.get().split(Pattern.quote("|"));
+    DataType type = "integer".equals(split[2]) ? DataType.INTEGER : DataType.STRING;
+
+    return Optional.of(new Property(property, true, type, Unit.noneList));
+  }
+
+  public static void main(String[] args) throws Exception {
+    new Runner(new OptionsBuilder()
+        .include(DefaultPropertyParserBenchmark.class.getSimpleName())
+        .build())
+        .run();
+  }
+}
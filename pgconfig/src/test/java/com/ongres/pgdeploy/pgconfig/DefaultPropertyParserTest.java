@@ -70,18 +70,27 @@ public class DefaultPropertyParserTest {
     List<Object[]> result = new ArrayList<>();
 
     //We check all the units in the csv file: s, ms, kB, 8kB, min, 16MB
-    result.add(new Object []{"autovacuum_naptime", true, timeList, INTEGER, true});
-    result.add(new Object []{"autovacuum_vacuum_cost_delay", true, timeList, INTEGER, true});
-    result.add(new Object []{"autovacuum_work_mem", true, byteList, INTEGER, true});
-    result.add(new Object []{"effective_cache_size", true, byteList, INTEGER, true});
-    result.add(new Object []{"log_rotation_age", true, timeList, INTEGER, true});
-    result.add(new Object []{"min_wal_size", true, byteList, INTEGER, true});
+    result.add(new Object []{"autovacuum_naptime", false, timeList, INTEGER, true});
+    result.add(new Object []{"autovacuum_vacuum_cost_delay", false, timeList, INTEGER, true});
+    result.add(new Object []{"autovacuum_work_mem", false, byteList, INTEGER, true});
+    result.add(new Object []{"effective_cache_size", false, byteList, INTEGER, true});
+    result.add(new Object []{"log_rotation_age", false, timeList, INTEGER, true});
+    result.add(new Object []{"min_wal_size", false, byteList, INTEGER, true});
 
     //We check all the datatypes: double, boolean, string, enum (integers are above)
-    result.add(new Object []{"cursor_tuple_fraction", true, noneList, DOUBLE, true});
+    result.add(new Object []{"cursor_tuple_fraction", false, noneList, DOUBLE, true});
     result.add(new Object []{"data_checksums", true, noneList, BOOLEAN, true});
     result.add(new Object []{"data_directory", true, noneList, STRING, true});
-    result.add(new Object []{"client_min_messages", true, noneList, STRING, true});
+    result.add(new Object []{"client_min_messages", false, noneList, STRING, true});
+
+    //We check the contexts: postmaster and internal need a restart, the rest don't
+    result.add(new Object []{"shared_buffers", true, byteList, INTEGER, true});
+    result.add(new Object []{"port", true, noneList, INTEGER, true});
+    result.add(new Object []{"wal_segment_size", true, byteList, INTEGER, true});
+    result.add(new Object []{"archive_command", false, noneList, STRING, true});
+    result.add(new Object []{"log_connections", false, noneList, BOOLEAN, true});
+    result.add(new Object []{"log_min_duration_statement", false, timeList, INTEGER, true});
+    result.add(new Object []{"work_mem", false, byteList, INTEGER, true});
 
     //Test non-properties
     result.add(new Object []{"not a property", true, noneList, STRING, false});
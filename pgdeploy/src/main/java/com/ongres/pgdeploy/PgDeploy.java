@@ -39,6 +39,7 @@
 package com.ongres.pgdeploy;
 
 import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.ongres.pgdeploy.clusters.ConcretePostgresCluster;
 import com.ongres.pgdeploy.clusters.PostgresCluster;
 import com.ongres.pgdeploy.core.InstallationChecker;
@@ -55,21 +56,24 @@ import com.ongres.pgdeploy.core.router.DefaultRouter;
 import com.ongres.pgdeploy.core.router.Router;
 import com.ongres.pgdeploy.installations.BadClusterException;
 import com.ongres.pgdeploy.installations.ConcretePostgresInstallation;
+import com.ongres.pgdeploy.installations.InstallationCache;
 import com.ongres.pgdeploy.installations.PostgresInstallation;
 import com.ongres.pgdeploy.pgconfig.DefaultPropertyParser;
 import com.ongres.pgdeploy.pgconfig.PropertyParser;
+import com.ongres.pgdeploy.suppliers.SupplierRegistry;
 import net.jcip.annotations.Immutable;
 
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
-import java.util.ServiceLoader;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 /**
  * This class represents the entry point to the system. It allows for searching
@@ -79,14 +83,26 @@ import javax.annotation.Nonnull;
 @Immutable
 public class PgDeploy {
 
-  private final Iterable<PostgresInstallationSupplier> supplierCandidates;
+  private final SupplierRegistry registry;
 
   public PgDeploy() {
-    this(ServiceLoader.load(PostgresInstallationSupplier.class));
+    this(SupplierRegistry.fromClassLoader(defaultClassLoader()));
+  }
+
+  /** Creates an instance that finds suppliers in the given registry. Registries are thread safe,
+   * so a single one can be shared by many instances.
+   */
+  public PgDeploy(@Nonnull SupplierRegistry registry) {
+    this.registry = Preconditions.checkNotNull(registry);
   }
 
   protected PgDeploy(Iterable<PostgresInstallationSupplier> supplierCandidates) {
-    this.supplierCandidates = supplierCandidates;
+    this(SupplierRegistry.fromSuppliers(supplierCandidates));
+  }
+
+  private static ClassLoader defaultClassLoader() {
+    ClassLoader result = Thread.currentThread().getContextClassLoader();
+    return result != null ? result : PgDeploy.class.getClassLoader();
   }
 
 
@@ -126,8 +142,9 @@ public class PgDeploy {
 
 
   /** Searches the classpath seeking for an implementation of <tt>PostgresInstallationSupplier</tt>
-   * that complies to the requirements specified by the parameter. The method called for this matter
-   * is {@link PostgresInstallationSupplier#accepts(PostgresInstallationSupplierFeatures)}
+   * that complies to the requirements specified by the parameter. Suppliers are looked up in a
+   * {@link SupplierRegistry} by their features, and those that don't expose them are asked through
+   * {@link PostgresInstallationSupplier#accepts(PostgresInstallationSupplierFeatures)}
    * @param features Contains the features required for the desired supplier.
    * @return An optional value containing the supplier found, or <tt>Optional.empty()</tt> if
    *     no complying supplier has been found.
@@ -135,22 +152,52 @@ public class PgDeploy {
   public Optional<PostgresInstallationSupplier> findSupplier(
       PostgresInstallationSupplierFeatures features) {
 
-    final Iterator<PostgresInstallationSupplier> iterator = supplierCandidates.iterator();
-
-    PostgresInstallationSupplier supplierCandidate;
+    return registry.find(features);
+  }
 
-    while (iterator.hasNext()) {
-      supplierCandidate = iterator.next();
-      if (supplierCandidate.accepts(features)) {
-        return Optional.of(supplierCandidate);
-      }
-    }
 
-    return Optional.empty();
 
+  /** Searches for the supplier with the highest minor version of the given major version and
+   * platform, among the suppliers whose features are indexed.
+   * @param major Postgres major version (9.3 for 9.3.2)
+   * @param platform The OS platform, represented by the enum {@link Platform Platform}
+   * @return An optional value containing the supplier found, or <tt>Optional.empty()</tt> if
+   *     no complying supplier has been found.
+   */
+  public Optional<PostgresInstallationSupplier> findLatestSupplier(
+      @Nonnull PostgresMajorVersion major, @Nonnull Platform platform) {
+    return registry.findLatest(major, platform, null);
   }
 
+  /** Searches for the supplier with the highest minor version of the given major version,
+   * platform and extra version, among the suppliers whose features are indexed.
+   * @param major Postgres major version (9.3 for 9.3.2)
+   * @param platform The OS platform, represented by the enum {@link Platform Platform}
+   * @param extraVersion The tag of the desired versions
+   * @return An optional value containing the supplier found, or <tt>Optional.empty()</tt> if
+   *     no complying supplier has been found.
+   */
+  public Optional<PostgresInstallationSupplier> findLatestSupplier(
+      @Nonnull PostgresMajorVersion major, @Nonnull Platform platform, String extraVersion) {
+    return registry.findLatest(major, platform, extraVersion);
+  }
 
+  /** Lists, sorted by minor version, the features of the indexed suppliers of the given major
+   * version and platform whose minor version is between <tt>fromMinor</tt> and
+   * <tt>toMinor</tt>, both inclusive. Use {@link Integer#MAX_VALUE} as <tt>toMinor</tt> to list
+   * every minor from <tt>fromMinor</tt> on.
+   * @param major Postgres major version (9.3 for 9.3.2)
+   * @param platform The OS platform, represented by the enum {@link Platform Platform}
+   * @param fromMinor The lowest minor version
+   * @param toMinor The highest minor version
+   * @return The features found, which may be passed to
+   *     {@link #findSupplier(PostgresInstallationSupplierFeatures) findSupplier}
+   */
+  public List<PostgresInstallationSupplierFeatures> findAvailableFeatures(
+      @Nonnull PostgresMajorVersion major, @Nonnull Platform platform,
+      int fromMinor, int toMinor) {
+    return registry.findFeatures(major, platform, null, fromMinor, toMinor);
+  }
 
   /** Installs a specific postgres version in a folder
    * @param supplier the <tt>PostgresInstallationSupplier</tt>, typically obtained via
@@ -183,7 +230,23 @@ public class PgDeploy {
     Preconditions.checkNotNull(destination);
 
     List<PostgresInstallationFolder> folders = options.toFolderList();
-    supplier.unpackFolders(destination, folders);
+    ExecutorService executor = options.unpackParallelism > 1
+        ? Executors.newFixedThreadPool(options.unpackParallelism, new ThreadFactoryBuilder()
+            .setNameFormat("pgdeploy-unpack-%d").setDaemon(true).build())
+        : null;
+    try {
+      if (options.cache != null) {
+        options.cache.install(supplier, folders, destination, executor);
+      } else if (executor != null) {
+        supplier.unpackFolders(destination, folders, executor);
+      } else {
+        supplier.unpackFolders(destination, folders);
+      }
+    } finally {
+      if (executor != null) {
+        executor.shutdownNow();
+      }
+    }
     supplier.checkInstallation(destination, folders);
 
     return new ConcretePostgresInstallation(supplier, destination);
@@ -313,14 +376,20 @@ public class PgDeploy {
 
     private final boolean share;
     private final boolean include;
+    private final int unpackParallelism;
+    @Nullable
+    private final InstallationCache cache;
 
     private InstallOptions() {
-      this(false, false);
+      this(false, false, 1, null);
     }
 
-    private InstallOptions(boolean share, boolean include) {
+    private InstallOptions(boolean share, boolean include, int unpackParallelism,
+        @Nullable InstallationCache cache) {
       this.share = share;
       this.include = include;
+      this.unpackParallelism = unpackParallelism;
+      this.cache = cache;
     }
 
     /**
@@ -335,14 +404,34 @@ public class PgDeploy {
      * @return Itself
      */
     public InstallOptions withShare() {
-      return new InstallOptions(true, include);
+      return new InstallOptions(true, include, unpackParallelism, cache);
     }
 
     /** Returns a copy of itself with <tt>include</tt> set to true
      * @return Itself
      */
     public InstallOptions withInclude() {
-      return new InstallOptions(share, true);
+      return new InstallOptions(share, true, unpackParallelism, cache);
+    }
+
+    /** Returns a copy of itself that unpacks the binaries using <tt>threads</tt> threads, when the
+     * supplier's package format allows it. By default binaries are unpacked on the calling thread.
+     * @param threads The number of threads, at least 1
+     * @return Itself
+     */
+    public InstallOptions withUnpackParallelism(int threads) {
+      Preconditions.checkArgument(threads > 0, "At least one thread is required");
+      return new InstallOptions(share, include, threads, cache);
+    }
+
+    /** Returns a copy of itself that installs the binaries through <tt>cache</tt>, so that they
+     * are only unpacked the first time a supplier is installed.
+     * @param cache The cache of unpacked installations
+     * @return Itself
+     */
+    public InstallOptions withCache(@Nonnull InstallationCache cache) {
+      return new InstallOptions(share, include, unpackParallelism,
+          Preconditions.checkNotNull(cache));
     }
 
     List<PostgresInstallationFolder> toFolderList() {
@@ -0,0 +1,334 @@
+/*
+ * Copyright 2017, OnGres.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.ongres.pgdeploy.clusters;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.ongres.pgdeploy.wrappers.PostmasterPid;
+import com.ongres.pgdeploy.wrappers.exceptions.BadProcessExecutionException;
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/** Keeps a cluster running: it follows the postmaster through the pid in its postmaster.pid file,
+ * notices as soon as it exits and, if it was not stopped through this supervisor, starts it again
+ * as its {@link RestartPolicy} says.
+ *
+ * <p>Supervision starts with {@link #start()} or {@link #attach()}, and ends with {@link #stop()},
+ * which also stops the server, or with {@link #close()}, which leaves it as it is.
+ */
+@ThreadSafe
+public class ClusterSupervisor implements Closeable {
+
+  public enum State {
+    /** Not supervising, either not started yet, stopped or closed. */
+    STOPPED,
+    RUNNING,
+    /** The server exited and is waiting to be restarted. */
+    RESTARTING,
+    /** The server exited and the policy allows no more restarts. */
+    FAILED
+  }
+
+  /** How often the postmaster is checked on Java 8, where its exit is not notified. */
+  private static final Duration pollInterval = Duration.ofSeconds(1);
+
+  private final PostgresCluster cluster;
+  private final Path dataDirectory;
+  private final RestartPolicy policy;
+  @Nullable
+  private final Path logFile;
+  private final ScheduledExecutorService executor;
+  /** Held while starting or stopping the server, so a stop waits for a restart in flight. */
+  private final Object startStopLock = new Object();
+
+  @GuardedBy("this")
+  private State state = State.STOPPED;
+  @GuardedBy("this")
+  private boolean supervising;
+  @GuardedBy("this")
+  private PostmasterPid postmaster;
+  @GuardedBy("this")
+  private long postmasterSinceNanos;
+  @GuardedBy("this")
+  private CompletableFuture<PostmasterPid> exit = new CompletableFuture<>();
+  @GuardedBy("this")
+  private ScheduledFuture<?> pendingRestart;
+  @GuardedBy("this")
+  private int consecutiveRestarts;
+  @GuardedBy("this")
+  private long exitNanos;
+  @GuardedBy("this")
+  private int crashCount;
+  @GuardedBy("this")
+  private int restartCount;
+  @GuardedBy("this")
+  private int failedRestartCount;
+  @GuardedBy("this")
+  private Duration lastDowntime = Duration.ZERO;
+  @GuardedBy("this")
+  private Duration totalDowntime = Duration.ZERO;
+
+  ClusterSupervisor(@Nonnull PostgresCluster cluster, @Nonnull Path dataDirectory,
+      @Nonnull RestartPolicy policy, @Nullable Path logFile) {
+    this.cluster = Preconditions.checkNotNull(cluster);
+    this.dataDirectory = Preconditions.checkNotNull(dataDirectory);
+    this.policy = Preconditions.checkNotNull(policy);
+    this.logFile = logFile;
+    this.executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+        .setNameFormat("pgdeploy-supervisor-%d")
+        .setDaemon(true)
+        .build());
+  }
+
+  /** Starts the cluster and supervises it.
+   * @throws BadProcessExecutionException If the cluster can't be started
+   * @throws IOException If the cluster starts without writing its postmaster.pid file
+   * @throws InterruptedException If the start is interrupted
+   */
+  public void start() throws BadProcessExecutionException, IOException, InterruptedException {
+    synchronized (startStopLock) {
+      synchronized (this) {
+        checkOpen();
+        supervising = true;
+      }
+      try {
+        cluster.start(logFile);
+        attach();
+      } catch (BadProcessExecutionException | IOException | InterruptedException
+          | RuntimeException e) {
+        synchronized (this) {
+          supervising = false;
+        }
+        throw e;
+      }
+    }
+  }
+
+  /** Supervises the cluster, which must be already running.
+   * @throws IOException If there is no live postmaster in the data directory
+   */
+  public void attach() throws IOException {
+    PostmasterPid pid = livePostmaster().orElseThrow(() -> new IOException(
+        "There is no running server in " + dataDirectory));
+    synchronized (this) {
+      checkOpen();
+      supervising = true;
+      watch(pid);
+    }
+  }
+
+  /** Stops supervising the cluster, and then stops it.
+   * @throws BadProcessExecutionException If the cluster can't be stopped
+   * @throws IOException The pg_ctl file or the cluster don't exist
+   * @throws InterruptedException If the stop is interrupted
+   */
+  public void stop() throws BadProcessExecutionException, IOException, InterruptedException {
+    synchronized (startStopLock) {
+      unsupervise();
+      cluster.stop(logFile);
+      synchronized (this) {
+        state = State.STOPPED;
+      }
+    }
+  }
+
+  /** Stops supervising the cluster, leaving it running if it is. */
+  @Override
+  public void close() {
+    unsupervise();
+    executor.shutdownNow();
+    synchronized (this) {
+      // Its exit won't be watched anymore
+      postmaster = null;
+      state = State.STOPPED;
+    }
+  }
+
+  /** Returns a future completed with the postmaster.pid of the current server when it exits, be
+   * it by a crash or a stop. Later servers started by the supervisor have their own futures, and
+   * once an exit is noticed this returns the future of the next server, so callers waiting for an
+   * exit must ask for the future before causing it.
+   */
+  public synchronized CompletableFuture<PostmasterPid> onExit() {
+    return exit;
+  }
+
+  public synchronized State getState() {
+    return state;
+  }
+
+  /** The postmaster being supervised, if it is running. */
+  public synchronized Optional<PostmasterPid> getPostmaster() {
+    return Optional.ofNullable(postmaster);
+  }
+
+  /** The number of times the server exited without being stopped through the supervisor. */
+  public synchronized int getCrashCount() {
+    return crashCount;
+  }
+
+  /** The number of times the server was successfully restarted. */
+  public synchronized int getRestartCount() {
+    return restartCount;
+  }
+
+  /** The number of restarts that failed, and were retried if the policy allowed it. */
+  public synchronized int getFailedRestartCount() {
+    return failedRestartCount;
+  }
+
+  /** The time from the last crash to the server running again. */
+  public synchronized Duration getLastDowntime() {
+    return lastDowntime;
+  }
+
+  /** The time the server was down after crashes, added up. */
+  public synchronized Duration getTotalDowntime() {
+    return totalDowntime;
+  }
+
+  @GuardedBy("this")
+  private void watch(PostmasterPid pid) {
+    postmaster = pid;
+    postmasterSinceNanos = System.nanoTime();
+    state = State.RUNNING;
+    pid.onExit(executor, pollInterval).thenAcceptAsync(this::exited, executor);
+  }
+
+  private void exited(PostmasterPid pid) {
+    CompletableFuture<PostmasterPid> completed;
+    synchronized (this) {
+      if (pid != postmaster) {
+        return;
+      }
+      postmaster = null;
+      completed = exit;
+      exit = new CompletableFuture<>();
+
+      if (!supervising) {
+        state = State.STOPPED;
+      } else {
+        crashCount++;
+        exitNanos = System.nanoTime();
+        if (exitNanos - postmasterSinceNanos >= policy.getResetAfter().toNanos()) {
+          consecutiveRestarts = 0;
+        }
+        scheduleRestart();
+      }
+    }
+    completed.complete(pid);
+  }
+
+  @GuardedBy("this")
+  private void scheduleRestart() {
+    if (!policy.allowsRestart(consecutiveRestarts)) {
+      state = State.FAILED;
+      return;
+    }
+    Duration backoff = policy.backoff(consecutiveRestarts);
+    consecutiveRestarts++;
+    state = State.RESTARTING;
+    pendingRestart = executor.schedule(this::restart, backoff.toNanos(), TimeUnit.NANOSECONDS);
+  }
+
+  private void restart() {
+    synchronized (startStopLock) {
+      synchronized (this) {
+        // Stopped while waiting for the lock
+        if (!supervising) {
+          return;
+        }
+        pendingRestart = null;
+      }
+
+      try {
+        // Someone else could have started it meanwhile
+        Optional<PostmasterPid> running = livePostmaster();
+        if (!running.isPresent()) {
+          cluster.start(logFile);
+          running = livePostmaster();
+        }
+
+        synchronized (this) {
+          if (!running.isPresent()) {
+            failedRestartCount++;
+            scheduleRestart();
+            return;
+          }
+          restartCount++;
+          lastDowntime = Duration.ofNanos(System.nanoTime() - exitNanos);
+          totalDowntime = totalDowntime.plus(lastDowntime);
+          if (supervising) {
+            watch(running.get());
+          }
+        }
+      } catch (InterruptedException e) {
+        // Closed
+        Thread.currentThread().interrupt();
+      } catch (BadProcessExecutionException | IOException | RuntimeException e) {
+        synchronized (this) {
+          failedRestartCount++;
+          if (supervising) {
+            scheduleRestart();
+          }
+        }
+      }
+    }
+  }
+
+  private synchronized void unsupervise() {
+    supervising = false;
+    if (pendingRestart != null) {
+      pendingRestart.cancel(false);
+      pendingRestart = null;
+    }
+    if (state != State.RUNNING) {
+      state = State.STOPPED;
+    }
+  }
+
+  @GuardedBy("this")
+  private void checkOpen() {
+    Preconditions.checkState(!executor.isShutdown(), "The supervisor is closed");
+  }
+
+  private Optional<PostmasterPid> livePostmaster() throws IOException {
+    return PostmasterPid.read(dataDirectory).filter(PostmasterPid::isAlive);
+  }
+}
@@ -45,16 +45,21 @@ import com.ongres.pgdeploy.installations.PostgresInstallation;
 import com.ongres.pgdeploy.pgconfig.DefaultPropertyParser;
 import com.ongres.pgdeploy.pgconfig.PostgresConfig;
 import com.ongres.pgdeploy.pgconfig.PropertyParser;
+import com.ongres.pgdeploy.pgconfig.properties.Property;
 import com.ongres.pgdeploy.wrappers.PgCtlWrapper;
 import com.ongres.pgdeploy.wrappers.PgHbaConfWrapper;
+import com.ongres.pgdeploy.wrappers.PostmasterPidWatcher;
 import com.ongres.pgdeploy.wrappers.exceptions.BadProcessExecutionException;
-import com.ongres.pgdeploy.wrappers.postgresqlconf.PostgreSqlConfWrapper;
+import com.ongres.pgdeploy.wrappers.postgresqlconf.ConfBackend;
+import com.ongres.pgdeploy.wrappers.postgresqlconf.PostgreSqlConfReader;
 import net.jcip.annotations.Immutable;
 
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Set;
 import java.util.stream.Collector;
 import java.util.stream.Collectors;
 
@@ -72,6 +77,11 @@ public class ConcretePostgresCluster extends PostgresCluster {
   private final Router router;
   private final PropertyParser parser;
   private final PgCtlWrapper pgCtlWrapper;
+  private final ConfBackend confBackend;
+  private final PostgreSqlConfReader confReader;
+  @Nullable
+  private final PostmasterPidWatcher statusWatcher;
+  private final boolean awaitReadiness;
 
   public ConcretePostgresCluster(
       Path directory, PostgresInstallation installation, PropertyParser parser) {
@@ -86,23 +96,84 @@ public class ConcretePostgresCluster extends PostgresCluster {
 
   ConcretePostgresCluster(
       PgCtlWrapper wrapper, Path directory, PropertyParser parser, Router router) {
+    this(wrapper, directory, parser, router, ConfBackend.mainFile(),
+        new PostgreSqlConfReader(parser), null, false);
+  }
+
+  ConcretePostgresCluster(PgCtlWrapper wrapper, Path directory) {
+    this(wrapper, directory, DefaultPropertyParser.getInstance(), DefaultRouter.getInstance());
+  }
+
+  private ConcretePostgresCluster(PgCtlWrapper wrapper, Path directory, PropertyParser parser,
+      Router router, ConfBackend confBackend, PostgreSqlConfReader confReader,
+      @Nullable PostmasterPidWatcher statusWatcher, boolean awaitReadiness) {
     pgCtlWrapper = wrapper;
     this.directory = directory;
     this.router = router;
     this.parser = parser;
+    this.confBackend = confBackend;
+    this.confReader = confReader;
+    this.statusWatcher = statusWatcher;
+    this.awaitReadiness = awaitReadiness;
   }
 
-  ConcretePostgresCluster(PgCtlWrapper wrapper, Path directory) {
-    pgCtlWrapper = wrapper;
-    this.directory = directory;
-    this.router = DefaultRouter.getInstance();
-    this.parser = DefaultPropertyParser.getInstance();
+  /** Returns a view of this cluster whose {@link #config(PostgresConfig, Path)} writes the
+   * properties through <tt>confBackend</tt>. By default, <tt>postgresql.conf</tt> is updated.
+   */
+  public ConcretePostgresCluster withConfBackend(@Nonnull ConfBackend confBackend) {
+    return new ConcretePostgresCluster(pgCtlWrapper, directory, parser, router,
+        Preconditions.checkNotNull(confBackend), confReader, statusWatcher, awaitReadiness);
+  }
+
+  /** Returns a view of this cluster whose {@link #status(Path)} is answered by
+   * <tt>statusWatcher</tt> from the postmaster.pid file, instead of running pg_ctl status.
+   */
+  public ConcretePostgresCluster withStatusWatcher(@Nonnull PostmasterPidWatcher statusWatcher) {
+    return new ConcretePostgresCluster(pgCtlWrapper, directory, parser, router, confBackend,
+        confReader, Preconditions.checkNotNull(statusWatcher), awaitReadiness);
+  }
+
+  /** Returns a view of this cluster that starts the server without <tt>pg_ctl -w</tt>, and waits
+   * for it to be ready by watching its postmaster.pid file, which avoids the fixed sleeps of
+   * pg_ctl. Every start and restart of the view behaves as {@link #startAndAwaitReady(Path)}.
+   */
+  public ConcretePostgresCluster withReadinessProbe() {
+    return new ConcretePostgresCluster(pgCtlWrapper, directory, parser, router, confBackend,
+        confReader, statusWatcher, true);
+  }
+
+  /** Starts the server and waits for it to be ready, watching its postmaster.pid file.
+   * @return the time from the launch of the server to it being ready
+   */
+  public Duration startAndAwaitReady(@Nullable Path logFile)
+      throws BadProcessExecutionException, IOException, InterruptedException {
+    return pgCtlWrapper.startAndAwaitReady(logFile);
+  }
+
+  /** Stops the server and starts it as {@link #startAndAwaitReady(Path)} does.
+   * @return the time from the launch of the server to it being ready
+   */
+  public Duration restartAndAwaitReady(@Nullable Path logFile)
+      throws BadProcessExecutionException, IOException, InterruptedException {
+    return pgCtlWrapper.restartAndAwaitReady(logFile);
+  }
+
+  /** Creates a supervisor that restarts this cluster as <tt>policy</tt> says whenever it exits
+   * unexpectedly. The supervisor does nothing until it is started or attached.
+   * @param logFile The route to the optional log file, used on every start
+   */
+  public ClusterSupervisor supervise(@Nonnull RestartPolicy policy, @Nullable Path logFile) {
+    return new ClusterSupervisor(this, directory, policy, logFile);
   }
 
   @Override
   public void start(@Nullable Path logFile)
       throws BadProcessExecutionException, IOException, InterruptedException {
-    pgCtlWrapper.start(logFile);
+    if (awaitReadiness) {
+      pgCtlWrapper.startAndAwaitReady(logFile);
+    } else {
+      pgCtlWrapper.start(logFile);
+    }
   }
 
   @Override
@@ -111,10 +182,23 @@ public class ConcretePostgresCluster extends PostgresCluster {
     pgCtlWrapper.stop(logFile);
   }
 
+  @Override
+  public void restart(@Nullable Path logFile)
+      throws BadProcessExecutionException, IOException, InterruptedException {
+    if (awaitReadiness) {
+      pgCtlWrapper.restartAndAwaitReady(logFile);
+    } else {
+      pgCtlWrapper.restart(logFile);
+    }
+  }
+
   @Override
   public Status status(@Nullable Path logFile)
       throws BadProcessExecutionException, IOException, InterruptedException {
 
+    if (statusWatcher != null) {
+      return Status.fromPgCtlStatus(statusWatcher.status(directory));
+    }
     return Status.fromPgCtlStatus(pgCtlWrapper.status(logFile));
   }
 
@@ -124,20 +208,30 @@ public class ConcretePostgresCluster extends PostgresCluster {
 
     Preconditions.checkNotNull(config);
 
+    Set<Property> changedProperties =
+        confBackend.update(router.routeToPostgresqlConf(directory), config);
+    if (changedProperties.isEmpty()) {
+      return;
+    }
+
     Status status = status(null);
-    PostgreSqlConfWrapper.updateConfFile(router.routeToPostgresqlConf(directory), config);
 
-    boolean needToRestart = config.asStream().anyMatch(entry -> entry.getKey().isNeedToRestart());
+    boolean needToRestart = changedProperties.stream().anyMatch(Property::isNeedToRestart);
 
     if (status == Status.ACTIVE) {
       if (needToRestart) {
-        pgCtlWrapper.restart(logFile);
+        restart(logFile);
       } else {
         pgCtlWrapper.reload(logFile);
       }
     }
   }
 
+  @Override
+  public PostgresConfig readConfig() throws IOException {
+    return confReader.read(router.routeToPostgresqlConf(directory));
+  }
+
   @Override
   public PostgresConfig.Builder createConfigBuilder() {
     return new PostgresConfig.Builder(parser);
@@ -150,7 +244,7 @@ public class ConcretePostgresCluster extends PostgresCluster {
     Preconditions.checkNotNull(content);
 
     PgHbaConfWrapper.overwriteConf(router.routeToPgHbaConf(directory),content);
-    pgCtlWrapper.restart(logFile);
+    restart(logFile);
 
   }
 
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2017, OnGres.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.ongres.pgdeploy.clusters;
+
+import com.google.common.base.Preconditions;
+import net.jcip.annotations.ThreadSafe;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnull;
+
+/** Hands out ports, and a Unix socket directory for each, to clusters that run at the same time
+ * on a host, so they never collide.
+ *
+ * <p>Within a JVM, ports are taken without locking, from a shared cursor over the range. Across
+ * JVMs, every leased port holds an exclusive lock on a file of the lock directory, which is
+ * released when the lease is closed or the JVM exits. Ports taken by anything else are skipped,
+ * as they can't be bound.
+ */
+@ThreadSafe
+public class PortAllocator {
+
+  private final int firstPort;
+  private final int lastPort;
+  private final Path lockDirectory;
+  private final AtomicInteger cursor = new AtomicInteger();
+  private final ConcurrentMap<Integer, Boolean> leased = new ConcurrentHashMap<>();
+
+  /** Creates an allocator of the ports from <tt>firstPort</tt> to <tt>lastPort</tt>, both
+   * included, coordinated with other JVMs through the files of <tt>lockDirectory</tt>, where the
+   * socket directories are created too.
+   */
+  public PortAllocator(int firstPort, int lastPort, @Nonnull Path lockDirectory) {
+    Preconditions.checkArgument(firstPort > 0 && firstPort <= lastPort && lastPort < 65536,
+        "Invalid port range " + firstPort + "-" + lastPort);
+    this.firstPort = firstPort;
+    this.lastPort = lastPort;
+    this.lockDirectory = Preconditions.checkNotNull(lockDirectory).toAbsolutePath();
+  }
+
+  /** Returns the allocator shared by the JVM. Its range is set by the
+   * <tt>pgdeploy.ports.first</tt> and <tt>pgdeploy.ports.last</tt> system properties, 15432 to
+   * 16431 by default, and its lock directory is <tt>pgdeploy-ports</tt> in the temporary
+   * directory, shared with other JVMs of the same host.
+   */
+  public static PortAllocator getDefault() {
+    return DefaultHolder.INSTANCE;
+  }
+
+  /** Leases a port that no other lease, of this or other JVMs, holds and that can be bound.
+   * @throws IOException If there is no free port in the range, or the lock directory can't be
+   *     written
+   */
+  public PortLease allocate() throws IOException {
+    Files.createDirectories(lockDirectory);
+
+    int size = lastPort - firstPort + 1;
+    for (int i = 0; i < size; i++) {
+      int port = firstPort + Math.floorMod(cursor.getAndIncrement(), size);
+      if (leased.putIfAbsent(port, Boolean.TRUE) != null) {
+        continue;
+      }
+      PortLease lease = null;
+      try {
+        lease = tryLease(port);
+      } finally {
+        if (lease == null) {
+          leased.remove(port);
+        }
+      }
+      if (lease != null) {
+        return lease;
+      }
+    }
+    throw new IOException("There is no free port from " + firstPort + " to " + lastPort);
+  }
+
+  void release(int port) {
+    leased.remove(port);
+  }
+
+  private PortLease tryLease(int port) throws IOException {
+    FileChannel channel = FileChannel.open(lockDirectory.resolve(port + ".lock"),
+        StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+    try {
+      FileLock lock;
+      try {
+        lock = channel.tryLock();
+      } catch (OverlappingFileLockException ex) {
+        // Held by another allocator of this JVM on the same directory
+        lock = null;
+      }
+      if (lock == null || !isBindable(port)) {
+        channel.close();
+        return null;
+      }
+
+      Path socketDirectory = lockDirectory.resolve(Integer.toString(port));
+      Files.createDirectories(socketDirectory);
+      return new PortLease(this, port, socketDirectory, channel);
+    } catch (IOException | RuntimeException ex) {
+      channel.close();
+      throw ex;
+    }
+  }
+
+  private static boolean isBindable(int port) {
+    try (ServerSocket socket = new ServerSocket()) {
+      // As the server does, so connections in TIME_WAIT don't make the port look busy
+      socket.setReuseAddress(true);
+      socket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+      return true;
+    } catch (IOException ex) {
+      return false;
+    }
+  }
+
+  private static class DefaultHolder {
+    private static final PortAllocator INSTANCE = new PortAllocator(
+        Integer.getInteger("pgdeploy.ports.first", 15432),
+        Integer.getInteger("pgdeploy.ports.last", 16431),
+        Paths.get(System.getProperty("java.io.tmpdir"), "pgdeploy-ports"));
+  }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2017, OnGres.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.ongres.pgdeploy.clusters;
+
+import com.ongres.pgdeploy.pgconfig.PostgresConfig;
+import com.ongres.pgdeploy.pgconfig.properties.exceptions.PropertyNotFoundException;
+import com.ongres.pgdeploy.pgconfig.properties.exceptions.UnitNotAvailableForPropertyException;
+import com.ongres.pgdeploy.pgconfig.properties.exceptions.WrongTypePropertyException;
+import net.jcip.annotations.ThreadSafe;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.annotation.Nonnull;
+
+/** A port, and a Unix socket directory, held by a cluster until the lease is closed, which should
+ * happen once the cluster is stopped.
+ * @see PortAllocator
+ */
+@ThreadSafe
+public class PortLease implements Closeable {
+
+  private final PortAllocator allocator;
+  private final int port;
+  private final Path socketDirectory;
+  private final FileChannel lockChannel;
+  private final AtomicBoolean closed = new AtomicBoolean();
+
+  PortLease(PortAllocator allocator, int port, Path socketDirectory, FileChannel lockChannel) {
+    this.allocator = allocator;
+    this.port = port;
+    this.socketDirectory = socketDirectory;
+    this.lockChannel = lockChannel;
+  }
+
+  public int getPort() {
+    return port;
+  }
+
+  public Path getSocketDirectory() {
+    return socketDirectory;
+  }
+
+  /** Sets the <tt>port</tt> and <tt>unix_socket_directories</tt> properties of the lease in
+   * <tt>builder</tt>.
+   */
+  public PostgresConfig.Builder applyTo(@Nonnull PostgresConfig.Builder builder)
+      throws WrongTypePropertyException, UnitNotAvailableForPropertyException,
+      PropertyNotFoundException {
+    return builder
+        .withProperty("port", port)
+        .withProperty("unix_socket_directories", socketDirectory.toString());
+  }
+
+  /** Releases the port, and removes the socket directory if it is empty. */
+  @Override
+  public void close() throws IOException {
+    if (!closed.compareAndSet(false, true)) {
+      return;
+    }
+    try {
+      Files.deleteIfExists(socketDirectory);
+    } catch (DirectoryNotEmptyException ex) {
+      // Still used by a server, or left by one that crashed
+    } finally {
+      // Closing the channel releases the lock
+      lockChannel.close();
+      allocator.release(port);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "PortLease{port=" + port + ", socketDirectory=" + socketDirectory + '}';
+  }
+}
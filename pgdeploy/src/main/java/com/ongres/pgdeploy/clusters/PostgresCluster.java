@@ -38,6 +38,8 @@
  */
 package com.ongres.pgdeploy.clusters;
 
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.ongres.pgdeploy.pgconfig.PostgresConfig;
 import com.ongres.pgdeploy.wrappers.PgCtlWrapper;
 import com.ongres.pgdeploy.wrappers.exceptions.BadProcessExecutionException;
@@ -45,6 +47,11 @@ import com.ongres.pgdeploy.wrappers.exceptions.BadProcessExecutionException;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -96,6 +103,28 @@ public abstract class PostgresCluster {
   public abstract void stop(@Nullable Path logFile)
       throws BadProcessExecutionException, IOException, InterruptedException;
 
+  /** Restarts a cluster by calling pg_ctl restart on it
+   * @throws BadProcessExecutionException If the command wasn't able to run. For example, running
+   *     it in an empty folder, a folder with permissions bigger than rwx------, etc.
+   * @throws IOException The pg_ctl file or the cluster don't exist
+   * @throws InterruptedException If the execution of the pg_ctl process is interrupted
+   */
+  public void restart()
+      throws BadProcessExecutionException, IOException, InterruptedException {
+    restart(null);
+  }
+
+  /** Restarts a cluster by calling pg_ctl restart on it
+   * @param logFile The route to the optional log file. If provided, the output
+   *     of the command is redirected to it.
+   * @throws BadProcessExecutionException If the command wasn't able to run. For example, running
+   *     it in an empty folder, a folder with permissions bigger than rwx------, etc.
+   * @throws IOException The pg_ctl file or the cluster don't exist
+   * @throws InterruptedException If the execution of the pg_ctl process is interrupted
+   */
+  public abstract void restart(@Nullable Path logFile)
+      throws BadProcessExecutionException, IOException, InterruptedException;
+
   /** Gets the status of a cluster by calling pg_ctl status on it
    * @throws BadProcessExecutionException If the command wasn't able to run. For example, running
    *     it in an empty folder, a non-existing folder, etc.
@@ -118,7 +147,9 @@ public abstract class PostgresCluster {
   public abstract Status status(@Nullable Path logFile)
       throws BadProcessExecutionException, IOException, InterruptedException;
 
-  /** Updates the config in postgresql.conf and then calls pg_ctl restart/reload
+  /** Updates the config in postgresql.conf and then calls pg_ctl restart/reload, unless the
+   * file was already up to date. The server is only restarted if some of the properties whose
+   * value changes can't be applied on reload.
    * @param config An instance of {@link PostgresConfig}, obtained via the builder returned by
    *               {@link PostgresCluster#createConfigBuilder()}
    * @throws IOException The pg_ctl file or the cluster don't exist
@@ -131,7 +162,9 @@ public abstract class PostgresCluster {
     config(config, null);
   }
 
-  /** Updates the config in postgresql.conf and then calls pg_ctl restart/reload
+  /** Updates the config in postgresql.conf and then calls pg_ctl restart/reload, unless the
+   * file was already up to date. The server is only restarted if some of the properties whose
+   * value changes can't be applied on reload.
    * @param config An instance of {@link PostgresConfig}, obtained via the builder returned by
    *               {@link PostgresCluster#createConfigBuilder()}
    * @throws IOException The pg_ctl file or the cluster don't exist
@@ -142,6 +175,13 @@ public abstract class PostgresCluster {
   public abstract void config(@Nonnull PostgresConfig config, @Nullable Path logFile)
       throws IOException, BadProcessExecutionException, InterruptedException;
 
+  /** Reads the configuration set in the files of the cluster: postgresql.conf, the files it
+   * includes and postgresql.auto.conf. Reads are cached until any of these files changes.
+   * @return The properties set, with the values that the server will use on its next reload
+   * @throws IOException The configuration files can't be read or have syntax errors
+   */
+  public abstract PostgresConfig readConfig() throws IOException;
+
   public abstract PostgresConfig.Builder createConfigBuilder();
 
   public void setPgHbaConf(@Nonnull String content)
@@ -160,6 +200,134 @@ public abstract class PostgresCluster {
   public abstract void setPgHbaConf(@Nonnull Path originalFile, @Nullable Path logFile)
       throws IOException, BadProcessExecutionException, InterruptedException;
 
+  /** Starts the cluster on the {@link #defaultExecutor() default executor}.
+   * @return A future completed when the cluster has started, or exceptionally with the exception
+   *     {@link #start(Path)} would have thrown
+   */
+  public CompletableFuture<Void> startAsync() {
+    return startAsync(null, defaultExecutor());
+  }
+
+  /** Starts the cluster on the given executor.
+   * @param logFile The route to the optional log file.
+   * @param executor The executor that waits for pg_ctl to finish
+   * @return A future completed when the cluster has started, or exceptionally with the exception
+   *     {@link #start(Path)} would have thrown
+   */
+  public CompletableFuture<Void> startAsync(@Nullable Path logFile, @Nonnull Executor executor) {
+    return runAsync(() -> {
+      start(logFile);
+      return null;
+    }, executor);
+  }
+
+  /** Stops the cluster on the {@link #defaultExecutor() default executor}.
+   * @return A future completed when the cluster has stopped, or exceptionally with the exception
+   *     {@link #stop(Path)} would have thrown
+   */
+  public CompletableFuture<Void> stopAsync() {
+    return stopAsync(null, defaultExecutor());
+  }
+
+  /** Stops the cluster on the given executor.
+   * @param logFile The route to the optional log file.
+   * @param executor The executor that waits for pg_ctl to finish
+   * @return A future completed when the cluster has stopped, or exceptionally with the exception
+   *     {@link #stop(Path)} would have thrown
+   */
+  public CompletableFuture<Void> stopAsync(@Nullable Path logFile, @Nonnull Executor executor) {
+    return runAsync(() -> {
+      stop(logFile);
+      return null;
+    }, executor);
+  }
+
+  /** Restarts the cluster on the {@link #defaultExecutor() default executor}.
+   * @return A future completed when the cluster has restarted, or exceptionally with the
+   *     exception {@link #restart(Path)} would have thrown
+   */
+  public CompletableFuture<Void> restartAsync() {
+    return restartAsync(null, defaultExecutor());
+  }
+
+  /** Restarts the cluster on the given executor.
+   * @param logFile The route to the optional log file.
+   * @param executor The executor that waits for pg_ctl to finish
+   * @return A future completed when the cluster has restarted, or exceptionally with the
+   *     exception {@link #restart(Path)} would have thrown
+   */
+  public CompletableFuture<Void> restartAsync(
+      @Nullable Path logFile, @Nonnull Executor executor) {
+    return runAsync(() -> {
+      restart(logFile);
+      return null;
+    }, executor);
+  }
+
+  /** Gets the status of the cluster on the {@link #defaultExecutor() default executor}.
+   * @return A future completed with the status, or exceptionally with the exception
+   *     {@link #status(Path)} would have thrown
+   */
+  public CompletableFuture<Status> statusAsync() {
+    return statusAsync(null, defaultExecutor());
+  }
+
+  /** Gets the status of the cluster on the given executor.
+   * @param logFile The route to the optional log file.
+   * @param executor The executor that waits for pg_ctl to finish
+   * @return A future completed with the status, or exceptionally with the exception
+   *     {@link #status(Path)} would have thrown
+   */
+  public CompletableFuture<Status> statusAsync(
+      @Nullable Path logFile, @Nonnull Executor executor) {
+    return runAsync(() -> status(logFile), executor);
+  }
+
+  /** Returns the executor shared by the asynchronous operations that don't receive one. It has a
+   * bounded number of daemon threads, by default twice the number of processors, which can be
+   * changed with the <tt>pgdeploy.cluster.threads</tt> system property. Operations exceeding it
+   * are queued.
+   */
+  public static Executor defaultExecutor() {
+    return ExecutorHolder.INSTANCE;
+  }
+
+  private static <T> CompletableFuture<T> runAsync(
+      ClusterOperation<T> operation, Executor executor) {
+    Preconditions.checkNotNull(executor);
+
+    CompletableFuture<T> result = new CompletableFuture<>();
+    try {
+      executor.execute(() -> {
+        if (result.isDone()) {
+          return;
+        }
+        try {
+          result.complete(operation.run());
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          result.completeExceptionally(e);
+        } catch (Exception | Error e) {
+          result.completeExceptionally(e);
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      result.completeExceptionally(e);
+    }
+    return result;
+  }
+
+  @FunctionalInterface
+  private interface ClusterOperation<T> {
+    T run() throws BadProcessExecutionException, IOException, InterruptedException;
+  }
+
+  private static class ExecutorHolder {
+    private static final ExecutorService INSTANCE = Executors.newFixedThreadPool(
+        Integer.getInteger("pgdeploy.cluster.threads",
+            2 * Runtime.getRuntime().availableProcessors()),
+        new ThreadFactoryBuilder().setNameFormat("pgdeploy-cluster-%d").setDaemon(true).build());
+  }
 
   public enum Status {
     ACTIVE,
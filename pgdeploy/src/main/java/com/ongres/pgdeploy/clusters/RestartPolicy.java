@@ -0,0 +1,130 @@
+/*
+ * Copyright 2017, OnGres.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.ongres.pgdeploy.clusters;
+
+import com.google.common.base.Preconditions;
+import net.jcip.annotations.Immutable;
+
+import java.time.Duration;
+
+import javax.annotation.Nonnull;
+
+/** Says whether a {@link ClusterSupervisor} restarts a server that exits unexpectedly, and how
+ * long it waits before doing it. The wait starts at the initial backoff and doubles on every
+ * consecutive restart, up to the maximum backoff. Restarts stop being consecutive once a server
+ * has been running for the reset interval, one minute by default.
+ */
+@Immutable
+public class RestartPolicy {
+
+  private static final Duration defaultResetAfter = Duration.ofMinutes(1);
+
+  private final int maxRestarts;
+  private final Duration initialBackoff;
+  private final Duration maxBackoff;
+  private final Duration resetAfter;
+
+  private RestartPolicy(
+      int maxRestarts, Duration initialBackoff, Duration maxBackoff, Duration resetAfter) {
+    this.maxRestarts = maxRestarts;
+    this.initialBackoff = initialBackoff;
+    this.maxBackoff = maxBackoff;
+    this.resetAfter = resetAfter;
+  }
+
+  /** A policy that never restarts the server. */
+  public static RestartPolicy never() {
+    return new RestartPolicy(0, Duration.ZERO, Duration.ZERO, defaultResetAfter);
+  }
+
+  /** A policy that always restarts the server, waiting from <tt>initialBackoff</tt> up to
+   * <tt>maxBackoff</tt> between consecutive restarts.
+   */
+  public static RestartPolicy withBackoff(
+      @Nonnull Duration initialBackoff, @Nonnull Duration maxBackoff) {
+    Preconditions.checkNotNull(initialBackoff);
+    Preconditions.checkNotNull(maxBackoff);
+    Preconditions.checkArgument(!initialBackoff.isNegative(), "Negative initial backoff");
+    Preconditions.checkArgument(maxBackoff.compareTo(initialBackoff) >= 0,
+        "The maximum backoff is less than the initial one");
+
+    return new RestartPolicy(Integer.MAX_VALUE, initialBackoff, maxBackoff, defaultResetAfter);
+  }
+
+  /** Returns a copy of this policy that gives up after <tt>maxRestarts</tt> consecutive
+   * restarts.
+   */
+  public RestartPolicy withMaxRestarts(int maxRestarts) {
+    Preconditions.checkArgument(maxRestarts >= 0, "Negative number of restarts");
+    return new RestartPolicy(maxRestarts, initialBackoff, maxBackoff, resetAfter);
+  }
+
+  /** Returns a copy of this policy whose restarts stop being consecutive once a server has been
+   * running for <tt>resetAfter</tt>.
+   */
+  public RestartPolicy withResetAfter(@Nonnull Duration resetAfter) {
+    return new RestartPolicy(
+        maxRestarts, initialBackoff, maxBackoff, Preconditions.checkNotNull(resetAfter));
+  }
+
+  public int getMaxRestarts() {
+    return maxRestarts;
+  }
+
+  public Duration getInitialBackoff() {
+    return initialBackoff;
+  }
+
+  public Duration getMaxBackoff() {
+    return maxBackoff;
+  }
+
+  public Duration getResetAfter() {
+    return resetAfter;
+  }
+
+  boolean allowsRestart(int consecutiveRestarts) {
+    return consecutiveRestarts < maxRestarts;
+  }
+
+  /** The wait before the restart following <tt>consecutiveRestarts</tt> consecutive ones. */
+  Duration backoff(int consecutiveRestarts) {
+    Duration result = initialBackoff;
+    for (int i = 0; i < consecutiveRestarts && result.compareTo(maxBackoff) < 0; i++) {
+      result = result.multipliedBy(2);
+    }
+    return result.compareTo(maxBackoff) < 0 ? result : maxBackoff;
+  }
+
+  @Override
+  public String toString() {
+    return "RestartPolicy{"
+        + "maxRestarts=" + maxRestarts
+        + ", initialBackoff=" + initialBackoff
+        + ", maxBackoff=" + maxBackoff
+        + ", resetAfter=" + resetAfter
+        + '}';
+  }
+}
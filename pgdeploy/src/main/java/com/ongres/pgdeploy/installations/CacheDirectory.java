@@ -0,0 +1,118 @@
+/*
+ * Copyright 2017, OnGres.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.ongres.pgdeploy.installations;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/** The directories of the caches shared among processes through the file system. Every entry is
+ * created once, under a file lock, in a temporary directory that is then atomically moved to its
+ * final name, so that an existing entry is always complete.
+ */
+final class CacheDirectory {
+
+  /** File locks are held by the whole JVM, and a second attempt to lock the same file from it
+   * fails instead of waiting, so threads wait on a monitor per lock file before locking it.
+   */
+  private static final ConcurrentMap<Path, Object> monitors = new ConcurrentHashMap<>();
+
+  private CacheDirectory() {
+  }
+
+  /** Creates the contents of a new entry in the given directory, which does not exist yet.
+   */
+  interface Populator<X extends Exception, Y extends Exception> {
+
+    void populate(Path temporary) throws IOException, X, Y;
+  }
+
+  /** Returns the directory of the entry <tt>key</tt> in <tt>root</tt>, creating it with the given
+   * populator if it does not exist yet.
+   */
+  static <X extends Exception, Y extends Exception> Path populate(
+      Path root, String key, Populator<X, Y> populator) throws IOException, X, Y {
+
+    Path entry = root.resolve(key);
+    if (Files.isDirectory(entry)) {
+      return entry;
+    }
+
+    Path lockFile = root.resolve(key + ".lock").toAbsolutePath().normalize();
+    synchronized (monitors.computeIfAbsent(lockFile, k -> new Object())) {
+      Files.createDirectories(root);
+
+      try (FileChannel lockChannel = FileChannel.open(lockFile,
+          StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+        FileLock lock = lockChannel.lock();
+        try {
+          if (Files.isDirectory(entry)) {
+            return entry;
+          }
+
+          Path temporary = root.resolve(key + ".tmp-" + UUID.randomUUID());
+          try {
+            populator.populate(temporary);
+            try {
+              Files.move(temporary, entry, StandardCopyOption.ATOMIC_MOVE);
+            } catch (FileAlreadyExistsException ex) {
+              // Populated meanwhile by someone not honoring the lock
+              return entry;
+            }
+          } finally {
+            deleteRecursively(temporary);
+          }
+        } finally {
+          lock.release();
+        }
+      }
+    }
+
+    return entry;
+  }
+
+  static void deleteRecursively(Path path) throws IOException {
+    if (!Files.exists(path, LinkOption.NOFOLLOW_LINKS)) {
+      return;
+    }
+    try (Stream<Path> paths = Files.walk(path)) {
+      for (Path current : paths.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+        Files.delete(current);
+      }
+    }
+  }
+}
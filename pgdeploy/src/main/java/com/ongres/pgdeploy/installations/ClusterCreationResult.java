@@ -0,0 +1,101 @@
+/*
+ * Copyright 2017, OnGres.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.ongres.pgdeploy.installations;
+
+import com.google.common.base.Preconditions;
+import com.ongres.pgdeploy.clusters.PostgresCluster;
+import net.jcip.annotations.Immutable;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Optional;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/** The outcome of creating one of the clusters requested to
+ * {@link PostgresInstallation#createClusters(java.util.List,
+ * com.ongres.pgdeploy.clusters.PostgresClusterCreationOptions, int)}: either the created cluster
+ * or the reason why it could not be created, and how long it took.
+ */
+@Immutable
+public class ClusterCreationResult {
+
+  private final Path destination;
+  @Nullable
+  private final PostgresCluster cluster;
+  @Nullable
+  private final Exception failure;
+  private final Duration duration;
+
+  private ClusterCreationResult(Path destination, @Nullable PostgresCluster cluster,
+      @Nullable Exception failure, Duration duration) {
+    this.destination = Preconditions.checkNotNull(destination);
+    this.cluster = cluster;
+    this.failure = failure;
+    this.duration = Preconditions.checkNotNull(duration);
+  }
+
+  static ClusterCreationResult success(@Nonnull Path destination,
+      @Nonnull PostgresCluster cluster, @Nonnull Duration duration) {
+    return new ClusterCreationResult(
+        destination, Preconditions.checkNotNull(cluster), null, duration);
+  }
+
+  static ClusterCreationResult failure(@Nonnull Path destination,
+      @Nonnull Exception failure, @Nonnull Duration duration) {
+    return new ClusterCreationResult(
+        destination, null, Preconditions.checkNotNull(failure), duration);
+  }
+
+  public Path getDestination() {
+    return destination;
+  }
+
+  public boolean isSuccessful() {
+    return cluster != null;
+  }
+
+  public Optional<PostgresCluster> getCluster() {
+    return Optional.ofNullable(cluster);
+  }
+
+  public Optional<Exception> getFailure() {
+    return Optional.ofNullable(failure);
+  }
+
+  public Duration getDuration() {
+    return duration;
+  }
+
+  @Override
+  public String toString() {
+    return "ClusterCreationResult{"
+        + "destination=" + destination
+        + ", " + (isSuccessful() ? "created" : "failure=" + failure)
+        + ", duration=" + duration
+        + '}';
+  }
+}
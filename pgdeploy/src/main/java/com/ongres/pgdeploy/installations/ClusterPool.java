@@ -0,0 +1,407 @@
+/*
+ * Copyright 2017, OnGres.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.ongres.pgdeploy.installations;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.ongres.pgdeploy.clusters.PortAllocator;
+import com.ongres.pgdeploy.clusters.PortLease;
+import com.ongres.pgdeploy.clusters.PostgresCluster;
+import com.ongres.pgdeploy.clusters.PostgresClusterCreationOptions;
+import net.jcip.annotations.ThreadSafe;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/** Keeps a number of clusters of an installation started, so that tests can lease one in the time
+ * it takes to take it from a queue instead of the seconds initdb and a start take.
+ *
+ * <p>Every cluster listens on its own port, taken from a {@link PortAllocator}, and lives in a
+ * folder of the pool root. When a lease is closed, the cluster is reset in the background before
+ * it can be leased again. By default it is stopped, its data directory is restored from a copy
+ * taken right after initdb and it is started again. A {@link Reset} can do something cheaper, like
+ * dropping and recreating the databases used by the tests. Clusters whose reset fails are replaced
+ * by new ones.
+ *
+ * <p>Leasing and returning clusters takes no locks: idle clusters are kept in a lock-free queue,
+ * and only waiting for one to be idle blocks.
+ */
+@ThreadSafe
+public class ClusterPool implements Closeable {
+
+  /** Returns a leased cluster to the state the next lessee expects. */
+  @FunctionalInterface
+  public interface Reset {
+    void reset(Member member) throws Exception;
+  }
+
+  private final PostgresInstallation installation;
+  private final Path root;
+  private final int size;
+  private final PostgresClusterCreationOptions options;
+  private final PortAllocator ports;
+  @Nullable
+  private final Reset reset;
+  private final ExecutorService executor;
+  private final Queue<Member> idle = new ConcurrentLinkedQueue<>();
+  private final Queue<Member> members = new ConcurrentLinkedQueue<>();
+  private final Semaphore available = new Semaphore(0);
+  private final AtomicInteger replacements = new AtomicInteger();
+  private final AtomicBoolean warmedUp = new AtomicBoolean();
+  private volatile boolean closed;
+
+  /** Creates a pool of <tt>size</tt> clusters with the default options, restored from a copy of
+   * their data directory on every return. Nothing is created until {@link #warmUp()}.
+   */
+  public ClusterPool(@Nonnull PostgresInstallation installation, @Nonnull Path root, int size) {
+    this(installation, root, size, PostgresClusterCreationOptions.defaultOptions(),
+        PortAllocator.getDefault(), null);
+  }
+
+  /** Creates a pool of <tt>size</tt> clusters.
+   * @param reset How clusters are reset when returned, or null to restore their data directory
+   */
+  public ClusterPool(@Nonnull PostgresInstallation installation, @Nonnull Path root, int size,
+      @Nonnull PostgresClusterCreationOptions options, @Nonnull PortAllocator ports,
+      @Nullable Reset reset) {
+    Preconditions.checkArgument(size > 0, "The size must be positive");
+    this.installation = Preconditions.checkNotNull(installation);
+    this.root = Preconditions.checkNotNull(root).toAbsolutePath();
+    this.size = size;
+    this.options = Preconditions.checkNotNull(options);
+    this.ports = Preconditions.checkNotNull(ports);
+    this.reset = reset;
+    this.executor = Executors.newFixedThreadPool(
+        Math.min(size, Runtime.getRuntime().availableProcessors()),
+        new ThreadFactoryBuilder().setNameFormat("pgdeploy-pool-%d").setDaemon(true).build());
+  }
+
+  /** Creates, configures and starts all the clusters of the pool, in parallel. It can only be
+   * called once, as the clusters may be leased already.
+   * @throws IOException If any cluster can't be created, configured or started. The ones that
+   *     could are kept.
+   * @throws InterruptedException If interrupted while waiting for the clusters
+   */
+  public void warmUp() throws IOException, InterruptedException {
+    Preconditions.checkState(!closed, "The pool is closed");
+    Preconditions.checkState(warmedUp.compareAndSet(false, true), "The pool is already warm");
+    Files.createDirectories(root);
+
+    List<Callable<Member>> tasks = new ArrayList<>();
+    for (int i = 0; i < size; i++) {
+      int index = i;
+      tasks.add(() -> create(index));
+    }
+
+    Throwable failure = null;
+    for (Future<Member> future : executor.invokeAll(tasks)) {
+      try {
+        makeIdle(future.get());
+      } catch (ExecutionException e) {
+        if (failure == null) {
+          failure = e.getCause();
+        }
+      }
+    }
+
+    if (failure != null) {
+      Throwables.throwIfInstanceOf(failure, IOException.class);
+      Throwables.throwIfUnchecked(failure);
+      throw new IOException("Unable to warm up the cluster pool", failure);
+    }
+  }
+
+  /** Leases an idle cluster, waiting up to <tt>timeout</tt> for one.
+   * @throws TimeoutException If no cluster is idle in time
+   */
+  public Lease acquire(@Nonnull Duration timeout) throws InterruptedException, TimeoutException {
+    Preconditions.checkState(!closed, "The pool is closed");
+    if (!available.tryAcquire(timeout.toNanos(), TimeUnit.NANOSECONDS)) {
+      throw new TimeoutException("No cluster was idle in " + timeout);
+    }
+    return new Lease(pollIdle());
+  }
+
+  /** Leases an idle cluster, if there is one. */
+  public Optional<Lease> tryAcquire() {
+    Preconditions.checkState(!closed, "The pool is closed");
+    if (!available.tryAcquire()) {
+      return Optional.empty();
+    }
+    return Optional.of(new Lease(pollIdle()));
+  }
+
+  /** The number of clusters that can be leased right now. */
+  public int getIdleCount() {
+    return available.availablePermits();
+  }
+
+  /** The number of clusters replaced because their reset failed. */
+  public int getReplacementCount() {
+    return replacements.get();
+  }
+
+  /** Stops all the clusters and releases their ports. Leased clusters are stopped when they are
+   * returned. The data directories are kept. Resets in progress are interrupted, and waited for so
+   * they don't start clusters once stopped.
+   */
+  @Override
+  public void close() {
+    closed = true;
+    executor.shutdownNow();
+    boolean interrupted = false;
+    while (!executor.isTerminated()) {
+      try {
+        executor.awaitTermination(1, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+
+    Member member;
+    while ((member = members.poll()) != null) {
+      idle.remove(member);
+      discard(member);
+    }
+  }
+
+  /** Takes the idle cluster whose permit was acquired, which close() may have taken meanwhile. */
+  private Member pollIdle() {
+    Member member = idle.poll();
+    Preconditions.checkState(member != null, "The pool is closed");
+    return member;
+  }
+
+  private Member create(int index) throws Exception {
+    Path dataDirectory = root.resolve("cluster-" + index);
+    Path pristine = root.resolve("cluster-" + index + ".pristine");
+    CacheDirectory.deleteRecursively(dataDirectory);
+
+    PortLease port = ports.allocate();
+    try {
+      PostgresCluster cluster = installation.createCluster(dataDirectory, options, port);
+
+      if (reset == null) {
+        CacheDirectory.deleteRecursively(pristine);
+        ClusterTemplateCache.copyCluster(dataDirectory, pristine);
+      }
+
+      Member member = new Member(cluster, dataDirectory, pristine, port,
+          root.resolve("cluster-" + index + ".log"), index);
+      cluster.start(member.logFile);
+      return member;
+    } catch (Exception | Error e) {
+      port.close();
+      throw e;
+    }
+  }
+
+  private void makeIdle(Member member) {
+    members.add(member);
+    if (closed) {
+      discardMember(member);
+      return;
+    }
+    idle.add(member);
+    available.release();
+  }
+
+  private void returned(Member member) {
+    if (closed) {
+      discardMember(member);
+      return;
+    }
+    try {
+      executor.execute(() -> {
+        try {
+          if (reset != null) {
+            reset.reset(member);
+          } else {
+            restore(member);
+          }
+          // Once closed, close() stops the members left after the resets in progress end
+          if (!closed) {
+            idle.add(member);
+            available.release();
+          }
+        } catch (Exception e) {
+          if (discardMember(member)) {
+            replace(member.index);
+          }
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      // Closed meanwhile
+      discardMember(member);
+    }
+  }
+
+  private void restore(Member member) throws Exception {
+    member.cluster.stop(member.logFile);
+    CacheDirectory.deleteRecursively(member.dataDirectory);
+    ClusterTemplateCache.copyCluster(member.pristine, member.dataDirectory);
+    if (!closed) {
+      member.cluster.start(member.logFile);
+    }
+  }
+
+  private void replace(int index) {
+    if (closed) {
+      return;
+    }
+    try {
+      makeIdle(create(index));
+      replacements.incrementAndGet();
+    } catch (Exception e) {
+      // The pool goes on with one cluster less
+    }
+  }
+
+  /** Discards the member unless someone else removed it from the pool, and did it already.
+   * @return Whether it was discarded by this call
+   */
+  private boolean discardMember(Member member) {
+    if (!members.remove(member)) {
+      return false;
+    }
+    discard(member);
+    return true;
+  }
+
+  private static void discard(Member member) {
+    try {
+      member.cluster.stop(member.logFile);
+    } catch (Exception e) {
+      // Maybe not running, the port is released anyway
+    }
+    try {
+      member.port.close();
+    } catch (IOException e) {
+      // Nothing else to do with it
+    }
+  }
+
+  /** A cluster of the pool. */
+  public static class Member {
+
+    private final PostgresCluster cluster;
+    private final Path dataDirectory;
+    private final Path pristine;
+    private final PortLease port;
+    private final Path logFile;
+    private final int index;
+
+    private Member(PostgresCluster cluster, Path dataDirectory, Path pristine, PortLease port,
+        Path logFile, int index) {
+      this.cluster = cluster;
+      this.dataDirectory = dataDirectory;
+      this.pristine = pristine;
+      this.port = port;
+      this.logFile = logFile;
+      this.index = index;
+    }
+
+    public PostgresCluster getCluster() {
+      return cluster;
+    }
+
+    public Path getDataDirectory() {
+      return dataDirectory;
+    }
+
+    public int getPort() {
+      return port.getPort();
+    }
+
+    public Path getSocketDirectory() {
+      return port.getSocketDirectory();
+    }
+
+    /** The log file given to pg_ctl on every start and stop. */
+    public Path getLogFile() {
+      return logFile;
+    }
+  }
+
+  /** A cluster leased from the pool, which is returned to it when the lease is closed. */
+  public class Lease implements Closeable {
+
+    private final Member member;
+    private final AtomicBoolean returned = new AtomicBoolean();
+
+    private Lease(Member member) {
+      this.member = member;
+    }
+
+    public Member getMember() {
+      return member;
+    }
+
+    public PostgresCluster getCluster() {
+      return member.getCluster();
+    }
+
+    public int getPort() {
+      return member.getPort();
+    }
+
+    public Path getSocketDirectory() {
+      return member.getSocketDirectory();
+    }
+
+    @Override
+    public void close() {
+      if (returned.compareAndSet(false, true)) {
+        returned(member);
+      }
+    }
+  }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright 2017, OnGres.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.ongres.pgdeploy.installations;
+
+import com.google.common.base.Preconditions;
+import com.ongres.pgdeploy.core.PostgresInstallationFolder;
+import com.ongres.pgdeploy.core.router.Router;
+import net.jcip.annotations.Immutable;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.UserPrincipal;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import javax.annotation.Nonnull;
+
+/** Checks, before running initdb, the things that would make it fail or leave a cluster that
+ * can't start: that the destination can be written and has enough free space, that the
+ * installation has its initdb and libraries and, optionally, that the port of the cluster is free.
+ * The checks are independent, so they run in parallel and all their problems are reported at
+ * once.
+ */
+@Immutable
+public class ClusterPreflight {
+
+  /** The free space required by default, configurable through the
+   * <tt>pgdeploy.cluster.minFreeSpace</tt> system property, in bytes. A fresh cluster takes
+   * about 40 MB.
+   */
+  static final long defaultMinFreeSpace =
+      Long.getLong("pgdeploy.cluster.minFreeSpace", 64L * 1024 * 1024);
+
+  private final Router router;
+  private final Path installation;
+  private final long minFreeSpace;
+
+  public ClusterPreflight(@Nonnull Router router, @Nonnull Path installation) {
+    this(router, installation, defaultMinFreeSpace);
+  }
+
+  public ClusterPreflight(@Nonnull Router router, @Nonnull Path installation, long minFreeSpace) {
+    this.router = Preconditions.checkNotNull(router);
+    this.installation = Preconditions.checkNotNull(installation);
+    this.minFreeSpace = minFreeSpace;
+  }
+
+  /** Runs all the checks for a cluster in <tt>destination</tt>.
+   * @param port The port the cluster will listen on, which is not checked if absent
+   * @return The problems found, empty if there are none
+   */
+  public List<String> check(@Nonnull Path destination, @Nonnull OptionalInt port) {
+    Preconditions.checkNotNull(destination);
+    Preconditions.checkNotNull(port);
+
+    List<Supplier<Optional<String>>> checks = Arrays.asList(
+        () -> checkDestination(destination),
+        () -> checkFreeSpace(destination),
+        this::checkInitDb,
+        this::checkLibraries,
+        () -> port.isPresent() ? checkPort(port.getAsInt()) : Optional.empty());
+
+    List<CompletableFuture<Optional<String>>> futures = checks.stream()
+        .map(CompletableFuture::supplyAsync)
+        .collect(Collectors.toList());
+
+    return futures.stream()
+        .map(CompletableFuture::join)
+        .filter(Optional::isPresent)
+        .map(Optional::get)
+        .collect(Collectors.toList());
+  }
+
+  private Optional<String> checkDestination(Path destination) {
+    Path existing = nearestExisting(destination);
+    if (existing == null) {
+      return Optional.of("No ancestor of " + destination + " exists");
+    }
+    if (!Files.isDirectory(existing)) {
+      return Optional.of(existing + " is not a directory");
+    }
+    if (existing.equals(destination.toAbsolutePath())) {
+      // initdb sets the permissions of an existing destination itself, which only its owner can
+      if (!isOwnedByUser(existing)) {
+        return Optional.of("Directory " + existing + " is not owned by "
+            + System.getProperty("user.name"));
+      }
+      return Optional.empty();
+    }
+    if (!Files.isWritable(existing) || !Files.isExecutable(existing)) {
+      return Optional.of("Directory " + existing + " is not writable");
+    }
+    return Optional.empty();
+  }
+
+  private static boolean isOwnedByUser(Path directory) {
+    try {
+      UserPrincipal user = directory.getFileSystem().getUserPrincipalLookupService()
+          .lookupPrincipalByName(System.getProperty("user.name"));
+      return Files.getOwner(directory).equals(user);
+    } catch (IOException | UnsupportedOperationException ex) {
+      // Owners can't be told on this file system
+      return Files.isWritable(directory) && Files.isExecutable(directory);
+    }
+  }
+
+  private Optional<String> checkFreeSpace(Path destination) {
+    Path existing = nearestExisting(destination);
+    if (existing == null) {
+      // Already reported
+      return Optional.empty();
+    }
+    try {
+      long usable = Files.getFileStore(existing).getUsableSpace();
+      if (usable < minFreeSpace) {
+        return Optional.of("There are " + usable + " bytes free in " + existing + ", but "
+            + minFreeSpace + " are required");
+      }
+      return Optional.empty();
+    } catch (IOException ex) {
+      return Optional.of("Unable to get the free space of " + existing + ": " + ex.getMessage());
+    }
+  }
+
+  private Optional<String> checkInitDb() {
+    Path initDb = router.routeToInitDb(installation);
+    if (!Files.isRegularFile(initDb) || !Files.isExecutable(initDb)) {
+      return Optional.of("initdb " + initDb.toAbsolutePath() + " not found or not executable");
+    }
+    return Optional.empty();
+  }
+
+  private Optional<String> checkLibraries() {
+    Path lib = installation.resolve(PostgresInstallationFolder.LIB.getStringId());
+    if (!Files.isDirectory(lib)) {
+      return Optional.of("Library folder " + lib.toAbsolutePath() + " not found");
+    }
+    return Optional.empty();
+  }
+
+  private static Optional<String> checkPort(int port) {
+    try (ServerSocket socket = new ServerSocket()) {
+      // As the server does, so connections in TIME_WAIT don't make the port look busy
+      socket.setReuseAddress(true);
+      socket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+      return Optional.empty();
+    } catch (IOException ex) {
+      return Optional.of("Port " + port + " is in use");
+    }
+  }
+
+  private static Path nearestExisting(Path path) {
+    Path current = path.toAbsolutePath();
+    while (current != null && !Files.exists(current)) {
+      current = current.getParent();
+    }
+    return current;
+  }
+}
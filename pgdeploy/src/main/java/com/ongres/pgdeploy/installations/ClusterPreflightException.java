@@ -0,0 +1,63 @@
+/*
+ * Copyright 2017, OnGres.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.ongres.pgdeploy.installations;
+
+import com.google.common.collect.ImmutableList;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+/** Thrown when a cluster is not created because some {@link ClusterPreflight} checks failed, so
+ * initdb was not run.
+ */
+public class ClusterPreflightException extends IOException {
+
+  private static final long serialVersionUID = 1L;
+
+  private final ImmutableList<String> problems;
+
+  public ClusterPreflightException(String s, List<String> problems) {
+    super(s);
+    this.problems = ImmutableList.copyOf(problems);
+  }
+
+  public static ClusterPreflightException create(Path destination, List<String> problems) {
+
+    StringBuilder sb = new StringBuilder();
+
+    sb.append("Cluster ");
+    sb.append(destination.toString());
+    sb.append(" can't be created: ");
+    sb.append(String.join("; ", problems));
+
+    return new ClusterPreflightException(sb.toString(), problems);
+  }
+
+  /** The problems found, each one a message. */
+  public List<String> getProblems() {
+    return problems;
+  }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2017, OnGres.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.ongres.pgdeploy.installations;
+
+import com.google.common.base.Preconditions;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.ongres.pgdeploy.wrappers.InitDbWrapper;
+import com.ongres.pgdeploy.wrappers.exceptions.BadProcessExecutionException;
+import net.jcip.annotations.ThreadSafe;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+
+/** A cache of pristine data directories, shared among processes through the file system.
+ * Instead of running initdb for every cluster, initdb is run once per initdb binary and set of
+ * arguments, and new clusters are created by copying the resulting template.
+ *
+ * <p>Templates are never started. Clusters are always copied, never linked, as PostgreSQL
+ * modifies its data files in place.
+ */
+@ThreadSafe
+public class ClusterTemplateCache {
+
+  private final Path root;
+
+  public ClusterTemplateCache(@Nonnull Path root) {
+    this.root = Preconditions.checkNotNull(root).toAbsolutePath();
+  }
+
+  public Path getRoot() {
+    return root;
+  }
+
+  /** Creates a cluster in <tt>destination</tt> as initdb would do with the given arguments, running
+   * it first to create the template if there is not one yet.
+   * @param initDb The path of the initdb binary
+   * @param destination The folder of the cluster, which must not exist or be empty
+   * @param initDbArguments The arguments for initdb, others than the data directory
+   * @throws IOException In case initdb is not found, or the cache or the cluster cannot be written
+   * @throws InterruptedException The template was being created and initdb was interrupted
+   * @throws BadProcessExecutionException initdb failed to create the template
+   */
+  public void createCluster(
+      @Nonnull Path initDb, @Nonnull Path destination, @Nonnull List<String> initDbArguments)
+      throws IOException, InterruptedException, BadProcessExecutionException {
+    Preconditions.checkNotNull(initDb);
+    Preconditions.checkNotNull(destination);
+    Preconditions.checkNotNull(initDbArguments);
+
+    Path template = populate(initDb, initDbArguments);
+    copyCluster(template, destination);
+  }
+
+  /** Copies a data directory, keeping the permissions that the server requires.
+   * @param destination The folder of the copy, which must not exist or be empty; its missing
+   *                    parents are created, as initdb does
+   */
+  static void copyCluster(Path source, Path destination) throws IOException {
+    Path parent = destination.toAbsolutePath().getParent();
+    if (parent != null) {
+      Files.createDirectories(parent);
+    }
+    Files.walkFileTree(source, new Copier(source, destination));
+  }
+
+  private Path populate(Path initDb, List<String> initDbArguments)
+      throws IOException, InterruptedException, BadProcessExecutionException {
+    return CacheDirectory.<InterruptedException, BadProcessExecutionException>populate(
+        root, templateKey(initDb, initDbArguments),
+        temporary -> InitDbWrapper.run(initDb, temporary, initDbArguments));
+  }
+
+  /** The key of a template identifies the initdb binary, by its path, size and modification time,
+   * so reinstalling a different version on the same path does not reuse stale templates.
+   */
+  private static String templateKey(Path initDb, List<String> initDbArguments)
+      throws IOException {
+    if (!Files.exists(initDb)) {
+      throw new IOException("initDB file " + initDb.toAbsolutePath() + " not found");
+    }
+
+    BasicFileAttributes attributes = Files.readAttributes(initDb, BasicFileAttributes.class);
+
+    Hasher hasher = Hashing.sha256().newHasher()
+        .putString(initDb.toAbsolutePath().normalize().toString(), StandardCharsets.UTF_8)
+        .putLong(attributes.size())
+        .putLong(attributes.lastModifiedTime().toMillis());
+    for (String argument : initDbArguments) {
+      hasher.putChar('\0').putString(argument, StandardCharsets.UTF_8);
+    }
+    return hasher.hash().toString();
+  }
+
+  private static class Copier extends SimpleFileVisitor<Path> {
+
+    private final Path source;
+    private final Path target;
+
+    private Copier(Path source, Path target) {
+      this.source = source;
+      this.target = target;
+    }
+
+    @Override
+    public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs)
+        throws IOException {
+      Path copy = target.resolve(source.relativize(dir).toString());
+      if (!Files.isDirectory(copy)) {
+        Files.copy(dir, copy, StandardCopyOption.COPY_ATTRIBUTES);
+      } else {
+        // An existing empty destination, whose permissions must be as strict as initdb's
+        PosixFileAttributeView view =
+            Files.getFileAttributeView(copy, PosixFileAttributeView.class);
+        if (view != null) {
+          view.setPermissions(Files.getPosixFilePermissions(dir));
+        }
+      }
+      return FileVisitResult.CONTINUE;
+    }
+
+    @Override
+    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+      Path copy = target.resolve(source.relativize(file).toString());
+      Files.copy(file, copy, StandardCopyOption.COPY_ATTRIBUTES, LinkOption.NOFOLLOW_LINKS);
+      return FileVisitResult.CONTINUE;
+    }
+  }
+}
@@ -54,8 +54,11 @@ import java.io.IOException;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.List;
+import java.util.OptionalInt;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 @Immutable
 public class ConcretePostgresInstallation extends PostgresInstallation {
@@ -63,15 +66,32 @@ public class ConcretePostgresInstallation extends PostgresInstallation {
   private final Router router;
   private final PropertyParser parser;
   private final Path path;
+  @Nullable
+  private final ClusterTemplateCache templates;
 
   public ConcretePostgresInstallation(PostgresInstallationSupplier supplier, Path path) {
     this( supplier.getRouter(), supplier.getParser(), path);
   }
 
   public ConcretePostgresInstallation(Router router, PropertyParser parser, Path path) {
+    this(router, parser, path, null);
+  }
+
+  private ConcretePostgresInstallation(Router router, PropertyParser parser, Path path,
+      @Nullable ClusterTemplateCache templates) {
     this.router = Preconditions.checkNotNull(router);
     this.parser = Preconditions.checkNotNull(parser);
     this.path = Preconditions.checkNotNull(path);
+    this.templates = templates;
+  }
+
+  /** Returns a view of this installation whose clusters are copied from templates kept in
+   * <tt>templates</tt>, so initdb only runs once per set of creation options.
+   */
+  public ConcretePostgresInstallation withClusterTemplates(
+      @Nonnull ClusterTemplateCache templates) {
+    return new ConcretePostgresInstallation(
+        router, parser, path, Preconditions.checkNotNull(templates));
   }
 
   public Router getRouter() {
@@ -108,8 +128,17 @@ public class ConcretePostgresInstallation extends PostgresInstallation {
         throw ClusterDirectoryNotEmptyException.fromPath(destination);
       }
     }
-    
-    InitDbWrapper.run(router.routeToInitDb(path),destination, options.toArgumentList());
+
+    List<String> problems = preflight(destination, OptionalInt.empty());
+    if (!problems.isEmpty()) {
+      throw ClusterPreflightException.create(destination, problems);
+    }
+
+    if (templates != null) {
+      templates.createCluster(router.routeToInitDb(path), destination, options.toArgumentList());
+    } else {
+      InitDbWrapper.run(router.routeToInitDb(path),destination, options.toArgumentList());
+    }
 
     checkCluster(destination);
 
@@ -117,6 +146,16 @@ public class ConcretePostgresInstallation extends PostgresInstallation {
 
   }
 
+  /** Checks, without running initdb, whether a cluster can be created in <tt>destination</tt>
+   * and, if <tt>port</tt> is given, whether it is free. {@link #createCluster(Path)} runs the
+   * same checks, but for the port, and throws a {@link ClusterPreflightException} if any fails.
+   * @return The problems found, empty if there are none
+   * @see ClusterPreflight
+   */
+  public List<String> preflight(@Nonnull Path destination, @Nonnull OptionalInt port) {
+    return new ClusterPreflight(router, path).check(destination, port);
+  }
+
   @Override
   public void checkCluster(@Nonnull Path destination) throws BadClusterException {
     Preconditions.checkNotNull(destination);
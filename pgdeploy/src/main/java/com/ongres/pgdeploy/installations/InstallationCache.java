@@ -0,0 +1,195 @@
+/*
+ * Copyright 2017, OnGres.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.ongres.pgdeploy.installations;
+
+import com.google.common.base.Preconditions;
+import com.ongres.pgdeploy.core.PostgresInstallationFolder;
+import com.ongres.pgdeploy.core.PostgresInstallationSupplier;
+import com.ongres.pgdeploy.core.exceptions.NonWritableDestinationException;
+import com.ongres.pgdeploy.core.exceptions.UnreachableBinariesException;
+import net.jcip.annotations.ThreadSafe;
+
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/** A local cache of unpacked installations, shared among processes through the file system.
+ * Every supplier is unpacked once, with all its folders, into a directory of the cache named after
+ * its {@link PostgresInstallationSupplier#getCacheKey() cache key}. New installations are then
+ * materialized from that directory, which only takes a metadata operation per file when
+ * hard links are used.
+ *
+ * <p>With {@link Materialization#HARDLINK} the installed files share their inode with the cached
+ * ones, so they must not be modified in place. When the installation and the cache are on
+ * different file systems, files are copied instead.
+ */
+@ThreadSafe
+public class InstallationCache {
+
+  public enum Materialization {
+    HARDLINK,
+    COPY
+  }
+
+  private static final List<PostgresInstallationFolder> allFolders =
+      Arrays.asList(PostgresInstallationFolder.values());
+
+  private final Path root;
+  private final Materialization materialization;
+
+  public InstallationCache(@Nonnull Path root) {
+    this(root, Materialization.HARDLINK);
+  }
+
+  public InstallationCache(@Nonnull Path root, @Nonnull Materialization materialization) {
+    this.root = Preconditions.checkNotNull(root).toAbsolutePath();
+    this.materialization = Preconditions.checkNotNull(materialization);
+  }
+
+  public Path getRoot() {
+    return root;
+  }
+
+  /** Installs the desired folders of the supplier in <tt>destination</tt>, unpacking them in the
+   * cache first if they are not there yet. Suppliers without a cache key are directly unpacked.
+   * @param supplier The supplier of the binaries
+   * @param folders The folders to be installed
+   * @param destination The path of the installation, which must not exist
+   * @param executor The executor to unpack the binaries on, or null to unpack them sequentially
+   * @throws NonWritableDestinationException In case the destination folder is not writable.
+   * @throws UnreachableBinariesException In case the packed binaries are unreachable
+   * @throws IOException In case the cache or the destination cannot be written
+   */
+  public void install(
+      @Nonnull PostgresInstallationSupplier supplier,
+      @Nonnull List<PostgresInstallationFolder> folders,
+      @Nonnull Path destination,
+      @Nullable ExecutorService executor)
+      throws IOException, NonWritableDestinationException, UnreachableBinariesException {
+
+    Preconditions.checkNotNull(supplier);
+    Preconditions.checkNotNull(folders);
+    Preconditions.checkNotNull(destination);
+
+    Optional<String> key = supplier.getCacheKey();
+    if (!key.isPresent()) {
+      unpack(supplier, folders, destination, executor);
+      return;
+    }
+
+    Path entry = populate(supplier, key.get(), executor);
+
+    if (!destination.toFile().mkdir()) {
+      throw new NonWritableDestinationException(
+          "Unable to create or open file: " + destination.toAbsolutePath());
+    }
+
+    Materializer materializer = new Materializer(entry, destination);
+    for (PostgresInstallationFolder folder : folders) {
+      Path source = entry.resolve(folder.getStringId());
+      if (Files.isDirectory(source)) {
+        Files.walkFileTree(source, materializer);
+      }
+    }
+  }
+
+  private Path populate(PostgresInstallationSupplier supplier, String key,
+      @Nullable ExecutorService executor)
+      throws IOException, NonWritableDestinationException, UnreachableBinariesException {
+    return CacheDirectory.<NonWritableDestinationException, UnreachableBinariesException>populate(
+        root, key, temporary -> unpack(supplier, allFolders, temporary, executor));
+  }
+
+  private static void unpack(PostgresInstallationSupplier supplier,
+      List<PostgresInstallationFolder> folders, Path destination,
+      @Nullable ExecutorService executor)
+      throws IOException, NonWritableDestinationException, UnreachableBinariesException {
+    if (executor != null) {
+      supplier.unpackFolders(destination, folders, executor);
+    } else {
+      supplier.unpackFolders(destination, folders);
+    }
+  }
+
+  private class Materializer extends SimpleFileVisitor<Path> {
+
+    private final Path source;
+    private final Path target;
+    private boolean linksAllowed = materialization == Materialization.HARDLINK;
+
+    private Materializer(Path source, Path target) {
+      this.source = source;
+      this.target = target;
+    }
+
+    @Override
+    public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs)
+        throws IOException {
+      Path copy = target.resolve(source.relativize(dir).toString());
+      if (!Files.isDirectory(copy)) {
+        Files.copy(dir, copy, StandardCopyOption.COPY_ATTRIBUTES);
+      }
+      return FileVisitResult.CONTINUE;
+    }
+
+    @Override
+    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+      Path copy = target.resolve(source.relativize(file).toString());
+
+      if (attrs.isSymbolicLink()) {
+        Files.createSymbolicLink(copy, Files.readSymbolicLink(file));
+        return FileVisitResult.CONTINUE;
+      }
+
+      if (linksAllowed) {
+        try {
+          Files.createLink(copy, file);
+          return FileVisitResult.CONTINUE;
+        } catch (FileAlreadyExistsException ex) {
+          throw ex;
+        } catch (UnsupportedOperationException | IOException ex) {
+          // Probably a different file system, so no file will be linkable
+          linksAllowed = false;
+        }
+      }
+
+      Files.copy(file, copy, StandardCopyOption.COPY_ATTRIBUTES, LinkOption.NOFOLLOW_LINKS);
+      return FileVisitResult.CONTINUE;
+    }
+  }
+}
@@ -38,14 +38,32 @@
  */
 package com.ongres.pgdeploy.installations;
 
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.ongres.pgdeploy.clusters.PortAllocator;
+import com.ongres.pgdeploy.clusters.PortLease;
 import com.ongres.pgdeploy.clusters.PostgresCluster;
 import com.ongres.pgdeploy.clusters.PostgresClusterCreationOptions;
 import com.ongres.pgdeploy.core.router.Router;
+import com.ongres.pgdeploy.pgconfig.PostgresConfig;
+import com.ongres.pgdeploy.pgconfig.properties.exceptions.PropertyNotFoundException;
+import com.ongres.pgdeploy.pgconfig.properties.exceptions.UnitNotAvailableForPropertyException;
+import com.ongres.pgdeploy.pgconfig.properties.exceptions.WrongTypePropertyException;
 import com.ongres.pgdeploy.wrappers.exceptions.BadProcessExecutionException;
 import net.jcip.annotations.Immutable;
 
 import java.io.IOException;
 import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
 
 import javax.annotation.Nonnull;
 
@@ -96,5 +114,102 @@ public abstract class PostgresInstallation {
       throws BadClusterException, IOException,
       InterruptedException, ClusterDirectoryNotEmptyException, BadProcessExecutionException;
 
+  /** Creates a cluster as {@link #createCluster(Path, PostgresClusterCreationOptions)} does, and
+   * writes the port and the Unix socket directory of <tt>port</tt> into its configuration, so it
+   * doesn't collide with other clusters when started. The lease stays with the caller, who must
+   * close it once the cluster is stopped.
+   * @param port A lease taken from a {@link PortAllocator}
+   * @throws BadClusterException The cluster was created, but its configuration has no such
+   *     properties, as with servers older than 9.3
+   */
+  public PostgresCluster createCluster(@Nonnull Path destination,
+      PostgresClusterCreationOptions options, @Nonnull PortLease port)
+      throws BadClusterException, IOException,
+      InterruptedException, ClusterDirectoryNotEmptyException, BadProcessExecutionException {
+    Preconditions.checkNotNull(port);
+
+    PostgresCluster cluster = createCluster(destination, options);
+    PostgresConfig config;
+    try {
+      config = port.applyTo(cluster.createConfigBuilder()).build();
+    } catch (PropertyNotFoundException | WrongTypePropertyException
+        | UnitNotAvailableForPropertyException e) {
+      throw new BadClusterException("Unable to set " + port + " in the cluster in "
+          + destination + ": " + e.getMessage());
+    }
+    cluster.config(config);
+    return cluster;
+  }
+
+  /** Creates several clusters with the same options, running up to <tt>parallelism</tt> initdb
+   * processes at the same time. The failure of a cluster does not prevent the others from being
+   * created; it is reported in its result instead.
+   * @param destinations The folders where the clusters will be created, following the same rules
+   *                     as in {@link #createCluster(Path, PostgresClusterCreationOptions)}. They
+   *                     must be different.
+   * @param options The options for the creation of every cluster.
+   * @param parallelism The maximum number of clusters being created at the same time.
+   * @return The result of the creation of each cluster, in the same order as
+   *     <tt>destinations</tt>
+   * @throws InterruptedException The current thread was interrupted while waiting for the
+   *     clusters. Clusters whose creation was in progress are stopped.
+   */
+  public List<ClusterCreationResult> createClusters(@Nonnull List<Path> destinations,
+      @Nonnull PostgresClusterCreationOptions options, int parallelism)
+      throws InterruptedException {
+    Preconditions.checkNotNull(destinations);
+    Preconditions.checkNotNull(options);
+    Preconditions.checkArgument(parallelism > 0, "parallelism must be positive");
+    Preconditions.checkArgument(destinations.stream()
+        .map(destination -> destination.toAbsolutePath().normalize())
+        .distinct().count() == destinations.size(),
+        "Destinations must be different");
+
+    if (destinations.isEmpty()) {
+      return new ArrayList<>();
+    }
+
+    List<Callable<ClusterCreationResult>> tasks = destinations.stream()
+        .map(destination -> (Callable<ClusterCreationResult>) () ->
+            timedCreateCluster(destination, options))
+        .collect(Collectors.toList());
+
+    ExecutorService executor = Executors.newFixedThreadPool(
+        Math.min(parallelism, destinations.size()),
+        new ThreadFactoryBuilder().setNameFormat("pgdeploy-initdb-%d").setDaemon(true).build());
+    try {
+      List<ClusterCreationResult> results = new ArrayList<>(destinations.size());
+      for (Future<ClusterCreationResult> future : executor.invokeAll(tasks)) {
+        try {
+          results.add(future.get());
+        } catch (ExecutionException e) {
+          // Only errors escape from timedCreateCluster
+          Throwables.throwIfUnchecked(e.getCause());
+          throw new AssertionError(e.getCause());
+        }
+      }
+      return results;
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private ClusterCreationResult timedCreateCluster(
+      Path destination, PostgresClusterCreationOptions options) {
+    long startTime = System.nanoTime();
+    try {
+      PostgresCluster cluster = createCluster(destination, options);
+      return ClusterCreationResult.success(
+          destination, cluster, Duration.ofNanos(System.nanoTime() - startTime));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return ClusterCreationResult.failure(
+          destination, e, Duration.ofNanos(System.nanoTime() - startTime));
+    } catch (Exception e) {
+      return ClusterCreationResult.failure(
+          destination, e, Duration.ofNanos(System.nanoTime() - startTime));
+    }
+  }
+
   public abstract void checkCluster(@Nonnull Path destination) throws BadClusterException;
 }
@@ -0,0 +1,366 @@
+/*
+ * Copyright 2017, OnGres.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.ongres.pgdeploy.suppliers;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Suppliers;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSortedMap;
+import com.ongres.pgdeploy.core.Platform;
+import com.ongres.pgdeploy.core.PostgresInstallationSupplier;
+import com.ongres.pgdeploy.core.PostgresInstallationSupplierFeatures;
+import com.ongres.pgdeploy.core.pgversion.PostgresMajorVersion;
+import net.jcip.annotations.ThreadSafe;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.lang.reflect.InvocationTargetException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.ServiceConfigurationError;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/** An index of the {@link PostgresInstallationSupplier suppliers} available, keyed by the
+ * features they offer. It is built the first time it is queried and then shared by every thread.
+ *
+ * <p>When built from a class loader, the index is read from the
+ * <tt>META-INF/pgdeploy/suppliers.csv</tt> resources, whose lines have the format
+ * <tt>class|major|minor|os|arch|extraVersion</tt>, so suppliers are only instantiated when they
+ * are found. Suppliers registered as services without such a line are instantiated and asked
+ * through {@link PostgresInstallationSupplier#accepts accepts}, as before.
+ *
+ * <p>Indexed suppliers are also sorted by minor version within their major version, platform and
+ * extra version, so the latest one or those in a range of minors can be found directly.
+ */
+@ThreadSafe
+public class SupplierRegistry {
+
+  public static final String descriptorResource = "META-INF/pgdeploy/suppliers.csv";
+
+  private static final String serviceResource =
+      "META-INF/services/" + PostgresInstallationSupplier.class.getName();
+
+  private static final String delimiter = "|";
+
+  private final Supplier<Index> index;
+
+  private SupplierRegistry(Supplier<Index> indexBuilder) {
+    this.index = Suppliers.memoize(indexBuilder::get);
+  }
+
+  /** Creates a registry with the suppliers described or registered as services in the resources
+   * of the given class loader.
+   */
+  public static SupplierRegistry fromClassLoader(@Nonnull ClassLoader classLoader) {
+    Preconditions.checkNotNull(classLoader);
+    return new SupplierRegistry(() -> buildIndex(classLoader));
+  }
+
+  /** Creates a registry with already instantiated suppliers. Those that don't expose their
+   * {@link PostgresInstallationSupplier#getFeatures() features} are asked in order.
+   */
+  public static SupplierRegistry fromSuppliers(
+      @Nonnull Iterable<PostgresInstallationSupplier> suppliers) {
+    Preconditions.checkNotNull(suppliers);
+    return new SupplierRegistry(() -> buildIndex(suppliers));
+  }
+
+  /** Returns the supplier offering the desired features, if any.
+   */
+  public Optional<PostgresInstallationSupplier> find(
+      @Nonnull PostgresInstallationSupplierFeatures features) {
+    Preconditions.checkNotNull(features);
+
+    Index current = index.get();
+
+    Supplier<PostgresInstallationSupplier> indexed = current.indexed.get(features);
+    if (indexed != null) {
+      PostgresInstallationSupplier supplier = indexed.get();
+      if (supplier.accepts(features)) {
+        return Optional.of(supplier);
+      }
+    }
+
+    for (Supplier<PostgresInstallationSupplier> candidate : current.unindexed) {
+      PostgresInstallationSupplier supplier = candidate.get();
+      if (supplier.accepts(features)) {
+        return Optional.of(supplier);
+      }
+    }
+
+    return Optional.empty();
+  }
+
+  /** Returns the indexed supplier with the highest minor version of the given major version,
+   * platform and extra version, if any.
+   * @param major The major version
+   * @param platform The platform
+   * @param extraVersion The extra version, or null for suppliers without it
+   */
+  public Optional<PostgresInstallationSupplier> findLatest(
+      @Nonnull PostgresMajorVersion major, @Nonnull Platform platform,
+      @Nullable String extraVersion) {
+
+    NavigableMap<Integer, PostgresInstallationSupplierFeatures> minors =
+        index.get().series.get(new Series(major, platform, extraVersion));
+    if (minors == null) {
+      return Optional.empty();
+    }
+
+    for (PostgresInstallationSupplierFeatures features : minors.descendingMap().values()) {
+      Optional<PostgresInstallationSupplier> result = find(features);
+      if (result.isPresent()) {
+        return result;
+      }
+    }
+    return Optional.empty();
+  }
+
+  /** Returns, sorted by minor version, the features of the indexed suppliers of the given major
+   * version, platform and extra version whose minor version is within the given bounds, both
+   * inclusive. No supplier is instantiated.
+   */
+  public List<PostgresInstallationSupplierFeatures> findFeatures(
+      @Nonnull PostgresMajorVersion major, @Nonnull Platform platform,
+      @Nullable String extraVersion, int fromMinor, int toMinor) {
+
+    NavigableMap<Integer, PostgresInstallationSupplierFeatures> minors =
+        index.get().series.get(new Series(major, platform, extraVersion));
+    if (minors == null || fromMinor > toMinor) {
+      return ImmutableList.of();
+    }
+    return ImmutableList.copyOf(minors.subMap(fromMinor, true, toMinor, true).values());
+  }
+
+  /** Returns the features offered by the indexed suppliers, without instantiating them.
+   */
+  public Set<PostgresInstallationSupplierFeatures> getIndexedFeatures() {
+    return index.get().indexed.keySet();
+  }
+
+  private static Index buildIndex(Iterable<PostgresInstallationSupplier> suppliers) {
+    Map<PostgresInstallationSupplierFeatures, Supplier<PostgresInstallationSupplier>> indexed =
+        new LinkedHashMap<>();
+    ImmutableList.Builder<Supplier<PostgresInstallationSupplier>> unindexed =
+        ImmutableList.builder();
+
+    for (PostgresInstallationSupplier supplier : suppliers) {
+      Optional<PostgresInstallationSupplierFeatures> features = supplier.getFeatures();
+      if (features.isPresent()) {
+        indexed.putIfAbsent(features.get(), () -> supplier);
+      } else {
+        unindexed.add(() -> supplier);
+      }
+    }
+
+    return new Index(ImmutableMap.copyOf(indexed), unindexed.build());
+  }
+
+  private static Index buildIndex(ClassLoader classLoader) {
+    Map<PostgresInstallationSupplierFeatures, Supplier<PostgresInstallationSupplier>> indexed =
+        new LinkedHashMap<>();
+    Set<String> describedClasses = new LinkedHashSet<>();
+
+    for (String line : readLines(classLoader, descriptorResource)) {
+      String[] columns = line.split(Pattern.quote(delimiter), -1);
+      if (columns.length < 5) {
+        continue;
+      }
+      Optional<PostgresInstallationSupplierFeatures> features = featuresFromColumns(columns);
+      if (!features.isPresent()) {
+        continue;
+      }
+
+      String className = columns[0].trim();
+      describedClasses.add(className);
+      indexed.putIfAbsent(features.get(), lazySupplier(classLoader, className));
+    }
+
+    ImmutableList.Builder<Supplier<PostgresInstallationSupplier>> unindexed =
+        ImmutableList.builder();
+    for (String className : readLines(classLoader, serviceResource)) {
+      if (!describedClasses.contains(className)) {
+        unindexed.add(lazySupplier(classLoader, className));
+      }
+    }
+
+    return new Index(ImmutableMap.copyOf(indexed), unindexed.build());
+  }
+
+  private static Optional<PostgresInstallationSupplierFeatures> featuresFromColumns(
+      String[] columns) {
+    Optional<PostgresMajorVersion> major = PostgresMajorVersion.fromString(columns[1].trim());
+    if (!major.isPresent()) {
+      return Optional.empty();
+    }
+
+    int minor;
+    try {
+      minor = Integer.parseInt(columns[2].trim());
+    } catch (NumberFormatException e) {
+      return Optional.empty();
+    }
+
+    Platform platform = new Platform(columns[3].trim(), columns[4].trim());
+    String extraVersion = columns.length > 5 && !columns[5].trim().isEmpty()
+        ? columns[5].trim() : null;
+
+    return Optional.of(
+        new PostgresInstallationSupplierFeatures(major.get(), minor, platform, extraVersion));
+  }
+
+  private static Supplier<PostgresInstallationSupplier> lazySupplier(
+      ClassLoader classLoader, String className) {
+    return Suppliers.memoize(() -> {
+      try {
+        return Class.forName(className, true, classLoader)
+            .asSubclass(PostgresInstallationSupplier.class)
+            .getDeclaredConstructor()
+            .newInstance();
+      } catch (InvocationTargetException e) {
+        throw new ServiceConfigurationError(
+            "Supplier " + className + " could not be instantiated", e.getCause());
+      } catch (ReflectiveOperationException | ClassCastException | LinkageError e) {
+        throw new ServiceConfigurationError(
+            "Supplier " + className + " could not be instantiated", e);
+      }
+    })::get;
+  }
+
+  /** Reads the non empty, non comment lines of every resource with the given name.
+   */
+  private static List<String> readLines(ClassLoader classLoader, String resource) {
+    ImmutableList.Builder<String> result = ImmutableList.builder();
+
+    try {
+      Enumeration<URL> urls = classLoader.getResources(resource);
+      while (urls.hasMoreElements()) {
+        URL url = urls.nextElement();
+        try (BufferedReader reader = new BufferedReader(
+            new InputStreamReader(url.openStream(), StandardCharsets.UTF_8))) {
+          String line;
+          while ((line = reader.readLine()) != null) {
+            int comment = line.indexOf('#');
+            if (comment >= 0) {
+              line = line.substring(0, comment);
+            }
+            line = line.trim();
+            if (!line.isEmpty()) {
+              result.add(line);
+            }
+          }
+        }
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException("Unable to read " + resource, e);
+    }
+
+    return result.build();
+  }
+
+  private static class Index {
+
+    private final ImmutableMap<PostgresInstallationSupplierFeatures,
+        Supplier<PostgresInstallationSupplier>> indexed;
+    private final ImmutableList<Supplier<PostgresInstallationSupplier>> unindexed;
+
+    private final ImmutableMap<Series,
+        NavigableMap<Integer, PostgresInstallationSupplierFeatures>> series;
+
+    private Index(
+        ImmutableMap<PostgresInstallationSupplierFeatures,
+            Supplier<PostgresInstallationSupplier>> indexed,
+        ImmutableList<Supplier<PostgresInstallationSupplier>> unindexed) {
+      this.indexed = indexed;
+      this.unindexed = unindexed;
+
+      Map<Series, TreeMap<Integer, PostgresInstallationSupplierFeatures>> sorted = new HashMap<>();
+      for (PostgresInstallationSupplierFeatures features : indexed.keySet()) {
+        sorted.computeIfAbsent(new Series(features.getMajor(), features.getPlatform(),
+            features.getExtraVersion()), key -> new TreeMap<>())
+            .put(features.getMinor(), features);
+      }
+
+      ImmutableMap.Builder<Series, NavigableMap<Integer, PostgresInstallationSupplierFeatures>>
+          series = ImmutableMap.builder();
+      sorted.forEach((key, minors) -> series.put(key, ImmutableSortedMap.copyOfSorted(minors)));
+      this.series = series.build();
+    }
+  }
+
+  /** The features of a supplier except its minor version.
+   */
+  private static class Series {
+
+    private final PostgresMajorVersion major;
+    private final Platform platform;
+    @Nullable
+    private final String extraVersion;
+
+    private Series(PostgresMajorVersion major, Platform platform, @Nullable String extraVersion) {
+      this.major = Preconditions.checkNotNull(major);
+      this.platform = Preconditions.checkNotNull(platform);
+      this.extraVersion = extraVersion;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+
+      Series that = (Series) o;
+
+      return major.equals(that.major) && platform.equals(that.platform)
+          && Objects.equals(extraVersion, that.extraVersion);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(major, platform, extraVersion);
+    }
+  }
+}
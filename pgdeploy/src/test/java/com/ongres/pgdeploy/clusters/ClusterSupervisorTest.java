@@ -0,0 +1,247 @@
+/*
+ * Copyright 2017, OnGres.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.ongres.pgdeploy.clusters;
+
+import com.ongres.pgdeploy.wrappers.PostmasterPid;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.*;
+
+public class ClusterSupervisorTest {
+
+  private Path dataDirectory;
+  private FakeCluster cluster;
+  private ClusterSupervisor supervisor;
+
+  @Before
+  public void setup() throws Exception {
+    dataDirectory = Files.createTempDirectory("pgdeploy-data");
+    cluster = new FakeCluster(dataDirectory);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    if (supervisor != null) {
+      supervisor.close();
+    }
+    cluster.stop(null);
+    Files.delete(dataDirectory);
+  }
+
+  @Test(timeout = 30000)
+  public void crashedServersAreRestarted() throws Exception {
+    supervisor = new ClusterSupervisor(cluster, dataDirectory,
+        RestartPolicy.withBackoff(Duration.ofMillis(100), Duration.ofSeconds(1)), null);
+    supervisor.start();
+    assertEquals(ClusterSupervisor.State.RUNNING, supervisor.getState());
+    PostmasterPid first = supervisor.getPostmaster().get();
+    CompletableFuture<PostmasterPid> exit = supervisor.onExit();
+
+    // Killed without removing its pid file
+    cluster.crash();
+
+    assertEquals(first, exit.get(10, TimeUnit.SECONDS));
+    await(() -> supervisor.getRestartCount() == 1);
+
+    assertEquals(ClusterSupervisor.State.RUNNING, supervisor.getState());
+    assertEquals(1, supervisor.getCrashCount());
+    assertEquals(2, cluster.starts.get());
+    assertNotEquals(first.getPid(), supervisor.getPostmaster().get().getPid());
+    assertTrue(supervisor.getLastDowntime().compareTo(Duration.ofMillis(100)) >= 0);
+    assertEquals(supervisor.getLastDowntime(), supervisor.getTotalDowntime());
+  }
+
+  @Test(timeout = 30000)
+  public void stoppedServersAreNotRestarted() throws Exception {
+    supervisor = new ClusterSupervisor(cluster, dataDirectory,
+        RestartPolicy.withBackoff(Duration.ZERO, Duration.ZERO), null);
+    supervisor.start();
+    CompletableFuture<PostmasterPid> exit = supervisor.onExit();
+
+    supervisor.stop();
+    assertEquals(ClusterSupervisor.State.STOPPED, supervisor.getState());
+
+    exit.get(10, TimeUnit.SECONDS);
+    assertEquals(ClusterSupervisor.State.STOPPED, supervisor.getState());
+    assertEquals(0, supervisor.getCrashCount());
+    assertEquals(1, cluster.starts.get());
+  }
+
+  @Test(timeout = 30000)
+  public void stopsWaitForRestartsInFlight() throws Exception {
+    supervisor = new ClusterSupervisor(cluster, dataDirectory,
+        RestartPolicy.withBackoff(Duration.ZERO, Duration.ZERO), null);
+    supervisor.start();
+
+    cluster.startDelayMillis = 300;
+    cluster.crash();
+    await(() -> cluster.starts.get() == 2);
+    supervisor.stop();
+    await(() -> cluster.startedServers.get() == 2);
+
+    assertEquals(ClusterSupervisor.State.STOPPED, supervisor.getState());
+    assertFalse("A server is left running",
+        PostmasterPid.read(dataDirectory).filter(PostmasterPid::isAlive).isPresent());
+  }
+
+  @Test(timeout = 30000)
+  public void closedSupervisorsAreStopped() throws Exception {
+    supervisor = new ClusterSupervisor(cluster, dataDirectory,
+        RestartPolicy.withBackoff(Duration.ZERO, Duration.ZERO), null);
+    supervisor.start();
+    PostmasterPid postmaster = supervisor.getPostmaster().get();
+
+    supervisor.close();
+
+    assertEquals(ClusterSupervisor.State.STOPPED, supervisor.getState());
+    assertFalse(supervisor.getPostmaster().isPresent());
+    assertTrue("The server is left running", postmaster.isAlive());
+  }
+
+  @Test(timeout = 30000)
+  public void restartsAreLimitedByThePolicy() throws Exception {
+    supervisor = new ClusterSupervisor(cluster, dataDirectory,
+        RestartPolicy.withBackoff(Duration.ZERO, Duration.ZERO).withMaxRestarts(1), null);
+    supervisor.start();
+
+    cluster.crash();
+    await(() -> supervisor.getRestartCount() == 1);
+    cluster.crash();
+
+    await(() -> supervisor.getState() == ClusterSupervisor.State.FAILED);
+    assertEquals(2, supervisor.getCrashCount());
+    assertEquals(1, supervisor.getRestartCount());
+  }
+
+  @Test(timeout = 30000)
+  public void failedRestartsAreRetried() throws Exception {
+    supervisor = new ClusterSupervisor(cluster, dataDirectory,
+        RestartPolicy.withBackoff(Duration.ofMillis(10), Duration.ofMillis(50)), null);
+    supervisor.start();
+
+    cluster.failingStarts.set(2);
+    cluster.crash();
+
+    await(() -> supervisor.getRestartCount() == 1);
+    assertEquals(2, supervisor.getFailedRestartCount());
+    assertEquals(ClusterSupervisor.State.RUNNING, supervisor.getState());
+  }
+
+  @Test
+  public void backoffDoublesUpToTheMaximum() {
+    RestartPolicy policy = RestartPolicy.withBackoff(Duration.ofMillis(100), Duration.ofSeconds(1));
+
+    assertEquals(Duration.ofMillis(100), policy.backoff(0));
+    assertEquals(Duration.ofMillis(200), policy.backoff(1));
+    assertEquals(Duration.ofMillis(800), policy.backoff(3));
+    assertEquals(Duration.ofSeconds(1), policy.backoff(4));
+    assertEquals(Duration.ofSeconds(1), policy.backoff(Integer.MAX_VALUE));
+
+    assertFalse(RestartPolicy.never().allowsRestart(0));
+    assertTrue(policy.withMaxRestarts(3).allowsRestart(2));
+    assertFalse(policy.withMaxRestarts(3).allowsRestart(3));
+  }
+
+  private static void await(BooleanSupplier condition) throws InterruptedException {
+    while (!condition.getAsBoolean()) {
+      Thread.sleep(10);
+    }
+  }
+
+  /** Stands for a server with a process that prints its own pid and sleeps. */
+  private static class FakeCluster extends FakePostgresCluster {
+
+    private final Path dataDirectory;
+    private final AtomicInteger starts = new AtomicInteger();
+    private final AtomicInteger failingStarts = new AtomicInteger();
+    private final AtomicInteger startedServers = new AtomicInteger();
+    private volatile Process postmaster;
+    private volatile long startDelayMillis;
+
+    private FakeCluster(Path dataDirectory) {
+      this.dataDirectory = dataDirectory;
+    }
+
+    @Override
+    public void start(Path logFile) throws IOException {
+      if (failingStarts.getAndDecrement() > 0) {
+        throw new IOException("Failing start");
+      }
+      starts.incrementAndGet();
+      try {
+        Thread.sleep(startDelayMillis);
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        throw new IOException(ex);
+      }
+
+      postmaster = new ProcessBuilder("/bin/sh", "-c", "echo $$; exec sleep 60").start();
+      long pid;
+      try (BufferedReader reader = new BufferedReader(
+          new InputStreamReader(postmaster.getInputStream(), StandardCharsets.UTF_8))) {
+        pid = Long.parseLong(reader.readLine().trim());
+      }
+
+      Files.write(dataDirectory.resolve(PostmasterPid.fileName), Arrays.asList(
+          Long.toString(pid),
+          dataDirectory.toString(),
+          Long.toString(Instant.now().getEpochSecond()),
+          "5432",
+          "/tmp",
+          "localhost",
+          "  5432001    163840",
+          "ready"));
+      startedServers.incrementAndGet();
+    }
+
+    private void crash() throws InterruptedException {
+      postmaster.destroyForcibly().waitFor();
+    }
+
+    @Override
+    public void stop(Path logFile) throws IOException, InterruptedException {
+      if (postmaster != null) {
+        crash();
+      }
+      Files.deleteIfExists(dataDirectory.resolve(PostmasterPid.fileName));
+    }
+  }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2017, OnGres.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.ongres.pgdeploy.clusters;
+
+import com.ongres.pgdeploy.pgconfig.DefaultPropertyParser;
+import com.ongres.pgdeploy.pgconfig.PostgresConfig;
+import com.ongres.pgdeploy.wrappers.exceptions.BadProcessExecutionException;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** A cluster for tests that runs nothing and only keeps its state in memory. Tests override the
+ * operations they need to behave otherwise, so new abstract operations of {@link PostgresCluster}
+ * are only implemented here.
+ */
+public class FakePostgresCluster extends PostgresCluster {
+
+  private final AtomicInteger starts = new AtomicInteger();
+  private final AtomicInteger restarts = new AtomicInteger();
+  private volatile boolean running;
+  private volatile Thread lastThread;
+  private volatile PostgresConfig config;
+
+  @Override
+  public void start(Path logFile)
+      throws BadProcessExecutionException, IOException, InterruptedException {
+    lastThread = Thread.currentThread();
+    starts.incrementAndGet();
+    running = true;
+  }
+
+  /** Fails as pg_ctl does when the cluster is not running. */
+  @Override
+  public void stop(Path logFile)
+      throws BadProcessExecutionException, IOException, InterruptedException {
+    lastThread = Thread.currentThread();
+    if (!running) {
+      throw new BadProcessExecutionException("pg_ctl: PID file does not exist");
+    }
+    running = false;
+  }
+
+  @Override
+  public void restart(Path logFile)
+      throws BadProcessExecutionException, IOException, InterruptedException {
+    lastThread = Thread.currentThread();
+    restarts.incrementAndGet();
+    running = true;
+  }
+
+  @Override
+  public Status status(Path logFile)
+      throws BadProcessExecutionException, IOException, InterruptedException {
+    lastThread = Thread.currentThread();
+    return running ? Status.ACTIVE : Status.STOPPED;
+  }
+
+  @Override
+  public void config(PostgresConfig config, Path logFile)
+      throws IOException, BadProcessExecutionException, InterruptedException {
+    this.config = config;
+  }
+
+  /** The configuration of the last call to config, or an empty one. */
+  @Override
+  public PostgresConfig readConfig() throws IOException {
+    PostgresConfig current = config;
+    return current != null ? current : createConfigBuilder().build();
+  }
+
+  @Override
+  public PostgresConfig.Builder createConfigBuilder() {
+    return new PostgresConfig.Builder(DefaultPropertyParser.getInstance());
+  }
+
+  @Override
+  public void setPgHbaConf(String content, Path logFile) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void setPgHbaConf(Path originalFile, Path logFile) {
+    throw new UnsupportedOperationException();
+  }
+
+  public int getStarts() {
+    return starts.get();
+  }
+
+  public int getRestarts() {
+    return restarts.get();
+  }
+
+  public boolean isRunning() {
+    return running;
+  }
+
+  /** The thread of the last start, stop, restart or status. */
+  public Thread getLastThread() {
+    return lastThread;
+  }
+}
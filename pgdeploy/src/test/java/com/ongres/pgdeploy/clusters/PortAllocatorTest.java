@@ -0,0 +1,136 @@
+/*
+ * Copyright 2017, OnGres.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.ongres.pgdeploy.clusters;
+
+import com.ongres.pgdeploy.pgconfig.DefaultPropertyParser;
+import com.ongres.pgdeploy.pgconfig.PostgresConfig;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class PortAllocatorTest {
+
+  private Path lockDirectory;
+  private ServerSocket busy;
+  private int first;
+  private final List<PortLease> leases = new ArrayList<>();
+
+  @Before
+  public void setup() throws Exception {
+    lockDirectory = Files.createTempDirectory("pgdeploy-ports");
+
+    // The port after it is usually free, and the range starts with a busy one
+    busy = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+    first = busy.getLocalPort();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    for (PortLease lease : leases) {
+      lease.close();
+    }
+    busy.close();
+    try (Stream<Path> files = Files.walk(lockDirectory)) {
+      for (Path file : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+        Files.delete(file);
+      }
+    }
+  }
+
+  @Test(timeout = 30000)
+  public void concurrentLeasesAreUnique() throws Exception {
+    PortAllocator allocator = new PortAllocator(first, first + 40, lockDirectory);
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<PortLease>> futures = new ArrayList<>();
+      for (int i = 0; i < 20; i++) {
+        futures.add(executor.submit(allocator::allocate));
+      }
+      Set<Integer> ports = new HashSet<>();
+      for (Future<PortLease> future : futures) {
+        PortLease lease = future.get();
+        leases.add(lease);
+        assertTrue(ports.add(lease.getPort()));
+        assertNotEquals("Bound ports are skipped", first, lease.getPort());
+        assertTrue(Files.isDirectory(lease.getSocketDirectory()));
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void locksAreSharedAmongAllocators() throws Exception {
+    // Stands for an allocator of another JVM
+    PortAllocator other = new PortAllocator(first + 1, first + 1, lockDirectory);
+    PortAllocator allocator = new PortAllocator(first + 1, first + 1, lockDirectory);
+
+    PortLease lease = other.allocate();
+    leases.add(lease);
+    try {
+      allocator.allocate();
+      fail("The only port is leased by the other allocator");
+    } catch (IOException ex) {
+      // Expected
+    }
+
+    lease.close();
+    assertFalse(Files.exists(lease.getSocketDirectory()));
+    PortLease again = allocator.allocate();
+    leases.add(again);
+    assertEquals(first + 1, again.getPort());
+  }
+
+  @Test
+  public void leasesAreWrittenInTheConfig() throws Exception {
+    PortLease lease = new PortAllocator(first + 1, first + 10, lockDirectory).allocate();
+    leases.add(lease);
+
+    PostgresConfig config = lease.applyTo(
+        new PostgresConfig.Builder(DefaultPropertyParser.getInstance())).build();
+
+    assertEquals(2, config.asStream().count());
+    assertTrue(config.asStream().anyMatch(entry -> entry.getKey().getName().equals("port")
+        && entry.getValue().getValue().equals((long) lease.getPort())));
+  }
+}
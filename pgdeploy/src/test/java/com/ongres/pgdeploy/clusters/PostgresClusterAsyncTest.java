@@ -0,0 +1,124 @@
+/*
+ * Copyright 2017, OnGres.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.ongres.pgdeploy.clusters;
+
+import com.ongres.pgdeploy.wrappers.exceptions.BadProcessExecutionException;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class PostgresClusterAsyncTest {
+
+  private ExecutorService executor = Executors.newFixedThreadPool(2);
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void lifecycleOnGivenExecutor() throws Exception {
+    FakePostgresCluster cluster = new FakePostgresCluster();
+
+    cluster.startAsync(null, executor).get(10, TimeUnit.SECONDS);
+    assertEquals(PostgresCluster.Status.ACTIVE,
+        cluster.statusAsync(null, executor).get(10, TimeUnit.SECONDS));
+
+    cluster.restartAsync(null, executor).get(10, TimeUnit.SECONDS);
+    assertEquals(1, cluster.getRestarts());
+
+    cluster.stopAsync(null, executor).get(10, TimeUnit.SECONDS);
+    assertEquals(PostgresCluster.Status.STOPPED,
+        cluster.statusAsync(null, executor).get(10, TimeUnit.SECONDS));
+
+    assertNotEquals(Thread.currentThread(), cluster.getLastThread());
+  }
+
+  @Test
+  public void manyClustersOnABoundedExecutor() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    List<FakePostgresCluster> clusters = new ArrayList<>();
+    List<CompletableFuture<Void>> futures = new ArrayList<>();
+
+    for (int i = 0; i < 20; i++) {
+      FakePostgresCluster cluster = latchedCluster(release);
+      clusters.add(cluster);
+      futures.add(cluster.startAsync(null, executor));
+    }
+
+    assertFalse(futures.stream().anyMatch(CompletableFuture::isDone));
+    release.countDown();
+
+    CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]))
+        .get(10, TimeUnit.SECONDS);
+    assertTrue(clusters.stream().allMatch(FakePostgresCluster::isRunning));
+  }
+
+  @Test
+  public void failuresCompleteExceptionally() throws Exception {
+    FakePostgresCluster cluster = new FakePostgresCluster();
+
+    try {
+      cluster.stopAsync(null, executor).get(10, TimeUnit.SECONDS);
+      fail("Stopping a stopped cluster must fail");
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof BadProcessExecutionException);
+    }
+  }
+
+  @Test
+  public void defaultExecutor() throws Exception {
+    FakePostgresCluster cluster = new FakePostgresCluster();
+
+    cluster.startAsync().get(10, TimeUnit.SECONDS);
+
+    assertTrue(cluster.getLastThread().isDaemon());
+    assertEquals(PostgresCluster.Status.ACTIVE, cluster.statusAsync().get(10, TimeUnit.SECONDS));
+  }
+
+  /** Starts once the latch is released. */
+  private static FakePostgresCluster latchedCluster(CountDownLatch startLatch) {
+    return new FakePostgresCluster() {
+      @Override
+      public void start(Path logFile)
+          throws BadProcessExecutionException, IOException, InterruptedException {
+        startLatch.await();
+        super.start(logFile);
+      }
+    };
+  }
+}
@@ -0,0 +1,232 @@
+/*
+ * Copyright 2017, OnGres.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.ongres.pgdeploy.installations;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+import com.ongres.pgdeploy.clusters.FakePostgresCluster;
+import com.ongres.pgdeploy.clusters.PortAllocator;
+import com.ongres.pgdeploy.clusters.PostgresCluster;
+import com.ongres.pgdeploy.clusters.PostgresClusterCreationOptions;
+import com.ongres.pgdeploy.core.router.DefaultRouter;
+import com.ongres.pgdeploy.core.router.Router;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.annotation.Nonnull;
+
+import static org.junit.Assert.*;
+
+public class ClusterPoolTest {
+
+  private Path workDir;
+  private PortAllocator ports;
+  private FakeInstallation installation;
+  private ClusterPool pool;
+
+  @Before
+  public void setup() throws Exception {
+    workDir = Files.createTempDirectory("pgdeploy-pool");
+    try (ServerSocket socket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+      int first = socket.getLocalPort() + 1;
+      ports = new PortAllocator(first, first + 20, workDir.resolve("ports"));
+    }
+    installation = new FakeInstallation();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    if (pool != null) {
+      pool.close();
+    }
+    try (Stream<Path> files = Files.walk(workDir)) {
+      for (Path file : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+        Files.delete(file);
+      }
+    }
+  }
+
+  @Test(timeout = 30000)
+  public void clustersAreRestoredOnReturn() throws Exception {
+    pool = new ClusterPool(installation, workDir.resolve("pool"), 2,
+        PostgresClusterCreationOptions.defaultOptions(), ports, null);
+    pool.warmUp();
+    assertEquals(2, pool.getIdleCount());
+
+    ClusterPool.Lease first = pool.acquire(Duration.ofSeconds(1));
+    ClusterPool.Lease second = pool.acquire(Duration.ofSeconds(1));
+    assertNotEquals(first.getPort(), second.getPort());
+    assertTrue(((FakePostgresCluster) first.getCluster()).isRunning());
+    assertFalse(pool.tryAcquire().isPresent());
+    assertEquals(Integer.toString(first.getPort()), configuredPort(first.getCluster()));
+
+    Path testData = first.getMember().getDataDirectory().resolve("test-data");
+    Files.createFile(testData);
+    first.close();
+    first.close();
+
+    ClusterPool.Lease again = pool.acquire(Duration.ofSeconds(10));
+    assertEquals(first.getMember(), again.getMember());
+    assertFalse("The data directory is restored", Files.exists(testData));
+    assertTrue(Files.exists(again.getMember().getDataDirectory().resolve("PG_VERSION")));
+    assertTrue(((FakePostgresCluster) again.getCluster()).isRunning());
+    assertEquals(2, installation.created.get());
+  }
+
+  @Test(timeout = 30000)
+  public void failedResetsReplaceTheCluster() throws Exception {
+    AtomicInteger resets = new AtomicInteger();
+    pool = new ClusterPool(installation, workDir.resolve("pool"), 1,
+        PostgresClusterCreationOptions.defaultOptions(), ports, member -> {
+          if (resets.incrementAndGet() == 1) {
+            throw new IOException("Unable to reset");
+          }
+        });
+    pool.warmUp();
+
+    pool.acquire(Duration.ofSeconds(1)).close();
+    await(() -> pool.getReplacementCount() == 1);
+    ClusterPool.Lease lease = pool.acquire(Duration.ofSeconds(10));
+    lease.close();
+    pool.acquire(Duration.ofSeconds(10));
+
+    assertEquals(2, resets.get());
+    assertEquals(2, installation.created.get());
+  }
+
+  @Test(timeout = 30000, expected = TimeoutException.class)
+  public void acquisitionsTimeOut() throws Exception {
+    pool = new ClusterPool(installation, workDir.resolve("pool"), 1,
+        PostgresClusterCreationOptions.defaultOptions(), ports, member -> { });
+    pool.warmUp();
+
+    pool.acquire(Duration.ofSeconds(1));
+    pool.acquire(Duration.ofMillis(100));
+  }
+
+  @Test(timeout = 30000)
+  public void warmUpOnlyOnce() throws Exception {
+    pool = new ClusterPool(installation, workDir.resolve("pool"), 1,
+        PostgresClusterCreationOptions.defaultOptions(), ports, member -> { });
+    pool.warmUp();
+
+    try (ClusterPool.Lease lease = pool.acquire(Duration.ofSeconds(1))) {
+      try {
+        pool.warmUp();
+        fail("The pool was warmed up twice");
+      } catch (IllegalStateException e) {
+        // expected
+      }
+      assertTrue(Files.exists(lease.getMember().getDataDirectory().resolve("PG_VERSION")));
+    }
+  }
+
+  @Test(timeout = 30000)
+  public void closeWaitsForResetsInProgress() throws Exception {
+    CountDownLatch resetting = new CountDownLatch(1);
+    CountDownLatch reset = new CountDownLatch(1);
+    pool = new ClusterPool(installation, workDir.resolve("pool"), 1,
+        PostgresClusterCreationOptions.defaultOptions(), ports, member -> {
+          resetting.countDown();
+          // A reset that doesn't stop when interrupted, and starts the cluster again
+          Uninterruptibles.sleepUninterruptibly(300, TimeUnit.MILLISECONDS);
+          member.getCluster().start(member.getLogFile());
+          reset.countDown();
+        });
+    pool.warmUp();
+
+    ClusterPool.Lease lease = pool.acquire(Duration.ofSeconds(1));
+    lease.close();
+    resetting.await();
+    pool.close();
+    reset.await();
+
+    assertFalse("The cluster is left running", ((FakePostgresCluster) lease.getCluster()).isRunning());
+    assertEquals(0, pool.getIdleCount());
+  }
+
+  private static String configuredPort(PostgresCluster cluster) throws IOException {
+    return cluster.readConfig().asStream()
+        .filter(entry -> entry.getKey().getName().equals("port"))
+        .map(entry -> String.valueOf(entry.getValue().getValue()))
+        .findFirst()
+        .orElse(null);
+  }
+
+  private static void await(BooleanSupplier condition) throws InterruptedException {
+    while (!condition.getAsBoolean()) {
+      Thread.sleep(10);
+    }
+  }
+
+  private static class FakeInstallation extends PostgresInstallation {
+
+    private final AtomicInteger created = new AtomicInteger();
+
+    @Override
+    public Router getRouter() {
+      return DefaultRouter.getInstance();
+    }
+
+    @Override
+    public Path getPath() {
+      return Paths.get("installation");
+    }
+
+    @Override
+    public PostgresCluster createCluster(@Nonnull Path destination) throws IOException {
+      return createCluster(destination, PostgresClusterCreationOptions.defaultOptions());
+    }
+
+    @Override
+    public PostgresCluster createCluster(
+        @Nonnull Path destination, PostgresClusterCreationOptions options) throws IOException {
+      created.incrementAndGet();
+      Files.createDirectories(destination);
+      Files.write(destination.resolve("PG_VERSION"), "9.5\n".getBytes("UTF-8"));
+      return new FakePostgresCluster();
+    }
+
+    @Override
+    public void checkCluster(@Nonnull Path destination) {
+    }
+  }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2017, OnGres.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.ongres.pgdeploy.installations;
+
+import com.ongres.pgdeploy.core.router.DefaultRouter;
+import com.ongres.pgdeploy.pgconfig.DefaultPropertyParser;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.List;
+import java.util.OptionalInt;
+
+import static org.junit.Assert.*;
+
+public class ClusterPreflightTest {
+
+  private final Path installation = Paths.get("src", "test", "resources", "installation");
+  private Path workDir;
+
+  @Before
+  public void setup() throws Exception {
+    workDir = Files.createTempDirectory("pgdeploy-preflight");
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    Files.deleteIfExists(workDir.resolve("file"));
+    Files.delete(workDir);
+  }
+
+  @Test
+  public void noProblems() throws Exception {
+    int freePort;
+    try (ServerSocket socket = new ServerSocket(0)) {
+      freePort = socket.getLocalPort();
+    }
+
+    List<String> problems = new ClusterPreflight(DefaultRouter.getInstance(), installation)
+        .check(workDir.resolve("a").resolve("b"), OptionalInt.of(freePort));
+
+    assertEquals(problems.toString(), 0, problems.size());
+  }
+
+  @Test
+  public void existingDestinationsNeedNoPermissions() throws Exception {
+    Path destination = Files.createDirectory(workDir.resolve("cluster"),
+        PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+    try {
+      List<String> problems = new ClusterPreflight(DefaultRouter.getInstance(), installation)
+          .check(destination, OptionalInt.empty());
+
+      assertEquals(problems.toString(), 0, problems.size());
+    } finally {
+      Files.delete(destination);
+    }
+  }
+
+  @Test
+  public void allProblemsAreReported() throws Exception {
+    Files.createFile(workDir.resolve("file"));
+
+    try (ServerSocket socket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+      List<String> problems = new ClusterPreflight(DefaultRouter.getInstance(),
+          workDir.resolve("missing-installation"), Long.MAX_VALUE)
+          .check(workDir.resolve("file").resolve("cluster"), OptionalInt.of(socket.getLocalPort()));
+
+      assertEquals(problems.toString(), 5, problems.size());
+      assertTrue(problems.get(0).contains("is not a directory"));
+      assertTrue(problems.get(1).contains("bytes free"));
+      assertTrue(problems.get(2).contains("initdb"));
+      assertTrue(problems.get(3).contains("Library folder"));
+      assertTrue(problems.get(4).contains("in use"));
+    }
+  }
+
+  @Test
+  public void createClusterFailsBeforeInitDb() throws Exception {
+    ConcretePostgresInstallation broken = new ConcretePostgresInstallation(
+        DefaultRouter.getInstance(), DefaultPropertyParser.getInstance(),
+        workDir.resolve("missing-installation"));
+
+    try {
+      broken.createCluster(workDir.resolve("cluster"));
+      fail("The installation has no initdb");
+    } catch (ClusterPreflightException ex) {
+      assertEquals(2, ex.getProblems().size());
+    }
+    assertFalse(Files.exists(workDir.resolve("cluster")));
+  }
+}
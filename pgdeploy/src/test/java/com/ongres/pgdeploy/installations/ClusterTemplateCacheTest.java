@@ -0,0 +1,135 @@
+/*
+ * Copyright 2017, OnGres.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.ongres.pgdeploy.installations;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class ClusterTemplateCacheTest {
+
+  private Path workDir;
+  private Path initDb;
+  private Path runs;
+  private ClusterTemplateCache cache;
+
+  @Before
+  public void setup() throws Exception {
+    workDir = Files.createTempDirectory("pgdeploy-templates");
+    runs = workDir.resolve("runs");
+    initDb = workDir.resolve("initdb");
+
+    // Mimics initdb -D <dir> [args]: a private data directory with some content
+    Files.write(initDb, Arrays.asList(
+        "#!/bin/sh",
+        "echo run >> " + runs,
+        "data=\"$2\"",
+        "shift 2",
+        "mkdir -p \"$data/base/1\" && chmod 700 \"$data\"",
+        "echo \"$@\" > \"$data/PG_VERSION\"",
+        "echo page > \"$data/base/1/1259\""), StandardCharsets.UTF_8);
+    Files.setPosixFilePermissions(initDb, PosixFilePermissions.fromString("rwx------"));
+
+    cache = new ClusterTemplateCache(workDir.resolve("cache"));
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    try (Stream<Path> paths = Files.walk(workDir)) {
+      for (Path path : paths.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+        Files.delete(path);
+      }
+    }
+  }
+
+  @Test
+  public void initDbRunsOncePerArguments() throws Exception {
+    List<String> utf8 = Arrays.asList("-E", "UTF8");
+
+    cache.createCluster(initDb, workDir.resolve("c1"), utf8);
+    cache.createCluster(initDb, workDir.resolve("c2"), utf8);
+    cache.createCluster(initDb, workDir.resolve("c3"), Collections.singletonList("-k"));
+
+    assertEquals(2, Files.readAllLines(runs).size());
+    assertEquals("-E UTF8", readFirstLine(workDir.resolve("c1").resolve("PG_VERSION")));
+    assertEquals("-E UTF8", readFirstLine(workDir.resolve("c2").resolve("PG_VERSION")));
+    assertEquals("-k", readFirstLine(workDir.resolve("c3").resolve("PG_VERSION")));
+  }
+
+  @Test
+  public void clustersAreIndependentCopies() throws Exception {
+    Path existing = Files.createDirectory(workDir.resolve("existing"));
+
+    cache.createCluster(initDb, workDir.resolve("c1"), Collections.emptyList());
+    cache.createCluster(initDb, existing, Collections.emptyList());
+
+    Path page = workDir.resolve("c1").resolve("base").resolve("1").resolve("1259");
+    Files.write(page, Collections.singletonList("modified"));
+
+    assertEquals("page", readFirstLine(existing.resolve("base").resolve("1").resolve("1259")));
+    assertEquals("rwx------",
+        PosixFilePermissions.toString(Files.getPosixFilePermissions(existing)));
+    assertEquals("rwx------",
+        PosixFilePermissions.toString(Files.getPosixFilePermissions(workDir.resolve("c1"))));
+  }
+
+  @Test
+  public void missingParentsAreCreated() throws Exception {
+    Path nested = workDir.resolve("a").resolve("b").resolve("c1");
+
+    cache.createCluster(initDb, nested, Collections.emptyList());
+
+    assertEquals("page", readFirstLine(nested.resolve("base").resolve("1").resolve("1259")));
+  }
+
+  @Test
+  public void changedInitDbInvalidatesTemplates() throws Exception {
+    cache.createCluster(initDb, workDir.resolve("c1"), Collections.emptyList());
+
+    Files.write(initDb, Collections.singletonList("echo upgraded"),
+        StandardOpenOption.APPEND);
+    cache.createCluster(initDb, workDir.resolve("c2"), Collections.emptyList());
+
+    assertEquals(2, Files.readAllLines(runs).size());
+  }
+
+  private static String readFirstLine(Path file) throws Exception {
+    return Files.readAllLines(file).get(0);
+  }
+}
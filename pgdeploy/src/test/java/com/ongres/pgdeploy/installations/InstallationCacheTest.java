@@ -0,0 +1,221 @@
+/*
+ * Copyright 2017, OnGres.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.ongres.pgdeploy.installations;
+
+import com.ongres.pgdeploy.core.AbstractPostgresInstallationSupplier;
+import com.ongres.pgdeploy.core.Platform;
+import com.ongres.pgdeploy.core.PostgresInstallationFolder;
+import com.ongres.pgdeploy.core.PostgresInstallationSupplierFeatures;
+import com.ongres.pgdeploy.core.exceptions.NonWritableDestinationException;
+import com.ongres.pgdeploy.core.exceptions.UnreachableBinariesException;
+import com.ongres.pgdeploy.core.pgversion.PostgresMajorVersion;
+import com.ongres.pgdeploy.core.unpack.PackageMode;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.*;
+
+public class InstallationCacheTest {
+
+  private static final List<PostgresInstallationFolder> binaries =
+      Arrays.asList(PostgresInstallationFolder.BIN, PostgresInstallationFolder.LIB);
+
+  private Path workDir;
+  private CountingSupplier supplier;
+
+  @Before
+  public void setUp() throws Exception {
+    workDir = Files.createTempDirectory("pgdeploy-cache");
+    Path zipFile = workDir.resolve("postgres.zip");
+
+    try (ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(zipFile.toFile()))) {
+      for (String entry : Arrays.asList("bin/postgres", "lib/libpq.so", "share/postgres.bki")) {
+        zip.putNextEntry(new ZipEntry(entry));
+        zip.write(entry.getBytes("UTF-8"));
+        zip.closeEntry();
+      }
+    }
+
+    supplier = new CountingSupplier(zipFile);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    try (Stream<Path> paths = Files.walk(workDir)) {
+      for (Path path : paths.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+        Files.delete(path);
+      }
+    }
+  }
+
+  @Test
+  public void unpacksOnlyOnce() throws Exception {
+    InstallationCache cache = new InstallationCache(workDir.resolve("cache"));
+
+    Path first = workDir.resolve("first");
+    Path second = workDir.resolve("second");
+    cache.install(supplier, binaries, first, null);
+    cache.install(supplier, binaries, second, null);
+
+    assertEquals(1, supplier.unpacks.get());
+    for (Path installation : Arrays.asList(first, second)) {
+      assertEquals("bin/postgres",
+          new String(Files.readAllBytes(installation.resolve("bin/postgres")), "UTF-8"));
+      assertTrue(Files.exists(installation.resolve("lib/libpq.so")));
+      assertFalse(Files.exists(installation.resolve("share")));
+    }
+    assertEquals(Files.getPosixFilePermissions(first.resolve("bin/postgres")),
+        Files.getPosixFilePermissions(second.resolve("bin/postgres")));
+  }
+
+  @Test
+  public void hardLinksByDefault() throws Exception {
+    InstallationCache cache = new InstallationCache(workDir.resolve("cache"));
+
+    Path first = workDir.resolve("first");
+    Path second = workDir.resolve("second");
+    cache.install(supplier, binaries, first, null);
+    cache.install(supplier, binaries, second, null);
+
+    assertTrue(Files.isSameFile(first.resolve("bin/postgres"), second.resolve("bin/postgres")));
+  }
+
+  @Test
+  public void copiesWhenAsked() throws Exception {
+    InstallationCache cache = new InstallationCache(
+        workDir.resolve("cache"), InstallationCache.Materialization.COPY);
+
+    Path first = workDir.resolve("first");
+    Path second = workDir.resolve("second");
+    cache.install(supplier, binaries, first, null);
+    cache.install(supplier, binaries, second, null);
+
+    assertEquals(1, supplier.unpacks.get());
+    assertFalse(Files.isSameFile(first.resolve("bin/postgres"), second.resolve("bin/postgres")));
+  }
+
+  @Test
+  public void instancesOnTheSameRoot() throws Exception {
+    // Slow enough for both to populate the entry at the same time
+    supplier.delayMillis = 300;
+    List<InstallationCache> caches = Arrays.asList(
+        new InstallationCache(workDir.resolve("cache")),
+        new InstallationCache(workDir.resolve("cache")));
+
+    ExecutorService executor = Executors.newFixedThreadPool(caches.size());
+    try {
+      List<Future<?>> installs = new ArrayList<>();
+      for (int i = 0; i < caches.size(); i++) {
+        InstallationCache cache = caches.get(i);
+        Path destination = workDir.resolve("installation" + i);
+        installs.add(executor.submit(() -> {
+          cache.install(supplier, binaries, destination, null);
+          return null;
+        }));
+      }
+      for (Future<?> install : installs) {
+        install.get();
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    assertEquals(1, supplier.unpacks.get());
+    assertTrue(Files.exists(workDir.resolve("installation1/bin/postgres")));
+  }
+
+  @Test
+  public void populatorFailuresArePropagated() throws Exception {
+    InstallationCache cache = new InstallationCache(workDir.resolve("cache"));
+    supplier.failure = new FileAlreadyExistsException("bin/postgres");
+
+    try {
+      cache.install(supplier, binaries, workDir.resolve("first"), null);
+      fail("The failure of the unpack must be propagated");
+    } catch (FileAlreadyExistsException e) {
+      assertEquals("bin/postgres", e.getFile());
+    }
+
+    supplier.failure = null;
+    cache.install(supplier, binaries, workDir.resolve("second"), null);
+    assertEquals(2, supplier.unpacks.get());
+    assertTrue(Files.exists(workDir.resolve("second/bin/postgres")));
+  }
+
+  @Test(expected = NonWritableDestinationException.class)
+  public void existingDestination() throws Exception {
+    InstallationCache cache = new InstallationCache(workDir.resolve("cache"));
+
+    cache.install(supplier, binaries, Files.createDirectory(workDir.resolve("first")), null);
+  }
+
+  private static class CountingSupplier extends AbstractPostgresInstallationSupplier {
+
+    private final AtomicInteger unpacks = new AtomicInteger();
+    private volatile long delayMillis;
+    private volatile IOException failure;
+
+    private CountingSupplier(Path zipFile) {
+      super(new PostgresInstallationSupplierFeatures(PostgresMajorVersion.fromString("9.6").get(),
+          4, new Platform("Linux", "x64")), zipFile, false, PackageMode.ZIP);
+    }
+
+    @Override
+    public void unpackFolders(Path destination, List<PostgresInstallationFolder> folders)
+        throws IOException, NonWritableDestinationException, UnreachableBinariesException {
+      unpacks.incrementAndGet();
+      try {
+        Thread.sleep(delayMillis);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException();
+      }
+      if (failure != null) {
+        throw failure;
+      }
+      super.unpackFolders(destination, folders);
+    }
+  }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2017, OnGres.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.ongres.pgdeploy.installations;
+
+import com.ongres.pgdeploy.clusters.ConcretePostgresCluster;
+import com.ongres.pgdeploy.clusters.PostgresCluster;
+import com.ongres.pgdeploy.clusters.PostgresClusterCreationOptions;
+import com.ongres.pgdeploy.core.router.DefaultRouter;
+import com.ongres.pgdeploy.core.router.Router;
+import com.ongres.pgdeploy.pgconfig.DefaultPropertyParser;
+import com.ongres.pgdeploy.wrappers.exceptions.BadProcessExecutionException;
+import org.junit.Test;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnull;
+
+import static org.junit.Assert.*;
+
+public class PostgresInstallationCreateClustersTest {
+
+  @Test
+  public void clustersAreCreatedInParallelAndInOrder() throws Exception {
+    FakeInstallation installation = new FakeInstallation();
+    List<Path> destinations = new ArrayList<>();
+    for (int i = 0; i < 12; i++) {
+      destinations.add(Paths.get("cluster" + i));
+    }
+
+    List<ClusterCreationResult> results = installation.createClusters(
+        destinations, PostgresClusterCreationOptions.defaultOptions(), 3);
+
+    assertEquals(destinations.size(), results.size());
+    for (int i = 0; i < destinations.size(); i++) {
+      ClusterCreationResult result = results.get(i);
+      assertEquals(destinations.get(i), result.getDestination());
+      assertTrue(result.isSuccessful());
+      assertTrue(result.getCluster().isPresent());
+      assertFalse(result.getDuration().isNegative());
+    }
+    assertEquals(3, installation.maxConcurrency.get());
+  }
+
+  @Test
+  public void failuresDoNotAbortTheOtherClusters() throws Exception {
+    FakeInstallation installation = new FakeInstallation();
+
+    List<ClusterCreationResult> results = installation.createClusters(
+        Arrays.asList(Paths.get("good1"), Paths.get("bad"), Paths.get("good2")),
+        PostgresClusterCreationOptions.defaultOptions(), 2);
+
+    assertTrue(results.get(0).isSuccessful());
+    assertFalse(results.get(1).isSuccessful());
+    assertFalse(results.get(1).getCluster().isPresent());
+    assertTrue(results.get(1).getFailure().get() instanceof BadProcessExecutionException);
+    assertTrue(results.get(2).isSuccessful());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void repeatedDestinationsAreRejected() throws Exception {
+    new FakeInstallation().createClusters(
+        Arrays.asList(Paths.get("same"), Paths.get("same").toAbsolutePath()),
+        PostgresClusterCreationOptions.defaultOptions(), 2);
+  }
+
+  private static class FakeInstallation extends PostgresInstallation {
+
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicInteger maxConcurrency = new AtomicInteger();
+
+    @Override
+    public Router getRouter() {
+      return DefaultRouter.getInstance();
+    }
+
+    @Override
+    public Path getPath() {
+      return Paths.get("installation");
+    }
+
+    @Override
+    public PostgresCluster createCluster(@Nonnull Path destination)
+        throws BadProcessExecutionException, InterruptedException {
+      return createCluster(destination, PostgresClusterCreationOptions.defaultOptions());
+    }
+
+    @Override
+    public PostgresCluster createCluster(
+        @Nonnull Path destination, PostgresClusterCreationOptions options)
+        throws BadProcessExecutionException, InterruptedException {
+      int current = running.incrementAndGet();
+      maxConcurrency.accumulateAndGet(current, Math::max);
+      try {
+        TimeUnit.MILLISECONDS.sleep(100);
+        if (destination.toString().equals("bad")) {
+          throw BadProcessExecutionException.create("initdb failed", "initdb");
+        }
+        return new ConcretePostgresCluster(destination, this, DefaultPropertyParser.getInstance());
+      } finally {
+        running.decrementAndGet();
+      }
+    }
+
+    @Override
+    public void checkCluster(@Nonnull Path destination) {
+    }
+  }
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright 2017, OnGres.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.ongres.pgdeploy.suppliers;
+
+import com.ongres.pgdeploy.core.AbstractPostgresInstallationSupplier;
+import com.ongres.pgdeploy.core.MockedPostgresInstallationSupplier;
+import com.ongres.pgdeploy.core.Platform;
+import com.ongres.pgdeploy.core.PostgresInstallationSupplier;
+import com.ongres.pgdeploy.core.PostgresInstallationSupplierFeatures;
+import com.ongres.pgdeploy.core.pgversion.Pre10PostgresMajorVersion;
+import com.ongres.pgdeploy.core.unpack.PackageMode;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Optional;
+import java.util.ServiceConfigurationError;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class SupplierRegistryTest {
+
+  private static final AtomicInteger instances = new AtomicInteger();
+
+  private static final Platform linux = new Platform("Linux", "x64");
+
+  private Path resourcesDir;
+  private URLClassLoader classLoader;
+
+  @Before
+  public void setUp() throws Exception {
+    instances.set(0);
+    resourcesDir = Files.createTempDirectory("pgdeploy-registry");
+
+    Path descriptor = resourcesDir.resolve(SupplierRegistry.descriptorResource);
+    Files.createDirectories(descriptor.getParent());
+    Files.write(descriptor, Arrays.asList(
+        "# class|major|minor|os|arch|extraVersion",
+        DescribedSupplier.class.getName() + "|9.6|2|Linux|x64|",
+        FailingSupplier.class.getName() + "|9.6|3|Linux|x64|"));
+
+    Path services = resourcesDir.resolve(
+        "META-INF/services/" + PostgresInstallationSupplier.class.getName());
+    Files.createDirectories(services.getParent());
+    Files.write(services, Arrays.asList(
+        DescribedSupplier.class.getName(),
+        FailingSupplier.class.getName(),
+        UndescribedSupplier.class.getName()));
+
+    classLoader = new URLClassLoader(
+        new URL[] {resourcesDir.toUri().toURL()}, getClass().getClassLoader());
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    classLoader.close();
+    try (Stream<Path> paths = Files.walk(resourcesDir)) {
+      for (Path path : paths.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+        Files.delete(path);
+      }
+    }
+  }
+
+  @Test
+  public void indexesWithoutInstantiating() throws Exception {
+    SupplierRegistry registry = SupplierRegistry.fromClassLoader(classLoader);
+
+    assertEquals(2, registry.getIndexedFeatures().size());
+    assertTrue(registry.getIndexedFeatures().contains(features(2, null)));
+    assertEquals(0, instances.get());
+  }
+
+  @Test
+  public void instantiatesOnlyTheSupplierFound() throws Exception {
+    SupplierRegistry registry = SupplierRegistry.fromClassLoader(classLoader);
+
+    Optional<PostgresInstallationSupplier> first = registry.find(features(2, null));
+    Optional<PostgresInstallationSupplier> second = registry.find(features(2, null));
+
+    assertTrue(first.isPresent());
+    assertTrue(first.get() instanceof DescribedSupplier);
+    assertSame(first.get(), second.get());
+    assertEquals(1, instances.get());
+  }
+
+  @Test
+  public void fallsBackToServicesWithoutDescriptor() throws Exception {
+    SupplierRegistry registry = SupplierRegistry.fromClassLoader(classLoader);
+
+    Optional<PostgresInstallationSupplier> supplier = registry.find(features(4, "my"));
+
+    assertTrue(supplier.isPresent());
+    assertTrue(supplier.get() instanceof UndescribedSupplier);
+  }
+
+  @Test
+  public void constructorFailure() throws Exception {
+    SupplierRegistry registry = SupplierRegistry.fromClassLoader(classLoader);
+
+    try {
+      registry.find(features(3, null));
+      fail("The failing supplier was instantiated");
+    } catch (ServiceConfigurationError e) {
+      assertTrue(e.getCause() instanceof IllegalStateException);
+    }
+  }
+
+  @Test
+  public void unknownFeatures() throws Exception {
+    SupplierRegistry registry = SupplierRegistry.fromClassLoader(classLoader);
+
+    assertFalse(registry.find(features(5, null)).isPresent());
+  }
+
+  @Test
+  public void fromSuppliers() throws Exception {
+    PostgresInstallationSupplier supplier = new DescribedSupplier();
+    SupplierRegistry registry = SupplierRegistry.fromSuppliers(Arrays.asList(supplier));
+
+    assertSame(supplier, registry.find(features(2, null)).get());
+    assertFalse(registry.find(features(2, "my")).isPresent());
+  }
+
+  @Test
+  public void findLatestMinor() throws Exception {
+    SupplierRegistry registry = SupplierRegistry.fromSuppliers(Arrays.asList(
+        mocked(9, 6, 1, null), mocked(9, 6, 12, null), mocked(9, 6, 3, null),
+        mocked(9, 6, 20, "my"), mocked(9, 5, 30, null)));
+
+    Optional<PostgresInstallationSupplier> latest =
+        registry.findLatest(new Pre10PostgresMajorVersion(9, 6), linux, null);
+
+    assertTrue(latest.isPresent());
+    assertEquals(features(12, null), latest.get().getFeatures().get());
+    assertEquals(features(20, "my"), registry.findLatest(
+        new Pre10PostgresMajorVersion(9, 6), linux, "my").get().getFeatures().get());
+    assertFalse(registry.findLatest(
+        new Pre10PostgresMajorVersion(9, 6), new Platform("Windows", "x64"), null).isPresent());
+  }
+
+  @Test
+  public void findMinorRange() throws Exception {
+    SupplierRegistry registry = SupplierRegistry.fromSuppliers(Arrays.asList(
+        mocked(9, 6, 1, null), mocked(9, 6, 12, null), mocked(9, 6, 3, null),
+        mocked(9, 6, 5, "my")));
+
+    assertEquals(Arrays.asList(features(3, null), features(12, null)), registry.findFeatures(
+        new Pre10PostgresMajorVersion(9, 6), linux, null, 2, Integer.MAX_VALUE));
+    assertEquals(Arrays.asList(features(1, null), features(3, null)), registry.findFeatures(
+        new Pre10PostgresMajorVersion(9, 6), linux, null, 0, 3));
+    assertTrue(registry.findFeatures(
+        new Pre10PostgresMajorVersion(9, 6), linux, null, 4, 11).isEmpty());
+  }
+
+  private static PostgresInstallationSupplier mocked(
+      int first, int second, int minor, String extraVersion) {
+    return new MockedPostgresInstallationSupplier(
+        new Pre10PostgresMajorVersion(first, second), minor, linux, extraVersion);
+  }
+
+  private static PostgresInstallationSupplierFeatures features(int minor, String extraVersion) {
+    return new PostgresInstallationSupplierFeatures(
+        new Pre10PostgresMajorVersion(9, 6), minor, linux, extraVersion);
+  }
+
+  public static class DescribedSupplier extends AbstractPostgresInstallationSupplier {
+
+    public DescribedSupplier() {
+      super(new Pre10PostgresMajorVersion(9, 6), 2, linux,
+          Paths.get("described.zip"), false, PackageMode.ZIP);
+      instances.incrementAndGet();
+    }
+  }
+
+  public static class FailingSupplier extends AbstractPostgresInstallationSupplier {
+
+    public FailingSupplier() {
+      super(new Pre10PostgresMajorVersion(9, 6), 3, linux,
+          Paths.get("failing.zip"), false, PackageMode.ZIP);
+      throw new IllegalStateException("Must never be instantiated by these tests");
+    }
+  }
+
+  /** A supplier that only tells its features through {@link #accepts}.
+   */
+  public static class UndescribedSupplier extends AbstractPostgresInstallationSupplier {
+
+    public UndescribedSupplier() {
+      super(new Pre10PostgresMajorVersion(9, 6), 4, linux, "my",
+          Paths.get("undescribed.zip"), false, PackageMode.ZIP);
+      instances.incrementAndGet();
+    }
+
+    @Override
+    public Optional<PostgresInstallationSupplierFeatures> getFeatures() {
+      return Optional.empty();
+    }
+  }
+}
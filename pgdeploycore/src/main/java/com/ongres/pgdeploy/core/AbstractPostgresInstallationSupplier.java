@@ -24,6 +24,8 @@
  */
 package com.ongres.pgdeploy.core;
 
+import com.google.common.io.BaseEncoding;
+import com.google.common.io.ByteStreams;
 import com.ongres.pgdeploy.core.exceptions.BadInstallationException;
 import com.ongres.pgdeploy.core.exceptions.ExtraFoldersFoundException;
 import com.ongres.pgdeploy.core.exceptions.NonWritableDestinationException;
@@ -36,13 +38,22 @@ import com.ongres.pgdeploy.core.unpack.ObtainResourceStrategyFactory;
 import com.ongres.pgdeploy.core.unpack.PackageMode;
 import com.ongres.pgdeploy.core.unpack.UnpackFoldersStrategy;
 import com.ongres.pgdeploy.core.unpack.UnpackFoldersStrategyFactory;
+import com.ongres.pgdeploy.core.unpack.UnzipFolderArchivesStrategy;
 import com.ongres.pgdeploy.pgconfig.DefaultPropertyParser;
 import com.ongres.pgdeploy.pgconfig.PropertyParser;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
 
 public abstract class AbstractPostgresInstallationSupplier implements PostgresInstallationSupplier {
 
@@ -54,6 +65,8 @@ public abstract class AbstractPostgresInstallationSupplier implements PostgresIn
 
   protected final PackageMode packageMode;
 
+  private volatile String cacheKey;
+
   protected AbstractPostgresInstallationSupplier( PostgresMajorVersion majorVersion,
       int minorVersion, Platform platform, Path path, boolean fromJar, PackageMode packageMode) {
 
@@ -86,6 +99,11 @@ public abstract class AbstractPostgresInstallationSupplier implements PostgresIn
     return this.features.equals(features);
   }
 
+  @Override
+  public Optional<PostgresInstallationSupplierFeatures> getFeatures() {
+    return Optional.of(features);
+  }
+
   @Override
   public void unpackFolders(Path destination, List<PostgresInstallationFolder> folders)
       throws IOException, NonWritableDestinationException, UnreachableBinariesException {
@@ -97,9 +115,77 @@ public abstract class AbstractPostgresInstallationSupplier implements PostgresIn
     UnpackFoldersStrategy unpackFoldersStrategy =
         UnpackFoldersStrategyFactory.getUnpackFoldersStrategy(packageMode);
 
-    InputStream stream = obtainResourceStrategy.obtainResource();
+    unpackFoldersStrategy.unpackFolders(destination, folders, obtainResourceStrategy);
+  }
+
+  @Override
+  public void unpackFolders(Path destination, List<PostgresInstallationFolder> folders,
+      ExecutorService executor)
+      throws IOException, NonWritableDestinationException, UnreachableBinariesException {
+
+    ObtainResourceStrategy obtainResourceStrategy =
+        ObtainResourceStrategyFactory.getUnpackFoldersStrategy(
+            fromJar, routeToPackedCode);
+
+    UnpackFoldersStrategy unpackFoldersStrategy =
+        UnpackFoldersStrategyFactory.getUnpackFoldersStrategy(packageMode, executor);
+
+    unpackFoldersStrategy.unpackFolders(destination, folders, obtainResourceStrategy);
+  }
+
+  /** The key is made of the features of the supplier and a SHA-256 digest, computed the first
+   * time it is requested. Binaries packed in a jar are identified by the path, size and
+   * modification time of the jar, as jars are not modified in place, so they are not read. Other
+   * binaries are digested entirely.
+   */
+  @Override
+  public Optional<String> getCacheKey() throws IOException, UnreachableBinariesException {
+    String result = cacheKey;
+    if (result == null) {
+      MessageDigest digest;
+      try {
+        digest = MessageDigest.getInstance("SHA-256");
+      } catch (NoSuchAlgorithmException e) {
+        throw new IllegalStateException(e);
+      }
+
+      ObtainResourceStrategy obtainResourceStrategy =
+          ObtainResourceStrategyFactory.getUnpackFoldersStrategy(
+              fromJar, routeToPackedCode);
+
+      Path jar = fromJar ? routeToPackedCode.getParent() : null;
+      if (jar != null && Files.isRegularFile(jar)) {
+        BasicFileAttributes attributes = Files.readAttributes(jar, BasicFileAttributes.class);
+        digest.update((jar.toAbsolutePath().normalize() + "\0" + routeToPackedCode.getFileName()
+            + "\0" + attributes.size() + "\0" + attributes.lastModifiedTime().toMillis())
+            .getBytes(StandardCharsets.UTF_8));
+      } else if (packageMode == PackageMode.ZIP_PER_FOLDER) {
+        for (PostgresInstallationFolder folder : PostgresInstallationFolder.values()) {
+          digest.update(folder.getStringId().getBytes(StandardCharsets.UTF_8));
+          ObtainResourceStrategy archive =
+              obtainResourceStrategy.resolve(UnzipFolderArchivesStrategy.archiveName(folder));
+          try {
+            digest(archive, digest);
+          } catch (UnreachableBinariesException e) {
+            // Not included in these binaries
+          }
+        }
+      } else {
+        digest(obtainResourceStrategy, digest);
+      }
+
+      result = features.toFileString() + "-"
+          + BaseEncoding.base16().lowerCase().encode(digest.digest());
+      cacheKey = result;
+    }
+    return Optional.of(result);
+  }
 
-    unpackFoldersStrategy.unpackFolders(destination, folders, stream);
+  private static void digest(ObtainResourceStrategy resource, MessageDigest digest)
+      throws IOException, UnreachableBinariesException {
+    try (InputStream stream = new DigestInputStream(resource.obtainResource(), digest)) {
+      ByteStreams.exhaust(stream);
+    }
   }
 
   @Override
@@ -34,6 +34,8 @@ import com.ongres.pgdeploy.pgconfig.PropertyParser;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
 
 public interface PostgresInstallationSupplier {
 
@@ -42,6 +44,14 @@ public interface PostgresInstallationSupplier {
    */
   boolean accepts(PostgresInstallationSupplierFeatures features);
 
+  /** Returns the features this supplier offers, when they are fixed, so that suppliers can be
+   * indexed instead of asking each of them whether it {@link #accepts accepts} some features.
+   * @return The features of the supplier, or an empty optional if it doesn't offer a fixed set
+   */
+  default Optional<PostgresInstallationSupplierFeatures> getFeatures() {
+    return Optional.empty();
+  }
+
   /** Unpacks in the desired <tt>destination</tt> the packed installation
    * binaries contained in the supplier.
    * @param destination The path where to unpack the packed binaries
@@ -54,6 +64,34 @@ public interface PostgresInstallationSupplier {
   void unpackFolders(Path destination, List<PostgresInstallationFolder> folders)
       throws IOException, NonWritableDestinationException, UnreachableBinariesException;
 
+  /** Unpacks in the desired <tt>destination</tt> the packed installation binaries contained in the
+   * supplier, using the threads of <tt>executor</tt> when the package format allows it. Suppliers
+   * that cannot unpack in parallel just unpack sequentially.
+   * @param destination The path where to unpack the packed binaries
+   * @param folders The folders within the packed binaries to be unpacked
+   * @param executor The executor the entries are unpacked on. It is not shut down.
+   * @throws NonWritableDestinationException In case the destination folder is not writable.
+   * @throws UnreachableBinariesException In case the packed binaries are unreachable
+   * @throws IOException In case any of the files contained inside the packed binaries file is,
+   *     for any reason, unreachable
+   */
+  default void unpackFolders(Path destination, List<PostgresInstallationFolder> folders,
+      ExecutorService executor)
+      throws IOException, NonWritableDestinationException, UnreachableBinariesException {
+    unpackFolders(destination, folders);
+  }
+
+  /** Returns a key that identifies the packed binaries of this supplier, so that installations
+   * unpacked from them can be cached and reused. Two suppliers returning the same key must unpack
+   * exactly the same files.
+   * @return The key, or an empty optional if the binaries of this supplier must not be cached
+   * @throws UnreachableBinariesException In case the packed binaries are unreachable
+   * @throws IOException In case the packed binaries cannot be read
+   */
+  default Optional<String> getCacheKey() throws IOException, UnreachableBinariesException {
+    return Optional.empty();
+  }
+
   /** Checks that the installation has been performed correctly
    * @param destination The path where the installation is
    * @param folders The significant folders expected to be there
@@ -30,6 +30,8 @@ import com.ongres.pgdeploy.core.pgversion.PostgresMajorVersion;
 import com.ongres.pgdeploy.core.unpack.PackageMode;
 import net.jcip.annotations.Immutable;
 
+import javax.annotation.Nullable;
+
 @Immutable
 public class PostgresInstallationSupplierFeatures {
   private static final String zipFilePrefix = "postgres_";
@@ -56,7 +58,27 @@ public class PostgresInstallationSupplierFeatures {
     this.extraVersion = null;
   }
 
-  public String getPackedFileResourceName(PackageMode packageMode) {
+  public PostgresMajorVersion getMajor() {
+    return major;
+  }
+
+  public int getMinor() {
+    return minor;
+  }
+
+  public Platform getPlatform() {
+    return platform;
+  }
+
+  @Nullable
+  public String getExtraVersion() {
+    return extraVersion;
+  }
+
+  /** Returns a name that identifies these features and can be safely used as a file name, like
+   * <tt>postgres_9.6.4.linux_x64</tt>.
+   */
+  public String toFileString() {
     String result = zipFilePrefix
         + major.toFileString()
         + separator + minor
@@ -66,11 +88,13 @@ public class PostgresInstallationSupplierFeatures {
       result += separator + extraVersion;
     }
 
-    result += packageMode.getStringId();
-
     return result;
   }
 
+  public String getPackedFileResourceName(PackageMode packageMode) {
+    return toFileString() + packageMode.getStringId();
+  }
+
   @Override
   public boolean equals(Object o) {
     if (this == o) {
@@ -0,0 +1,418 @@
+/*
+ * Copyright 2017, OnGres.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.ongres.pgdeploy.core.unpack;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.ongres.pgdeploy.core.PostgresInstallationFolder;
+import com.ongres.pgdeploy.core.exceptions.NonWritableDestinationException;
+import com.ongres.pgdeploy.core.exceptions.UnreachableBinariesException;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/** Unpacks a compressed tar file as a pipeline: the calling thread decompresses the archive and
+ * splits the selected entries in chunks, which are written by a set of writer threads taken from
+ * a bounded queue. Memory usage is bounded by the queue, no matter how big the entries are.
+ * Subclasses provide the decompression.
+ *
+ * <p>Symbolic links are recreated as such and files and directories get the permission bits
+ * stored in the archive. Hard links and directory permissions are applied once every file has
+ * been written. A leading <tt>./</tt> in entry names is ignored.
+ */
+public abstract class AbstractUntarFoldersStrategy implements UnpackFoldersStrategy {
+
+  protected static final int CHUNK_SIZE = 64 * 1024;
+
+  private static final int QUEUE_CAPACITY = 64;
+
+  private static final Set<PosixFilePermission> defaultPerms =
+      PosixFilePermissions.fromString("rwxr-xr-x");
+
+  private static final Chunk POISON = new Chunk(null, 0, new byte[0], 0);
+
+  @Nullable
+  private final ExecutorService executor;
+
+  private final int writers;
+
+  /** Creates a strategy that starts its own writer threads on every extraction.
+   */
+  protected AbstractUntarFoldersStrategy() {
+    this.executor = null;
+    this.writers = defaultWriters();
+  }
+
+  /** Creates a strategy whose writers run on the given executor, which must be able to run
+   * <tt>writers</tt> tasks concurrently. The executor is not shut down.
+   */
+  protected AbstractUntarFoldersStrategy(@Nonnull ExecutorService executor, int writers) {
+    Preconditions.checkArgument(writers > 0, "At least one writer is required");
+    this.executor = Preconditions.checkNotNull(executor);
+    this.writers = writers;
+  }
+
+  static int defaultWriters() {
+    return Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+  }
+
+  /** Wraps the buffered archive in a stream that decompresses it.
+   */
+  protected abstract InputStream decompress(InputStream stream) throws IOException;
+
+  @Override
+  @edu.umd.cs.findbugs.annotations.SuppressFBWarnings(
+      value = "RV_RETURN_VALUE_IGNORED_BAD_PRACTICE",
+      justification = "The value itself has no interest")
+  public void unpackFolders(
+      Path destination, List<PostgresInstallationFolder> folders, InputStream stream)
+      throws IOException, NonWritableDestinationException, UnreachableBinariesException {
+
+    Path root = destination.toAbsolutePath().normalize();
+
+    try (TarArchiveInputStream tar = new TarArchiveInputStream(
+        decompress(new BufferedInputStream(stream, CHUNK_SIZE)))) {
+
+      if (!new File(root.toString()).mkdir()) {
+        throw new NonWritableDestinationException("Unable to create or open file: " + root);
+      }
+
+      ExecutorService writerExecutor = executor != null ? executor : Executors.newFixedThreadPool(
+          writers, new ThreadFactoryBuilder().setNameFormat("pgdeploy-untar-%d")
+              .setDaemon(true).build());
+      try {
+        new Pipeline(root, folders, writerExecutor).run(tar);
+      } finally {
+        if (executor == null) {
+          writerExecutor.shutdownNow();
+        }
+      }
+    } catch (FileNotFoundException e) {
+      throw new UnreachableBinariesException(e.getMessage());
+    }
+  }
+
+  private class Pipeline {
+
+    private final Path root;
+    private final Path realRoot;
+    private final List<PostgresInstallationFolder> folders;
+    private final ExecutorService writerExecutor;
+
+    private final BlockingQueue<Chunk> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final AtomicReference<IOException> failure = new AtomicReference<>();
+    private final Map<Path, Path> hardLinks = new LinkedHashMap<>();
+    private final Map<Path, Set<PosixFilePermission>> directories = new LinkedHashMap<>();
+
+    private Pipeline(Path root, List<PostgresInstallationFolder> folders,
+        ExecutorService writerExecutor) throws IOException {
+      this.root = root;
+      this.realRoot = root.toRealPath();
+      this.folders = folders;
+      this.writerExecutor = writerExecutor;
+    }
+
+    private void run(TarArchiveInputStream tar) throws IOException {
+      List<Future<?>> futures = new ArrayList<>(writers);
+      for (int i = 0; i < writers; i++) {
+        futures.add(writerExecutor.submit(this::write));
+      }
+
+      try {
+        read(tar);
+      } finally {
+        try {
+          for (int i = 0; i < writers; i++) {
+            queue.put(POISON);
+          }
+          for (Future<?> future : futures) {
+            future.get();
+          }
+        } catch (InterruptedException e) {
+          futures.forEach(future -> future.cancel(true));
+          Thread.currentThread().interrupt();
+          fail(new InterruptedIOException("Interrupted while unpacking " + root));
+        } catch (ExecutionException e) {
+          fail(new IOException(e.getCause()));
+        }
+      }
+
+      checkFailure();
+
+      for (Map.Entry<Path, Path> link : hardLinks.entrySet()) {
+        if (!link.getValue().toRealPath().startsWith(realRoot)) {
+          throw new IOException("Hard link " + link.getKey() + " points outside of " + root);
+        }
+        Files.deleteIfExists(link.getKey());
+        Files.createLink(link.getKey(), link.getValue());
+      }
+
+      // Deepest first, so that a read only directory doesn't prevent setting its children's
+      List<Path> sortedDirectories = new ArrayList<>(directories.keySet());
+      sortedDirectories.sort(Comparator.comparingInt(Path::getNameCount).reversed());
+      for (Path directory : sortedDirectories) {
+        Files.setPosixFilePermissions(directory, directories.get(directory));
+      }
+    }
+
+    @edu.umd.cs.findbugs.annotations.SuppressFBWarnings(
+        value = "RV_RETURN_VALUE_IGNORED_BAD_PRACTICE",
+        justification = "The value itself has no interest")
+    private void read(TarArchiveInputStream tar) throws IOException {
+      TarArchiveEntry entry;
+
+      while ((entry = tar.getNextTarEntry()) != null) {
+        checkFailure();
+
+        String currentEntry = entry.getName().startsWith("./")
+            ? entry.getName().substring(2) : entry.getName();
+
+        if (!folders.stream().anyMatch(
+            folder -> currentEntry.startsWith(folder.getStringId() + "/"))) {
+          continue;
+        }
+
+        Path destFile = resolve(currentEntry);
+        checkParent(destFile);
+
+        // create the parent directory structure if needed
+        destFile.getParent().toFile().mkdirs();
+
+        if (entry.isDirectory()) {
+          destFile.toFile().mkdirs();
+          directories.put(destFile, permissions(entry));
+        } else if (entry.isSymbolicLink()) {
+          Path target = Paths.get(entry.getLinkName());
+          if (target.isAbsolute()
+              || !destFile.getParent().resolve(target).normalize().startsWith(root)) {
+            throw new IOException("Symbolic link " + currentEntry + " points outside of " + root);
+          }
+          Files.deleteIfExists(destFile);
+          Files.createSymbolicLink(destFile, target);
+        } else if (entry.isLink()) {
+          String linkName = entry.getLinkName().startsWith("./")
+              ? entry.getLinkName().substring(2) : entry.getLinkName();
+          hardLinks.put(destFile, resolve(linkName));
+        } else if (entry.isFile()) {
+          readFile(tar, destFile, permissions(entry));
+        }
+      }
+    }
+
+    private void readFile(InputStream tar, Path destFile, Set<PosixFilePermission> perms)
+        throws IOException {
+      FileTarget target = new FileTarget(destFile, perms, FileChannel.open(destFile,
+          StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+          StandardOpenOption.TRUNCATE_EXISTING, LinkOption.NOFOLLOW_LINKS));
+
+      try {
+        long position = 0;
+        while (true) {
+          byte[] data = new byte[CHUNK_SIZE];
+          int length = fill(tar, data);
+          if (length == 0) {
+            break;
+          }
+          target.pending.incrementAndGet();
+          queue.put(new Chunk(target, position, data, length));
+          position += length;
+          checkFailure();
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while unpacking " + destFile);
+      } finally {
+        release(target);
+      }
+    }
+
+    private void write() {
+      while (true) {
+        Chunk chunk;
+        try {
+          chunk = queue.take();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          fail(new InterruptedIOException("Interrupted while unpacking " + root));
+          return;
+        }
+        if (chunk == POISON) {
+          return;
+        }
+
+        // After a failure chunks are still consumed, so the reader never blocks
+        if (failure.get() == null) {
+          try {
+            ByteBuffer buffer = ByteBuffer.wrap(chunk.data, 0, chunk.length);
+            long position = chunk.position;
+            while (buffer.hasRemaining()) {
+              position += chunk.target.channel.write(buffer, position);
+            }
+          } catch (IOException e) {
+            fail(e);
+          }
+        }
+        release(chunk.target);
+      }
+    }
+
+    /** Called once per chunk and once by the reader when the file has been fully read. The last
+     * one closes the file and sets its permissions.
+     */
+    private void release(FileTarget target) {
+      if (target.pending.decrementAndGet() != 0) {
+        return;
+      }
+      try {
+        target.channel.close();
+        if (failure.get() == null) {
+          Files.setPosixFilePermissions(target.path, target.perms);
+        }
+      } catch (IOException e) {
+        fail(e);
+      }
+    }
+
+    private Path resolve(String entryName) throws IOException {
+      Path result = root.resolve(entryName).normalize();
+      if (!result.startsWith(root)) {
+        throw new IOException("Entry " + entryName + " is outside of " + root);
+      }
+      return result;
+    }
+
+    /** Symbolic links already extracted may lead out of the root, even when the entry name
+     * doesn't, so the closest existing ancestor is checked before creating anything under it.
+     */
+    private void checkParent(Path destFile) throws IOException {
+      Path ancestor = destFile.getParent();
+      while (!Files.exists(ancestor, LinkOption.NOFOLLOW_LINKS)) {
+        ancestor = ancestor.getParent();
+      }
+      if (!ancestor.toRealPath().startsWith(realRoot)) {
+        throw new IOException("Entry " + root.relativize(destFile) + " is outside of " + root);
+      }
+    }
+
+    private void fail(IOException exception) {
+      failure.compareAndSet(null, exception);
+    }
+
+    private void checkFailure() throws IOException {
+      IOException exception = failure.get();
+      if (exception != null) {
+        throw exception;
+      }
+    }
+  }
+
+  private static int fill(InputStream in, byte[] data) throws IOException {
+    int length = 0;
+    int read;
+    while (length < data.length && (read = in.read(data, length, data.length - length)) != -1) {
+      length += read;
+    }
+    return length;
+  }
+
+  private static Set<PosixFilePermission> permissions(TarArchiveEntry entry) {
+    int mode = entry.getMode() & 0777;
+    if (mode == 0) {
+      return defaultPerms;
+    }
+
+    Set<PosixFilePermission> result = EnumSet.noneOf(PosixFilePermission.class);
+    PosixFilePermission[] values = PosixFilePermission.values();
+    // PosixFilePermission is declared from OWNER_READ (0400) to OTHERS_EXECUTE (0001)
+    for (int i = 0; i < values.length; i++) {
+      if ((mode & (1 << (values.length - 1 - i))) != 0) {
+        result.add(values[i]);
+      }
+    }
+    return result;
+  }
+
+  private static class FileTarget {
+
+    private final Path path;
+    private final Set<PosixFilePermission> perms;
+    private final FileChannel channel;
+    private final AtomicInteger pending = new AtomicInteger(1);
+
+    private FileTarget(Path path, Set<PosixFilePermission> perms, FileChannel channel) {
+      this.path = path;
+      this.perms = perms;
+      this.channel = channel;
+    }
+  }
+
+  private static class Chunk {
+
+    private final FileTarget target;
+    private final long position;
+    private final byte[] data;
+    private final int length;
+
+    private Chunk(FileTarget target, long position, byte[] data, int length) {
+      this.target = target;
+      this.position = position;
+      this.data = data;
+      this.length = length;
+    }
+  }
+}
@@ -46,4 +46,9 @@ public class ObtainResourceFromJarStrategy implements ObtainResourceStrategy {
     return result;
   }
 
+  @Override
+  public ObtainResourceStrategy resolve(String name) {
+    return new ObtainResourceFromJarStrategy(fileName + "/" + name);
+  }
+
 }
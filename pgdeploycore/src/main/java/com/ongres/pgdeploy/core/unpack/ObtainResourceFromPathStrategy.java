@@ -38,12 +38,15 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.PosixFilePermission;
 import java.nio.file.attribute.PosixFilePermissions;
 import java.util.Enumeration;
 import java.util.List;
+import java.util.Optional;
 import java.util.Set;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
@@ -65,4 +68,22 @@ public class ObtainResourceFromPathStrategy implements ObtainResourceStrategy {
       throw new UnreachableBinariesException(e.getMessage());
     }
   }
+
+  @Override
+  public Optional<Path> obtainResourcePath() {
+    return Files.isRegularFile(fileToUnpack) ? Optional.of(fileToUnpack) : Optional.empty();
+  }
+
+  @Override
+  public Optional<FileChannel> obtainResourceChannel() throws IOException {
+    if (!Files.isRegularFile(fileToUnpack)) {
+      return Optional.empty();
+    }
+    return Optional.of(FileChannel.open(fileToUnpack, StandardOpenOption.READ));
+  }
+
+  @Override
+  public ObtainResourceStrategy resolve(String name) {
+    return new ObtainResourceFromPathStrategy(fileToUnpack.resolve(name));
+  }
 }
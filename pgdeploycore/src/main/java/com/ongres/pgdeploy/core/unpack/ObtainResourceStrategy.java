@@ -30,10 +30,40 @@ import com.ongres.pgdeploy.core.exceptions.UnreachableBinariesException;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.FileChannel;
 import java.nio.file.Path;
 import java.util.List;
+import java.util.Optional;
 
 public interface ObtainResourceStrategy {
 
   InputStream obtainResource() throws UnreachableBinariesException;
+
+  /** Returns the location of the packed binaries in the file system, when there is one. Strategies
+   * that need random access to the archive, such as {@link ParallelUnzipFoldersStrategy}, use it
+   * to avoid copying the resource to a temporary file first.
+   * @return The path of the packed binaries, or an empty optional if they are not a plain file
+   */
+  default Optional<Path> obtainResourcePath() {
+    return Optional.empty();
+  }
+
+  /** Opens a read only channel over the packed binaries, when they are a plain file. Unlike a
+   * stream, it can be read at any position from several threads and transfer ranges of the file
+   * directly to other channels, without going through the heap. The caller must close it.
+   * @return The channel, or an empty optional if the binaries are not a plain file
+   */
+  default Optional<FileChannel> obtainResourceChannel() throws IOException {
+    return Optional.empty();
+  }
+
+  /** Returns the strategy to obtain a resource kept inside this one, when the packed binaries are
+   * a folder of archives, as with {@link PackageMode#ZIP_PER_FOLDER}.
+   * @param name The name of the resource inside this one
+   * @throws UnreachableBinariesException If this resource can't hold others, which is the default
+   */
+  default ObtainResourceStrategy resolve(String name) throws UnreachableBinariesException {
+    throw new UnreachableBinariesException(
+        "Resource " + name + " can't be reached through " + getClass().getName());
+  }
 }
@@ -26,7 +26,17 @@ package com.ongres.pgdeploy.core.unpack;
 
 public enum PackageMode {
   ZIP(".zip"),
-  TARGZ(".tar.gz");
+  TARGZ(".tar.gz"),
+  /** A folder with a zip archive per {@link com.ongres.pgdeploy.core.PostgresInstallationFolder},
+   * named after it, like <tt>bin.zip</tt>, so only the archives of the folders required are read.
+   */
+  ZIP_PER_FOLDER(""),
+  /** A tar compressed with Zstandard, which requires <tt>com.github.luben:zstd-jni</tt>.
+   */
+  TARZST(".tar.zst"),
+  /** A tar compressed in the LZ4 frame format.
+   */
+  TARLZ4(".tar.lz4");
 
   private String stringId;
 
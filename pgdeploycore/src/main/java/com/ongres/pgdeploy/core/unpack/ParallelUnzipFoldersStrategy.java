@@ -0,0 +1,288 @@
+/*
+ * Copyright 2017, OnGres.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.ongres.pgdeploy.core.unpack;
+
+import com.google.common.base.Preconditions;
+import com.ongres.pgdeploy.core.PostgresInstallationFolder;
+import com.ongres.pgdeploy.core.exceptions.NonWritableDestinationException;
+import com.ongres.pgdeploy.core.exceptions.UnreachableBinariesException;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/** Unpacks a zip file by reading its central directory and inflating the entries concurrently on
+ * the given executor. The resulting tree is the same {@link UnzipFoldersStrategy} produces: parent
+ * directories are created on the calling thread and every file gets <tt>rwxr-xr-x</tt>.
+ *
+ * <p>The archive is read through a {@link FileChannel}, so stored entries are copied by the
+ * operating system with {@link FileChannel#transferTo}, without going through the heap.
+ *
+ * <p>The executor is owned by the caller, who is responsible for shutting it down.
+ */
+public class ParallelUnzipFoldersStrategy implements UnpackFoldersStrategy {
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private static final Set<PosixFilePermission> perms =
+      PosixFilePermissions.fromString("rwxr-xr-x");
+
+  private final ExecutorService executor;
+
+  public ParallelUnzipFoldersStrategy(@Nonnull ExecutorService executor) {
+    this.executor = Preconditions.checkNotNull(executor);
+  }
+
+  /** As random access is needed, the stream is first copied to a temporary file.
+   */
+  @Override
+  public void unpackFolders(
+      Path destination, List<PostgresInstallationFolder> folders, InputStream stream)
+      throws IOException, NonWritableDestinationException, UnreachableBinariesException {
+
+    Path spooled = Files.createTempFile("pgdeploy", ".zip");
+    try {
+      try (InputStream in = stream) {
+        Files.copy(in, spooled, StandardCopyOption.REPLACE_EXISTING);
+      }
+      unpackFolders(destination, folders, spooled);
+    } finally {
+      Files.deleteIfExists(spooled);
+    }
+  }
+
+  @Override
+  public void unpackFolders(
+      Path destination, List<PostgresInstallationFolder> folders, ObtainResourceStrategy resource)
+      throws IOException, NonWritableDestinationException, UnreachableBinariesException {
+
+    Optional<FileChannel> channel = resource.obtainResourceChannel();
+    if (channel.isPresent()) {
+      unpackFolders(destination, folders, channel.get(),
+          resource.obtainResourcePath().map(Path::toString).orElse("packed binaries"));
+    } else {
+      unpackFolders(destination, folders, resource.obtainResource());
+    }
+  }
+
+  /** Unpacks the desired folders of the zip file located at <tt>zipFile</tt>.
+   */
+  public void unpackFolders(
+      Path destination, List<PostgresInstallationFolder> folders, Path zipFile)
+      throws IOException, NonWritableDestinationException, UnreachableBinariesException {
+
+    if (!Files.isRegularFile(zipFile)) {
+      throw new UnreachableBinariesException(zipFile + " (No such file or directory)");
+    }
+
+    unpackFolders(destination, folders,
+        FileChannel.open(zipFile, StandardOpenOption.READ), zipFile.toString());
+  }
+
+  private void unpackFolders(Path destination, List<PostgresInstallationFolder> folders,
+      FileChannel channel, String archiveName)
+      throws IOException, NonWritableDestinationException {
+    unpackFolders(destination, folders, channel, archiveName, executor);
+  }
+
+  /** Unpacks the desired folders of the zip file read by the channel, which is closed, on the
+   * executor if there is one.
+   */
+  @edu.umd.cs.findbugs.annotations.SuppressFBWarnings(
+      value = "RV_RETURN_VALUE_IGNORED_BAD_PRACTICE",
+      justification = "The value itself has no interest")
+  static void unpackFolders(Path destination, List<PostgresInstallationFolder> folders,
+      FileChannel channel, String archiveName, @Nullable ExecutorService executor)
+      throws IOException, NonWritableDestinationException {
+
+    String newPath = destination.toAbsolutePath().toString();
+
+    try (ZipFile zip = open(channel, archiveName)) {
+
+      if (!new File(newPath).mkdir()) {
+        throw new NonWritableDestinationException("Unable to create or open file: " + newPath);
+      }
+
+      unzipEntries(zip, channel, newPath, folders, executor);
+    }
+  }
+
+  /** Opens the zip file read by the channel, which is closed with it.
+   */
+  static ZipFile open(FileChannel channel, String archiveName) throws IOException {
+    try {
+      return new ZipFile(channel, archiveName, StandardCharsets.UTF_8.name(), true);
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  /** Extracts the entries of the desired folders under <tt>newPath</tt>, on the executor if there
+   * is one. Entries are read with positional reads, so they can be read concurrently, and the
+   * stored ones are transferred from the archive channel straight to the file.
+   */
+  @edu.umd.cs.findbugs.annotations.SuppressFBWarnings(
+      value = "RV_RETURN_VALUE_IGNORED_BAD_PRACTICE",
+      justification = "The value itself has no interest")
+  static void unzipEntries(ZipFile zip, FileChannel channel, String newPath,
+      List<PostgresInstallationFolder> folders, @Nullable ExecutorService executor)
+      throws IOException {
+
+    // Keyed by name so that, as when streaming, the last of duplicated entries wins
+    Map<String, ZipArchiveEntry> files = new LinkedHashMap<>();
+
+    Enumeration<ZipArchiveEntry> entries = zip.getEntries();
+    while (entries.hasMoreElements()) {
+      ZipArchiveEntry entry = entries.nextElement();
+      String currentEntry = entry.getName();
+
+      if (!folders.stream().anyMatch(
+          folder -> currentEntry.startsWith(folder.getStringId() + "/"))) {
+        continue;
+      }
+
+      // create the parent directory structure if needed
+      new File(newPath, currentEntry).getParentFile().mkdirs();
+
+      if (entry.isDirectory()) {
+        files.remove(currentEntry);
+      } else {
+        files.put(currentEntry, entry);
+      }
+    }
+
+    if (executor == null) {
+      for (ZipArchiveEntry entry : files.values()) {
+        extract(zip, channel, entry, new File(newPath, entry.getName()));
+      }
+      return;
+    }
+
+    List<Callable<Void>> tasks = new ArrayList<>(files.size());
+    for (ZipArchiveEntry entry : files.values()) {
+      File destFile = new File(newPath, entry.getName());
+      tasks.add(() -> {
+        extract(zip, channel, entry, destFile);
+        return null;
+      });
+    }
+
+    try {
+      awaitAll(executor.invokeAll(tasks));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while unpacking in " + newPath);
+    }
+  }
+
+  private static void extract(ZipFile zip, FileChannel channel, ZipArchiveEntry entry,
+      File destFile) throws IOException {
+    if (entry.getMethod() == ZipArchiveEntry.STORED && entry.getDataOffset() >= 0) {
+      transfer(channel, entry, destFile);
+    } else {
+      inflate(zip, entry, destFile);
+    }
+    Files.setPosixFilePermissions(destFile.toPath(), perms);
+  }
+
+  private static void transfer(FileChannel channel, ZipArchiveEntry entry, File destFile)
+      throws IOException {
+    long offset = entry.getDataOffset();
+    long size = entry.getCompressedSize();
+
+    try (FileChannel out = FileChannel.open(destFile.toPath(), StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+      long position = 0;
+      while (position < size) {
+        long transferred = channel.transferTo(offset + position, size - position, out);
+        if (transferred <= 0) {
+          throw new EOFException("Truncated zip entry " + entry.getName());
+        }
+        position += transferred;
+      }
+    }
+  }
+
+  private static void inflate(ZipFile zip, ZipArchiveEntry entry, File destFile)
+      throws IOException {
+    byte[] data = new byte[BUFFER_SIZE];
+    int read;
+
+    try (InputStream in = zip.getInputStream(entry);
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(destFile), BUFFER_SIZE)) {
+      while ((read = in.read(data, 0, BUFFER_SIZE)) != -1) {
+        out.write(data, 0, read);
+      }
+    }
+  }
+
+  private static void awaitAll(List<Future<Void>> futures)
+      throws IOException, InterruptedException {
+    for (Future<Void> future : futures) {
+      try {
+        future.get();
+      } catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof IOException) {
+          throw (IOException) cause;
+        }
+        if (cause instanceof RuntimeException) {
+          throw (RuntimeException) cause;
+        }
+        throw new IOException(cause);
+      }
+    }
+  }
+}
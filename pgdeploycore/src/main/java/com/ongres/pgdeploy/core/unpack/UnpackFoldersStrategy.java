@@ -35,7 +35,21 @@ import java.util.List;
 
 public interface UnpackFoldersStrategy {
 
+  /** Unpacks the folders from the packed binaries read from <tt>stream</tt>. Binaries that are
+   * not a single archive, such as {@link PackageMode#ZIP_PER_FOLDER} ones, can't be read from a
+   * stream, and their strategies always throw {@link UnreachableBinariesException} here, so the
+   * overload taking an {@link ObtainResourceStrategy} should be preferred.
+   */
   void unpackFolders(
       Path destination, List<PostgresInstallationFolder> folders, InputStream stream)
       throws IOException, NonWritableDestinationException, UnreachableBinariesException;
+
+  /** Unpacks the folders from the packed binaries the <tt>resource</tt> points to. By default the
+   * resource is consumed as a stream, but strategies may take advantage of its location on disk.
+   */
+  default void unpackFolders(
+      Path destination, List<PostgresInstallationFolder> folders, ObtainResourceStrategy resource)
+      throws IOException, NonWritableDestinationException, UnreachableBinariesException {
+    unpackFolders(destination, folders, resource.obtainResource());
+  }
 }
@@ -24,14 +24,47 @@
  */
 package com.ongres.pgdeploy.core.unpack;
 
+import java.util.concurrent.ExecutorService;
+
 public class UnpackFoldersStrategyFactory {
 
   public static UnpackFoldersStrategy getUnpackFoldersStrategy(PackageMode mode) {
     switch (mode) {
       case ZIP:
         return new UnzipFoldersStrategy();
+      case TARGZ:
+        return new UntarGzFoldersStrategy();
+      case ZIP_PER_FOLDER:
+        return new UnzipFolderArchivesStrategy();
+      case TARZST:
+        return new UntarZstdFoldersStrategy();
+      case TARLZ4:
+        return new UntarLz4FoldersStrategy();
       default:
         return null;
     }
   }
+
+  /** Returns a strategy that unpacks the archive using the threads of the given executor.
+   * Package modes that cannot be unpacked in parallel fall back to the sequential strategy.
+   */
+  public static UnpackFoldersStrategy getUnpackFoldersStrategy(
+      PackageMode mode, ExecutorService executor) {
+    switch (mode) {
+      case ZIP:
+        return new ParallelUnzipFoldersStrategy(executor);
+      case TARGZ:
+        return new UntarGzFoldersStrategy(executor, AbstractUntarFoldersStrategy.defaultWriters());
+      case ZIP_PER_FOLDER:
+        return new UnzipFolderArchivesStrategy(executor);
+      case TARZST:
+        return new UntarZstdFoldersStrategy(
+            executor, AbstractUntarFoldersStrategy.defaultWriters());
+      case TARLZ4:
+        return new UntarLz4FoldersStrategy(
+            executor, AbstractUntarFoldersStrategy.defaultWriters());
+      default:
+        return getUnpackFoldersStrategy(mode);
+    }
+  }
 }
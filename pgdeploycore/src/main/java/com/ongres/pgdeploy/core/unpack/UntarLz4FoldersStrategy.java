@@ -0,0 +1,59 @@
+/*
+ * Copyright 2017, OnGres.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.ongres.pgdeploy.core.unpack;
+
+import org.apache.commons.compress.compressors.lz4.FramedLZ4CompressorInputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ExecutorService;
+
+import javax.annotation.Nonnull;
+
+/** Unpacks a tar.lz4 file, in the LZ4 frame format written by the <tt>lz4</tt> tool, see
+ * {@link AbstractUntarFoldersStrategy}. Decompression is pure Java, so no native library is
+ * required, at the cost of bigger archives than Zstandard ones.
+ */
+public class UntarLz4FoldersStrategy extends AbstractUntarFoldersStrategy {
+
+  /** Creates a strategy that starts its own writer threads on every extraction.
+   */
+  public UntarLz4FoldersStrategy() {
+    super();
+  }
+
+  /** Creates a strategy whose writers run on the given executor, which must be able to run
+   * <tt>writers</tt> tasks concurrently. The executor is not shut down.
+   */
+  public UntarLz4FoldersStrategy(@Nonnull ExecutorService executor, int writers) {
+    super(executor, writers);
+  }
+
+  @Override
+  protected InputStream decompress(InputStream stream) throws IOException {
+    // Concatenated frames are read as a single stream, as the lz4 tool does
+    return new FramedLZ4CompressorInputStream(stream, true);
+  }
+}
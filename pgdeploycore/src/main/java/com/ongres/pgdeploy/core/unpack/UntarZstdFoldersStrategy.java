@@ -0,0 +1,60 @@
+/*
+ * Copyright 2017, OnGres.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.ongres.pgdeploy.core.unpack;
+
+import org.apache.commons.compress.compressors.zstandard.ZstdCompressorInputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ExecutorService;
+
+import javax.annotation.Nonnull;
+
+/** Unpacks a tar.zst file, see {@link AbstractUntarFoldersStrategy}. Zstandard decompresses
+ * several times faster than gzip, so writing the files becomes the bottleneck instead.
+ *
+ * <p>Decompression is done by the native library bundled in <tt>com.github.luben:zstd-jni</tt>,
+ * an optional dependency that suppliers packed this way must bring.
+ */
+public class UntarZstdFoldersStrategy extends AbstractUntarFoldersStrategy {
+
+  /** Creates a strategy that starts its own writer threads on every extraction.
+   */
+  public UntarZstdFoldersStrategy() {
+    super();
+  }
+
+  /** Creates a strategy whose writers run on the given executor, which must be able to run
+   * <tt>writers</tt> tasks concurrently. The executor is not shut down.
+   */
+  public UntarZstdFoldersStrategy(@Nonnull ExecutorService executor, int writers) {
+    super(executor, writers);
+  }
+
+  @Override
+  protected InputStream decompress(InputStream stream) throws IOException {
+    return new ZstdCompressorInputStream(stream);
+  }
+}
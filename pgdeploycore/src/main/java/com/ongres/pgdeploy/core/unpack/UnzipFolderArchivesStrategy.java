@@ -0,0 +1,159 @@
+/*
+ * Copyright 2017, OnGres.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.ongres.pgdeploy.core.unpack;
+
+import com.google.common.base.Throwables;
+import com.ongres.pgdeploy.core.PostgresInstallationFolder;
+import com.ongres.pgdeploy.core.exceptions.NonWritableDestinationException;
+import com.ongres.pgdeploy.core.exceptions.UnreachableBinariesException;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.ZipInputStream;
+
+import javax.annotation.Nullable;
+
+/** Unpacks binaries packed as {@link PackageMode#ZIP_PER_FOLDER}, a folder with a zip archive per
+ * installation folder. Only the archives of the folders required are opened, so the data of the
+ * others is never read nor inflated. Archives of folders that the binaries don't include are
+ * skipped, as the single zip does with their entries.
+ *
+ * <p>Given an executor, every archive is unpacked on its own task.
+ */
+public class UnzipFolderArchivesStrategy implements UnpackFoldersStrategy {
+
+  private static final String archiveExtension = PackageMode.ZIP.getStringId();
+
+  @Nullable
+  private final ExecutorService executor;
+
+  public UnzipFolderArchivesStrategy() {
+    this(null);
+  }
+
+  public UnzipFolderArchivesStrategy(@Nullable ExecutorService executor) {
+    this.executor = executor;
+  }
+
+  /** A single stream can't hold a folder of archives, so this always fails.
+   * @throws UnreachableBinariesException Always
+   */
+  @Override
+  public void unpackFolders(
+      Path destination, List<PostgresInstallationFolder> folders, InputStream stream)
+      throws UnreachableBinariesException {
+    throw new UnreachableBinariesException(
+        "Binaries packed as a folder of archives can't be read from a stream");
+  }
+
+  @Override
+  public void unpackFolders(
+      Path destination, List<PostgresInstallationFolder> folders, ObtainResourceStrategy resource)
+      throws IOException, NonWritableDestinationException, UnreachableBinariesException {
+
+    String newPath = destination.toAbsolutePath().toString();
+
+    if (!new File(newPath).mkdir()) {
+      throw new NonWritableDestinationException("Unable to create or open file: " + newPath);
+    }
+
+    if (executor == null) {
+      for (PostgresInstallationFolder folder : folders) {
+        unpackFolder(newPath, folder, resource);
+      }
+      return;
+    }
+
+    List<Future<Void>> futures = new ArrayList<>();
+    for (PostgresInstallationFolder folder : folders) {
+      futures.add(executor.submit(() -> {
+        unpackFolder(newPath, folder, resource);
+        return null;
+      }));
+    }
+
+    try {
+      for (Future<Void> future : futures) {
+        future.get();
+      }
+    } catch (InterruptedException e) {
+      futures.forEach(future -> future.cancel(true));
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while unpacking in " + newPath);
+    } catch (ExecutionException e) {
+      futures.forEach(future -> future.cancel(true));
+      Throwable cause = e.getCause();
+      Throwables.throwIfInstanceOf(cause, IOException.class);
+      Throwables.throwIfInstanceOf(cause, UnreachableBinariesException.class);
+      Throwables.throwIfUnchecked(cause);
+      throw new IOException(cause);
+    }
+  }
+
+  /** The name of the archive of a folder inside the packed binaries. */
+  public static String archiveName(PostgresInstallationFolder folder) {
+    return folder.getStringId() + archiveExtension;
+  }
+
+  private static void unpackFolder(
+      String newPath, PostgresInstallationFolder folder, ObtainResourceStrategy resource)
+      throws IOException, UnreachableBinariesException {
+    ObtainResourceStrategy archive = resource.resolve(archiveName(folder));
+
+    // Archives in the file system are read at random, and their stored entries are not copied
+    Optional<FileChannel> channel = archive.obtainResourceChannel();
+    if (channel.isPresent()) {
+      try (ZipFile zip = ParallelUnzipFoldersStrategy.open(channel.get(), archiveName(folder))) {
+        ParallelUnzipFoldersStrategy.unzipEntries(
+            zip, channel.get(), newPath, Collections.singletonList(folder), null);
+      }
+      return;
+    }
+
+    InputStream stream;
+    try {
+      stream = archive.obtainResource();
+    } catch (UnreachableBinariesException e) {
+      // Not included in these binaries
+      return;
+    }
+
+    try (ZipInputStream zip = new ZipInputStream(stream)) {
+      UnzipFoldersStrategy.unzipEntries(zip, newPath, Collections.singletonList(folder));
+    }
+  }
+}
@@ -35,12 +35,14 @@ import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.attribute.PosixFilePermission;
 import java.nio.file.attribute.PosixFilePermissions;
 import java.util.Enumeration;
 import java.util.List;
+import java.util.Optional;
 import java.util.Set;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
@@ -49,18 +51,10 @@ import java.util.zip.ZipInputStream;
 public class UnzipFoldersStrategy implements UnpackFoldersStrategy {
 
   @Override
-  @edu.umd.cs.findbugs.annotations.SuppressFBWarnings(
-      value = "RV_RETURN_VALUE_IGNORED_BAD_PRACTICE",
-      justification = "The value itself has no interest")
   public void unpackFolders(
       Path destination, List<PostgresInstallationFolder> folders, InputStream stream)
       throws IOException, NonWritableDestinationException, UnreachableBinariesException {
 
-    int buffer = 2048;
-
-    Set<PosixFilePermission> perms =
-        PosixFilePermissions.fromString("rwxr-xr-x");
-
     String newPath = destination.toAbsolutePath().toString();
 
     try (ZipInputStream zip = new ZipInputStream(stream)) {
@@ -69,47 +63,83 @@ public class UnzipFoldersStrategy implements UnpackFoldersStrategy {
         throw new NonWritableDestinationException("Unable to create or open file: " + newPath);
       }
 
-      ZipEntry entry;
+      unzipEntries(zip, newPath, folders);
+
+    } catch (FileNotFoundException e) {
+      throw new UnreachableBinariesException(e.getMessage());
+    }
 
-      while ((entry = zip.getNextEntry()) != null) {
+  }
 
-        String currentEntry = entry.getName();
+  /** Binaries in the file system are read through a channel, as
+   * {@link ParallelUnzipFoldersStrategy} does but on the calling thread, so their stored entries
+   * are transferred by the operating system instead of copied through the heap.
+   */
+  @Override
+  public void unpackFolders(
+      Path destination, List<PostgresInstallationFolder> folders, ObtainResourceStrategy resource)
+      throws IOException, NonWritableDestinationException, UnreachableBinariesException {
 
-        if (!folders.stream().anyMatch(
-            folder -> currentEntry.startsWith(folder.getStringId() + "/"))) {
-          continue;
-        }
+    Optional<FileChannel> channel = resource.obtainResourceChannel();
+    if (channel.isPresent()) {
+      ParallelUnzipFoldersStrategy.unpackFolders(destination, folders, channel.get(),
+          resource.obtainResourcePath().map(Path::toString).orElse("packed binaries"), null);
+    } else {
+      unpackFolders(destination, folders, resource.obtainResource());
+    }
+  }
+
+  /** Writes in <tt>newPath</tt> the entries of <tt>zip</tt> that belong to the given folders.
+   */
+  @edu.umd.cs.findbugs.annotations.SuppressFBWarnings(
+      value = "RV_RETURN_VALUE_IGNORED_BAD_PRACTICE",
+      justification = "The value itself has no interest")
+  static void unzipEntries(
+      ZipInputStream zip, String newPath, List<PostgresInstallationFolder> folders)
+      throws IOException {
+
+    int buffer = 2048;
+
+    Set<PosixFilePermission> perms =
+        PosixFilePermissions.fromString("rwxr-xr-x");
+
+    ZipEntry entry;
+
+    while ((entry = zip.getNextEntry()) != null) {
 
-        File destFile = new File(newPath, currentEntry);
+      String currentEntry = entry.getName();
+
+      if (!folders.stream().anyMatch(
+          folder -> currentEntry.startsWith(folder.getStringId() + "/"))) {
+        continue;
+      }
 
-        File destinationParent = destFile.getParentFile();
+      File destFile = new File(newPath, currentEntry);
 
-        // create the parent directory structure if needed
-        destinationParent.mkdirs();
+      File destinationParent = destFile.getParentFile();
 
-        if (!entry.isDirectory()) {
-          int currentByte;
-          // establish buffer for writing file
-          byte[] data = new byte[buffer];
+      // create the parent directory structure if needed
+      destinationParent.mkdirs();
 
-          // write the current file to disk
+      if (!entry.isDirectory()) {
+        int currentByte;
+        // establish buffer for writing file
+        byte[] data = new byte[buffer];
 
-          FileOutputStream fos = new FileOutputStream(destFile);
+        // write the current file to disk
 
-          try (BufferedOutputStream dest = new BufferedOutputStream(fos, buffer)) {
+        FileOutputStream fos = new FileOutputStream(destFile);
 
-            // read and write until last byte is encountered
-            while ((currentByte = zip.read(data, 0, buffer)) != -1) {
-              dest.write(data, 0, currentByte);
-            }
-            Files.setPosixFilePermissions(destFile.toPath(), perms);
+        try (BufferedOutputStream dest = new BufferedOutputStream(fos, buffer)) {
+
+          // read and write until last byte is encountered
+          while ((currentByte = zip.read(data, 0, buffer)) != -1) {
+            dest.write(data, 0, currentByte);
           }
+          Files.setPosixFilePermissions(destFile.toPath(), perms);
         }
       }
-    } catch (FileNotFoundException e) {
-      throw new UnreachableBinariesException(e.getMessage());
     }
-
   }
 
 }
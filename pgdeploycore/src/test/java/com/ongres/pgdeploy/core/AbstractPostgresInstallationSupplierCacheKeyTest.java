@@ -0,0 +1,93 @@
+/*
+ * Copyright 2017, OnGres.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.ongres.pgdeploy.core;
+
+import com.ongres.pgdeploy.core.pgversion.Post10PostgresMajorVersion;
+import com.ongres.pgdeploy.core.unpack.PackageMode;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Comparator;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class AbstractPostgresInstallationSupplierCacheKeyTest {
+
+  private Path workDir;
+
+  @Before
+  public void setUp() throws Exception {
+    workDir = Files.createTempDirectory("pgdeploy-cachekey");
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    try (Stream<Path> paths = Files.walk(workDir)) {
+      for (Path path : paths.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+        Files.delete(path);
+      }
+    }
+  }
+
+  @Test
+  public void jarIsIdentifiedWithoutReadingIt() throws Exception {
+    // Not a real jar: reading the packed binaries from it would fail
+    Path jar = Files.write(workDir.resolve("supplier.jar"), new byte[] {1, 2, 3});
+
+    String key = supplier(jar, true).getCacheKey().get();
+    assertEquals(key, supplier(jar, true).getCacheKey().get());
+
+    Files.setLastModifiedTime(jar, FileTime.fromMillis(
+        Files.getLastModifiedTime(jar).toMillis() - 60_000));
+    assertNotEquals(key, supplier(jar, true).getCacheKey().get());
+  }
+
+  @Test
+  public void pathIsDigested() throws Exception {
+    Path zipFile = Files.write(workDir.resolve("binaries.zip"), new byte[] {1, 2, 3});
+    String key = supplier(zipFile, false).getCacheKey().get();
+
+    Files.setLastModifiedTime(zipFile, FileTime.fromMillis(
+        Files.getLastModifiedTime(zipFile).toMillis() - 60_000));
+    assertEquals(key, supplier(zipFile, false).getCacheKey().get());
+
+    Files.write(zipFile, new byte[] {4, 5, 6});
+    assertNotEquals(key, supplier(zipFile, false).getCacheKey().get());
+  }
+
+  private static AbstractPostgresInstallationSupplier supplier(Path path, boolean fromJar) {
+    return new AbstractPostgresInstallationSupplier(
+        new PostgresInstallationSupplierFeatures(
+            new Post10PostgresMajorVersion(10), 1, new Platform("linux", "x64")),
+        path, fromJar, PackageMode.ZIP) {
+    };
+  }
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright 2017, OnGres.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.ongres.pgdeploy.core.unpack;
+
+import com.ongres.pgdeploy.core.PostgresInstallationFolder;
+import com.ongres.pgdeploy.core.exceptions.NonWritableDestinationException;
+import com.ongres.pgdeploy.core.exceptions.UnreachableBinariesException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.*;
+
+public class ParallelUnzipFoldersStrategyTest {
+
+  private static final List<String> entries = Arrays.asList(
+      "bin/", "bin/initdb", "bin/pg_ctl", "bin/postgres",
+      "lib/", "lib/libpq.so.5", "lib/postgresql/plpgsql.so",
+      "share/", "share/postgresql/", "share/postgresql/postgresql.conf.sample",
+      "include/", "include/libpq-fe.h", "doc/README");
+
+  private List<PostgresInstallationFolder> folders =
+      Arrays.asList(PostgresInstallationFolder.BIN,
+          PostgresInstallationFolder.LIB,
+          PostgresInstallationFolder.SHARE);
+
+  private ExecutorService executor;
+  private Path workDir;
+  private Path zipFile;
+
+  @Before
+  public void setUp() throws Exception {
+    executor = Executors.newFixedThreadPool(4);
+    workDir = Files.createTempDirectory("pgdeploy-unzip");
+    zipFile = workDir.resolve("bin.zip");
+
+    Random random = new Random(42);
+    try (ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(zipFile.toFile()))) {
+      for (String entry : entries) {
+        zip.putNextEntry(new ZipEntry(entry));
+        if (!entry.endsWith("/")) {
+          byte[] content = new byte[random.nextInt(300 * 1024)];
+          random.nextBytes(content);
+          zip.write(content);
+        }
+        zip.closeEntry();
+      }
+    }
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    executor.shutdownNow();
+    try (Stream<Path> paths = Files.walk(workDir)) {
+      for (Path path : paths.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+        Files.delete(path);
+      }
+    }
+  }
+
+  @Test
+  public void sameResultAsSequentialUnzip() throws Exception {
+    Path sequential = workDir.resolve("sequential");
+    Path parallel = workDir.resolve("parallel");
+
+    new UnzipFoldersStrategy().unpackFolders(
+        sequential, folders, new FileInputStream(zipFile.toFile()));
+    new ParallelUnzipFoldersStrategy(executor).unpackFolders(
+        parallel, folders, new ObtainResourceFromPathStrategy(zipFile));
+
+    List<Path> expected = relativeTree(sequential);
+    assertEquals(expected, relativeTree(parallel));
+    assertFalse(expected.isEmpty());
+
+    for (Path path : expected) {
+      Path original = sequential.resolve(path);
+      Path copy = parallel.resolve(path);
+      assertEquals(path.toString(), Files.isDirectory(original), Files.isDirectory(copy));
+      if (!Files.isDirectory(original)) {
+        assertArrayEquals(path.toString(), Files.readAllBytes(original), Files.readAllBytes(copy));
+        assertEquals(path.toString(),
+            Files.getPosixFilePermissions(original), Files.getPosixFilePermissions(copy));
+      }
+    }
+  }
+
+  @Test
+  public void unzipFromStream() throws Exception {
+    Path parallel = workDir.resolve("parallel");
+
+    new ParallelUnzipFoldersStrategy(executor).unpackFolders(
+        parallel, folders, new FileInputStream(zipFile.toFile()));
+
+    assertTrue(Files.isRegularFile(parallel.resolve("lib/postgresql/plpgsql.so")));
+    assertFalse(Files.exists(parallel.resolve("include")));
+    assertFalse(Files.exists(parallel.resolve("doc")));
+  }
+
+  @Test
+  public void storedEntries() throws Exception {
+    Path storedZip = workDir.resolve("stored.zip");
+    byte[] postgres = new byte[1024 * 1024 + 17];
+    new Random(7).nextBytes(postgres);
+    byte[] libpq = "libpq".getBytes("UTF-8");
+
+    try (ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(storedZip.toFile()))) {
+      putStored(zip, "bin/postgres", postgres);
+      zip.putNextEntry(new ZipEntry("lib/libpq.so.5"));
+      zip.write(libpq);
+      zip.closeEntry();
+      putStored(zip, "lib/empty", new byte[0]);
+    }
+
+    Path parallel = workDir.resolve("parallel");
+    new ParallelUnzipFoldersStrategy(executor).unpackFolders(
+        parallel, folders, new ObtainResourceFromPathStrategy(storedZip));
+
+    assertArrayEquals(postgres, Files.readAllBytes(parallel.resolve("bin/postgres")));
+    assertArrayEquals(libpq, Files.readAllBytes(parallel.resolve("lib/libpq.so.5")));
+    assertEquals(0, Files.size(parallel.resolve("lib/empty")));
+  }
+
+  @Test
+  public void sequentialUnzipReadsThroughTheChannel() throws Exception {
+    Path sequential = workDir.resolve("sequential");
+    Path streamed = workDir.resolve("streamed");
+
+    new UnzipFoldersStrategy().unpackFolders(sequential, folders,
+        new ObtainResourceFromPathStrategy(zipFile) {
+          @Override
+          public InputStream obtainResource() {
+            throw new AssertionError("Binaries in the file system are not streamed");
+          }
+        });
+    new UnzipFoldersStrategy().unpackFolders(
+        streamed, folders, new FileInputStream(zipFile.toFile()));
+
+    List<Path> expected = relativeTree(streamed);
+    assertEquals(expected, relativeTree(sequential));
+    for (Path path : expected) {
+      if (!Files.isDirectory(streamed.resolve(path))) {
+        assertArrayEquals(path.toString(), Files.readAllBytes(streamed.resolve(path)),
+            Files.readAllBytes(sequential.resolve(path)));
+      }
+    }
+  }
+
+  @Test(expected = UnreachableBinariesException.class)
+  public void nonExistingZip() throws Exception {
+    new ParallelUnzipFoldersStrategy(executor).unpackFolders(
+        workDir.resolve("parallel"), folders, workDir.resolve("missing.zip"));
+  }
+
+  @Test(expected = NonWritableDestinationException.class)
+  public void existingDestination() throws Exception {
+    Path parallel = Files.createDirectory(workDir.resolve("parallel"));
+
+    new ParallelUnzipFoldersStrategy(executor).unpackFolders(
+        parallel, folders, zipFile);
+  }
+
+  private static void putStored(ZipOutputStream zip, String name, byte[] content)
+      throws IOException {
+    ZipEntry entry = new ZipEntry(name);
+    entry.setMethod(ZipEntry.STORED);
+    entry.setSize(content.length);
+    CRC32 crc = new CRC32();
+    crc.update(content);
+    entry.setCrc(crc.getValue());
+    zip.putNextEntry(entry);
+    zip.write(content);
+    zip.closeEntry();
+  }
+
+  private static List<Path> relativeTree(Path root) throws IOException {
+    try (Stream<Path> paths = Files.walk(root)) {
+      return paths.map(root::relativize).sorted().collect(Collectors.toList());
+    }
+  }
+}
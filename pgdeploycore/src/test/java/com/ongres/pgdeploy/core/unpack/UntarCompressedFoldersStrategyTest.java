@@ -0,0 +1,158 @@
+/*
+ * Copyright 2017, OnGres.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.ongres.pgdeploy.core.unpack;
+
+import com.ongres.pgdeploy.core.PostgresInstallationFolder;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.compressors.lz4.FramedLZ4CompressorOutputStream;
+import org.apache.commons.compress.compressors.zstandard.ZstdCompressorOutputStream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class UntarCompressedFoldersStrategyTest {
+
+  private List<PostgresInstallationFolder> folders =
+      Arrays.asList(PostgresInstallationFolder.BIN,
+          PostgresInstallationFolder.LIB);
+
+  private Path workDir;
+  private byte[] postgres;
+
+  @Before
+  public void setUp() throws Exception {
+    workDir = Files.createTempDirectory("pgdeploy-untar");
+
+    postgres = new byte[1024 * 1024 + 17];
+    new Random(42).nextBytes(postgres);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    try (Stream<Path> paths = Files.walk(workDir)) {
+      for (Path path : paths.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+        Files.delete(path);
+      }
+    }
+  }
+
+  @Test
+  public void untarZstd() throws Exception {
+    Path tarFile = workDir.resolve("binaries.tar.zst");
+    try (OutputStream out = new ZstdCompressorOutputStream(
+        new FileOutputStream(tarFile.toFile()))) {
+      writeTar(out);
+    }
+
+    Path destination = workDir.resolve("installation");
+    new UntarZstdFoldersStrategy().unpackFolders(
+        destination, folders, new FileInputStream(tarFile.toFile()));
+
+    checkInstallation(destination);
+  }
+
+  @Test
+  public void untarLz4OnExecutor() throws Exception {
+    Path tarFile = workDir.resolve("binaries.tar.lz4");
+    try (OutputStream out = new FramedLZ4CompressorOutputStream(
+        new FileOutputStream(tarFile.toFile()))) {
+      writeTar(out);
+    }
+
+    Path destination = workDir.resolve("installation");
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      new UntarLz4FoldersStrategy(executor, 2).unpackFolders(
+          destination, folders, new FileInputStream(tarFile.toFile()));
+    } finally {
+      executor.shutdownNow();
+    }
+
+    checkInstallation(destination);
+  }
+
+  @Test
+  public void factoryProvidesStrategies() throws Exception {
+    assertTrue(UnpackFoldersStrategyFactory.getUnpackFoldersStrategy(PackageMode.TARZST)
+        instanceof UntarZstdFoldersStrategy);
+    assertTrue(UnpackFoldersStrategyFactory.getUnpackFoldersStrategy(PackageMode.TARLZ4)
+        instanceof UntarLz4FoldersStrategy);
+  }
+
+  private void writeTar(OutputStream out) throws Exception {
+    TarArchiveOutputStream tar = new TarArchiveOutputStream(out);
+    addFile(tar, "./bin/postgres", postgres);
+    addFile(tar, "./lib/libpq.so.5.9", "libpq".getBytes("UTF-8"));
+
+    TarArchiveEntry symlink = new TarArchiveEntry("./lib/libpq.so.5", TarArchiveEntry.LF_SYMLINK);
+    symlink.setLinkName("libpq.so.5.9");
+    tar.putArchiveEntry(symlink);
+    tar.closeArchiveEntry();
+
+    addFile(tar, "./share/postgresql/postgres.bki", "bki".getBytes("UTF-8"));
+    tar.finish();
+  }
+
+  private void checkInstallation(Path destination) throws Exception {
+    assertArrayEquals(postgres, Files.readAllBytes(destination.resolve("bin/postgres")));
+    assertEquals("rwxr-xr-x", PosixFilePermissions.toString(
+        Files.getPosixFilePermissions(destination.resolve("bin/postgres"))));
+
+    Path symlink = destination.resolve("lib/libpq.so.5");
+    assertEquals(Paths.get("libpq.so.5.9"), Files.readSymbolicLink(symlink));
+    assertEquals("libpq", new String(Files.readAllBytes(symlink), "UTF-8"));
+
+    assertFalse(Files.exists(destination.resolve("share")));
+  }
+
+  private static void addFile(TarArchiveOutputStream tar, String name, byte[] content)
+      throws Exception {
+    TarArchiveEntry entry = new TarArchiveEntry(name);
+    entry.setSize(content.length);
+    entry.setMode(TarArchiveEntry.DEFAULT_FILE_MODE & ~0777 | 0755);
+    tar.putArchiveEntry(entry);
+    tar.write(content);
+    tar.closeArchiveEntry();
+  }
+}
@@ -0,0 +1,252 @@
+/*
+ * Copyright 2017, OnGres.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.ongres.pgdeploy.core.unpack;
+
+import com.ongres.pgdeploy.core.PostgresInstallationFolder;
+import com.ongres.pgdeploy.core.exceptions.NonWritableDestinationException;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.*;
+
+public class UntarGzFoldersStrategyTest {
+
+  private List<PostgresInstallationFolder> folders =
+      Arrays.asList(PostgresInstallationFolder.BIN,
+          PostgresInstallationFolder.LIB);
+
+  private Path workDir;
+  private Path tarFile;
+  private byte[] postgres;
+
+  @Before
+  public void setUp() throws Exception {
+    workDir = Files.createTempDirectory("pgdeploy-untar");
+    tarFile = workDir.resolve("bin.tar.gz");
+
+    // Several chunks long, so that it gets written by more than one writer
+    postgres = new byte[1024 * 1024 + 17];
+    new Random(42).nextBytes(postgres);
+
+    try (TarArchiveOutputStream tar = new TarArchiveOutputStream(
+        new GZIPOutputStream(new FileOutputStream(tarFile.toFile())))) {
+      tar.setLongFileMode(TarArchiveOutputStream.LONGFILE_POSIX);
+
+      addDirectory(tar, "./bin/", 0755);
+      addFile(tar, "./bin/postgres", postgres, 0755);
+      addFile(tar, "./bin/pg_config.txt", "config".getBytes("UTF-8"), 0640);
+      addFile(tar, "./bin/empty", new byte[0], 0600);
+      addDirectory(tar, "./lib/", 0750);
+      addFile(tar, "./lib/libpq.so.5.9", "libpq".getBytes("UTF-8"), 0755);
+
+      TarArchiveEntry symlink = new TarArchiveEntry("./lib/libpq.so.5", TarArchiveEntry.LF_SYMLINK);
+      symlink.setLinkName("libpq.so.5.9");
+      tar.putArchiveEntry(symlink);
+      tar.closeArchiveEntry();
+
+      TarArchiveEntry hardLink = new TarArchiveEntry("./bin/postmaster", TarArchiveEntry.LF_LINK);
+      hardLink.setLinkName("./bin/postgres");
+      tar.putArchiveEntry(hardLink);
+      tar.closeArchiveEntry();
+
+      addFile(tar, "./share/postgresql/postgres.bki", "bki".getBytes("UTF-8"), 0644);
+    }
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    try (Stream<Path> paths = Files.walk(workDir)) {
+      for (Path path : paths.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+        if (!Files.isSymbolicLink(path)) {
+          Files.setPosixFilePermissions(path, PosixFilePermissions.fromString("rwx------"));
+        }
+        Files.delete(path);
+      }
+    }
+  }
+
+  @Test
+  public void untarWithOwnWriters() throws Exception {
+    Path destination = workDir.resolve("installation");
+
+    new UntarGzFoldersStrategy().unpackFolders(
+        destination, folders, new FileInputStream(tarFile.toFile()));
+
+    checkInstallation(destination);
+  }
+
+  @Test
+  public void untarOnExecutor() throws Exception {
+    Path destination = workDir.resolve("installation");
+    ExecutorService executor = Executors.newFixedThreadPool(3);
+    try {
+      new UntarGzFoldersStrategy(executor, 3).unpackFolders(
+          destination, folders, new FileInputStream(tarFile.toFile()));
+    } finally {
+      executor.shutdownNow();
+    }
+
+    checkInstallation(destination);
+  }
+
+  @Test
+  public void factoryProvidesTarGzStrategy() throws Exception {
+    assertTrue(UnpackFoldersStrategyFactory.getUnpackFoldersStrategy(PackageMode.TARGZ)
+        instanceof UntarGzFoldersStrategy);
+  }
+
+  @Test(expected = NonWritableDestinationException.class)
+  public void existingDestination() throws Exception {
+    Path destination = Files.createDirectory(workDir.resolve("installation"));
+
+    new UntarGzFoldersStrategy().unpackFolders(
+        destination, folders, new FileInputStream(tarFile.toFile()));
+  }
+
+  @Test
+  public void absoluteSymbolicLink() throws Exception {
+    Path evilTar = writeTar(tar -> {
+      addSymbolicLink(tar, "./bin/etc", workDir.toString());
+      addFile(tar, "./bin/etc/escaped", "evil".getBytes("UTF-8"), 0644);
+    });
+
+    checkRejected(evilTar);
+  }
+
+  @Test
+  public void symbolicLinkOutOfDestination() throws Exception {
+    Path evilTar = writeTar(tar -> {
+      addSymbolicLink(tar, "./bin/up", "../..");
+      addFile(tar, "./bin/up/escaped", "evil".getBytes("UTF-8"), 0644);
+    });
+
+    checkRejected(evilTar);
+  }
+
+  @Test
+  public void writeThroughChainedSymbolicLinks() throws Exception {
+    // Each target is inside the destination by its name, but bin/a leads to its parent
+    Path evilTar = writeTar(tar -> {
+      addSymbolicLink(tar, "./bin/b", "..");
+      addSymbolicLink(tar, "./bin/a", "b/..");
+      addFile(tar, "./bin/a/escaped", "evil".getBytes("UTF-8"), 0644);
+    });
+
+    checkRejected(evilTar);
+  }
+
+  private void checkRejected(Path evilTar) throws Exception {
+    try {
+      new UntarGzFoldersStrategy().unpackFolders(
+          workDir.resolve("installation"), folders, new FileInputStream(evilTar.toFile()));
+      fail("An entry outside of the destination was accepted");
+    } catch (IOException e) {
+      // expected
+    }
+    assertFalse(Files.exists(workDir.resolve("escaped")));
+  }
+
+  private Path writeTar(TarWriter writer) throws Exception {
+    Path result = workDir.resolve("evil.tar.gz");
+    try (TarArchiveOutputStream tar = new TarArchiveOutputStream(
+        new GZIPOutputStream(new FileOutputStream(result.toFile())))) {
+      writer.write(tar);
+    }
+    return result;
+  }
+
+  private interface TarWriter {
+    void write(TarArchiveOutputStream tar) throws Exception;
+  }
+
+  private void checkInstallation(Path destination) throws Exception {
+    assertArrayEquals(postgres, Files.readAllBytes(destination.resolve("bin/postgres")));
+    assertEquals("rwxr-xr-x", permissions(destination.resolve("bin/postgres")));
+    assertEquals("rw-r-----", permissions(destination.resolve("bin/pg_config.txt")));
+    assertEquals(0, Files.size(destination.resolve("bin/empty")));
+    assertEquals("rw-------", permissions(destination.resolve("bin/empty")));
+    assertEquals("rwxr-x---", permissions(destination.resolve("lib")));
+
+    Path symlink = destination.resolve("lib/libpq.so.5");
+    assertTrue(Files.isSymbolicLink(symlink));
+    assertEquals(Paths.get("libpq.so.5.9"), Files.readSymbolicLink(symlink));
+    assertEquals("libpq", new String(Files.readAllBytes(symlink), "UTF-8"));
+
+    Path hardLink = destination.resolve("bin/postmaster");
+    assertTrue(Files.isSameFile(destination.resolve("bin/postgres"), hardLink));
+
+    assertFalse(Files.exists(destination.resolve("share")));
+  }
+
+  private static String permissions(Path path) throws Exception {
+    return PosixFilePermissions.toString(Files.getPosixFilePermissions(path));
+  }
+
+  private static void addSymbolicLink(TarArchiveOutputStream tar, String name, String target)
+      throws Exception {
+    TarArchiveEntry symlink = new TarArchiveEntry(name, TarArchiveEntry.LF_SYMLINK);
+    symlink.setLinkName(target);
+    tar.putArchiveEntry(symlink);
+    tar.closeArchiveEntry();
+  }
+
+  private static void addDirectory(TarArchiveOutputStream tar, String name, int mode)
+      throws Exception {
+    TarArchiveEntry entry = new TarArchiveEntry(name);
+    entry.setMode(TarArchiveEntry.DEFAULT_DIR_MODE & ~0777 | mode);
+    tar.putArchiveEntry(entry);
+    tar.closeArchiveEntry();
+  }
+
+  private static void addFile(TarArchiveOutputStream tar, String name, byte[] content, int mode)
+      throws Exception {
+    TarArchiveEntry entry = new TarArchiveEntry(name);
+    entry.setSize(content.length);
+    entry.setMode(TarArchiveEntry.DEFAULT_FILE_MODE & ~0777 | mode);
+    tar.putArchiveEntry(entry);
+    tar.write(content);
+    tar.closeArchiveEntry();
+  }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright 2017, OnGres.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.ongres.pgdeploy.core.unpack;
+
+import com.ongres.pgdeploy.core.AbstractPostgresInstallationSupplier;
+import com.ongres.pgdeploy.core.Platform;
+import com.ongres.pgdeploy.core.PostgresInstallationFolder;
+import com.ongres.pgdeploy.core.PostgresInstallationSupplierFeatures;
+import com.ongres.pgdeploy.core.exceptions.UnreachableBinariesException;
+import com.ongres.pgdeploy.core.pgversion.Post10PostgresMajorVersion;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.*;
+
+public class UnzipFolderArchivesStrategyTest {
+
+  private static final List<String> entries = Arrays.asList(
+      "bin/", "bin/initdb", "bin/pg_ctl", "bin/postgres",
+      "lib/", "lib/libpq.so.5", "lib/postgresql/plpgsql.so",
+      "share/", "share/postgresql/", "share/postgresql/postgresql.conf.sample");
+
+  private List<PostgresInstallationFolder> folders =
+      Arrays.asList(PostgresInstallationFolder.BIN, PostgresInstallationFolder.LIB);
+
+  private ExecutorService executor;
+  private Path workDir;
+  private Path singleZip;
+  private Path folderZips;
+
+  @Before
+  public void setUp() throws Exception {
+    executor = Executors.newFixedThreadPool(4);
+    workDir = Files.createTempDirectory("pgdeploy-unzip");
+    singleZip = workDir.resolve("single.zip");
+    folderZips = workDir.resolve("folders");
+    Files.createDirectory(folderZips);
+
+    Random random = new Random(42);
+    try (ZipOutputStream single = new ZipOutputStream(
+        new FileOutputStream(singleZip.toFile()))) {
+      for (String folder : Arrays.asList("bin", "lib", "share")) {
+        try (ZipOutputStream perFolder = new ZipOutputStream(
+            new FileOutputStream(folderZips.resolve(folder + ".zip").toFile()))) {
+          for (String entry : entries) {
+            if (!entry.startsWith(folder + "/")) {
+              continue;
+            }
+            byte[] content = new byte[entry.endsWith("/") ? 0 : random.nextInt(100 * 1024)];
+            random.nextBytes(content);
+            for (ZipOutputStream zip : Arrays.asList(single, perFolder)) {
+              zip.putNextEntry(new ZipEntry(entry));
+              zip.write(content);
+              zip.closeEntry();
+            }
+          }
+        }
+      }
+    }
+
+    // Never read, as the folder is not required
+    Files.write(folderZips.resolve("share.zip"), new byte[] {1, 2, 3});
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    executor.shutdownNow();
+    try (Stream<Path> paths = Files.walk(workDir)) {
+      for (Path path : paths.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+        Files.delete(path);
+      }
+    }
+  }
+
+  @Test
+  public void sameResultAsSingleZip() throws Exception {
+    Path expected = workDir.resolve("expected");
+    new UnzipFoldersStrategy().unpackFolders(
+        expected, folders, new FileInputStream(singleZip.toFile()));
+
+    Path sequential = workDir.resolve("sequential");
+    new UnzipFolderArchivesStrategy().unpackFolders(
+        sequential, folders, new ObtainResourceFromPathStrategy(folderZips));
+    assertSameTree(expected, sequential);
+
+    Path parallel = workDir.resolve("parallel");
+    new UnzipFolderArchivesStrategy(executor).unpackFolders(
+        parallel, folders, new ObtainResourceFromPathStrategy(folderZips));
+    assertSameTree(expected, parallel);
+  }
+
+  @Test
+  public void missingArchivesAreSkipped() throws Exception {
+    Path destination = workDir.resolve("destination");
+
+    new UnzipFolderArchivesStrategy().unpackFolders(destination,
+        Arrays.asList(PostgresInstallationFolder.BIN, PostgresInstallationFolder.INCLUDE),
+        new ObtainResourceFromPathStrategy(folderZips));
+
+    assertTrue(Files.exists(destination.resolve("bin").resolve("initdb")));
+    assertFalse(Files.exists(destination.resolve("include")));
+  }
+
+  @Test(expected = UnreachableBinariesException.class)
+  public void resourcesWithoutInnerResources() throws Exception {
+    ObtainResourceStrategy single = () -> new ByteArrayInputStream(new byte[0]);
+
+    new UnzipFolderArchivesStrategy().unpackFolders(
+        workDir.resolve("destination"), folders, single);
+  }
+
+  @Test(expected = UnreachableBinariesException.class)
+  public void streamsAreRejected() throws Exception {
+    new UnzipFolderArchivesStrategy().unpackFolders(
+        workDir.resolve("destination"), folders, new FileInputStream(singleZip.toFile()));
+  }
+
+  @Test
+  public void suppliersUnpackAndDigestFolderArchives() throws Exception {
+    AbstractPostgresInstallationSupplier supplier = new AbstractPostgresInstallationSupplier(
+        new PostgresInstallationSupplierFeatures(
+            new Post10PostgresMajorVersion(10), 1, new Platform("linux", "x64")),
+        folderZips, false, PackageMode.ZIP_PER_FOLDER) {
+    };
+
+    Path destination = workDir.resolve("destination");
+    supplier.unpackFolders(destination, folders);
+    assertTrue(Files.exists(destination.resolve("lib").resolve("libpq.so.5")));
+
+    String key = supplier.getCacheKey().get();
+    Files.write(folderZips.resolve("share.zip"), new byte[] {4, 5, 6});
+    AbstractPostgresInstallationSupplier changed = new AbstractPostgresInstallationSupplier(
+        new PostgresInstallationSupplierFeatures(
+            new Post10PostgresMajorVersion(10), 1, new Platform("linux", "x64")),
+        folderZips, false, PackageMode.ZIP_PER_FOLDER) {
+    };
+    assertNotEquals(key, changed.getCacheKey().get());
+  }
+
+  private static void assertSameTree(Path expected, Path actual) throws Exception {
+    List<Path> expectedTree = relativeTree(expected);
+    assertEquals(expectedTree, relativeTree(actual));
+    assertFalse(expectedTree.isEmpty());
+    for (Path path : expectedTree) {
+      if (!Files.isDirectory(expected.resolve(path))) {
+        assertArrayEquals(path.toString(), Files.readAllBytes(expected.resolve(path)),
+            Files.readAllBytes(actual.resolve(path)));
+        assertEquals(path.toString(), Files.getPosixFilePermissions(expected.resolve(path)),
+            Files.getPosixFilePermissions(actual.resolve(path)));
+      }
+    }
+  }
+
+  private static List<Path> relativeTree(Path root) throws Exception {
+    try (Stream<Path> paths = Files.walk(root)) {
+      return paths.map(root::relativize).sorted().collect(Collectors.toList());
+    }
+  }
+}
@@ -1,4 +1,6 @@
 import com.ongres.pgdeploy.PgDeploy;
+import com.ongres.pgdeploy.clusters.PortAllocator;
+import com.ongres.pgdeploy.clusters.PortLease;
 import com.ongres.pgdeploy.clusters.PostgresCluster;
 import com.ongres.pgdeploy.clusters.PostgresClusterCreationOptions;
 import com.ongres.pgdeploy.core.Platform;
@@ -49,6 +51,8 @@ public class Main {
 
   private static boolean stop = false;
 
+  private static PortLease portLease = null;
+
   public static void main(String[] args) throws Exception {
 
     final PgDeploy pgDeploy = new PgDeploy();
@@ -139,6 +143,9 @@ public class Main {
             break;
           case "stop":
             stop = true;
+            if (portLease != null) {
+              portLease.close();
+            }
             break;
           default:
             break;
@@ -212,13 +219,18 @@ public class Main {
     Path clusterPath = Paths.get(home).resolve(
         getStringInputForSentence("Path for cluster (from " + home + "):"));
     try {
-      return Optional.of(installation.createCluster(clusterPath,
+      if (portLease == null) {
+        portLease = PortAllocator.getDefault().allocate();
+      }
+      PostgresCluster cluster = installation.createCluster(clusterPath,
           PostgresClusterCreationOptions.fromDefault()
               .defaultEncoding()
               .defaultLocale()
               .withSuperUser("postgres")
-              .withoutDataChecksums()
-      ));
+              .withoutDataChecksums(),
+          portLease);
+      System.out.println("Cluster created on port " + portLease.getPort() + "!");
+      return Optional.of(cluster);
     } catch (BadClusterException | IOException | InterruptedException
         | ClusterDirectoryNotEmptyException | BadProcessExecutionException e) {
       System.out.println(e.getMessage());
@@ -231,7 +243,6 @@ public class Main {
       cluster.config(
           cluster.createConfigBuilder()
               .withProperty("autovacuum", false)
-              .withProperty("port", 9541)
               .build(), logFile);
       System.out.println("Cluster configured!");
     } catch (IOException | BadProcessExecutionException
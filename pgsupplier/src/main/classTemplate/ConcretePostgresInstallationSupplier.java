@@ -15,6 +15,6 @@ public class ConcretePostgresInstallationSupplier extends AbstractPostgresInstal
     super(PostgresMajorVersion.fromString("${postgres.major}").orElse(null),
         ${postgres.minor}, new Platform("${postgres.os}", "${postgres.arch}"),
         Paths.get(ConcretePostgresInstallationSupplier.class.getProtectionDomain().getCodeSource()
-            .getLocation().getPath()), true, PackageMode.ZIP);
+            .getLocation().getPath()), true, PackageMode.${package.mode});
   }
 }
@@ -28,6 +28,7 @@ import com.ongres.pgdeploy.wrappers.exceptions.BadProcessExecutionException;
 
 import java.io.IOException;
 import java.nio.file.Path;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
@@ -38,7 +39,15 @@ public class InitDbWrapper {
 
   private static final String description = "initdb";
 
-  public static void run(Path initDbPath, Path clusterPath, List<String> options)
+  public static ProcessResult run(Path initDbPath, Path clusterPath, List<String> options)
+      throws IOException, InterruptedException, BadProcessExecutionException {
+    return run(initDbPath, clusterPath, options, ProcessBuilderWrapper.defaultTimeout);
+  }
+
+  /** Runs initdb, killing it if it lasts more than <tt>timeout</tt>.
+   */
+  public static ProcessResult run(
+      Path initDbPath, Path clusterPath, List<String> options, Duration timeout)
       throws IOException, InterruptedException, BadProcessExecutionException {
 
     final String message = "initDB file "
@@ -51,6 +60,6 @@ public class InitDbWrapper {
     args.add(clusterPath.toString());
     args.addAll(options);
 
-    ProcessBuilderWrapper.runProcess(initDbPath, message, args, description);
+    return ProcessBuilderWrapper.runProcess(initDbPath, message, args, description, timeout);
   }
 }
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2017, OnGres.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.ongres.pgdeploy.wrappers;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/** Reads a process stream on a daemon thread until its end, keeping only its last bytes. Reading
+ * goes on even after the output has been collected, because the stream may be inherited by a
+ * longer lived process (pg_ctl start leaves the postmaster writing to it) that must never block
+ * on a full pipe.
+ */
+class OutputDrainer implements Runnable {
+
+  private static final int READ_SIZE = 8192;
+
+  private final InputStream stream;
+  private final byte[] buffer;
+  private final Thread thread;
+
+  private long written;
+
+  private OutputDrainer(InputStream stream, int capacity, String name) {
+    this.stream = stream;
+    this.buffer = new byte[capacity];
+    this.thread = new Thread(this, name);
+    this.thread.setDaemon(true);
+  }
+
+  static OutputDrainer start(InputStream stream, int capacity, String name) {
+    OutputDrainer drainer = new OutputDrainer(stream, capacity, name);
+    drainer.thread.start();
+    return drainer;
+  }
+
+  @Override
+  public void run() {
+    byte[] data = new byte[READ_SIZE];
+    try (InputStream in = stream) {
+      int read;
+      while ((read = in.read(data)) != -1) {
+        append(data, read);
+      }
+    } catch (IOException e) {
+      // The stream has been closed, there is nothing else to read
+    }
+  }
+
+  private synchronized void append(byte[] data, int length) {
+    int offset = 0;
+    while (offset < length) {
+      int position = (int) (written % buffer.length);
+      int chunk = Math.min(length - offset, buffer.length - position);
+      System.arraycopy(data, offset, buffer, position, chunk);
+      offset += chunk;
+      written += chunk;
+    }
+  }
+
+  /** Waits up to <tt>timeout</tt> for the end of the stream.
+   */
+  void await(long timeout, TimeUnit unit) throws InterruptedException {
+    thread.join(Math.max(1, unit.toMillis(timeout)));
+  }
+
+  /** Returns what has been read so far, or its tail if it didn't fit. A truncated output starts
+   * at its first complete line.
+   */
+  synchronized String getOutput() {
+    if (written <= buffer.length) {
+      return new String(buffer, 0, (int) written, StandardCharsets.UTF_8);
+    }
+
+    int start = (int) (written % buffer.length);
+    byte[] ordered = new byte[buffer.length];
+    System.arraycopy(buffer, start, ordered, 0, buffer.length - start);
+    System.arraycopy(buffer, 0, ordered, buffer.length - start, start);
+
+    String result = new String(ordered, StandardCharsets.UTF_8);
+    int firstLine = result.indexOf('\n');
+    return firstLine >= 0 ? result.substring(firstLine + 1) : result;
+  }
+}
@@ -24,22 +24,27 @@
  */
 package com.ongres.pgdeploy.wrappers;
 
+import com.google.common.base.Preconditions;
 import com.ongres.pgdeploy.wrappers.exceptions.BadProcessExecutionException;
+import com.ongres.pgdeploy.wrappers.exceptions.ProcessTimeoutException;
 
 import java.io.IOException;
 import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
+import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
  
 public class PgCtlWrapper {
 
   private static final String waitUntilProcessEnds = "-w";
+  private static final String doNotWait = "-W";
 
   private static final String start = "start";
   private static final String stop = "stop";
@@ -51,19 +56,29 @@ public class PgCtlWrapper {
 
   private static final String activeClusterStart = "pg_ctl: server is running";
 
-  private Path pgCtlPath;
-  private Path clusterPath;
+  private final Path pgCtlPath;
+  private final Path clusterPath;
+  private final Duration timeout;
 
   public PgCtlWrapper(Path pgCtlPath, Path clusterPath) {
+    this(pgCtlPath, clusterPath, ProcessBuilderWrapper.defaultTimeout);
+  }
+
+  /** Creates a wrapper whose pg_ctl invocations are killed if they last more than
+   * <tt>timeout</tt>.
+   */
+  public PgCtlWrapper(Path pgCtlPath, Path clusterPath, @Nonnull Duration timeout) {
     this.pgCtlPath = pgCtlPath;
     this.clusterPath = clusterPath;
+    this.timeout = Preconditions.checkNotNull(timeout);
   }
 
   public Status status(@Nullable Path logFile)
       throws IOException, InterruptedException {
 
     try {
-      String output = getProcessOutput(status, logFile).collect(Collectors.joining("\n"));
+      String output = getProcessOutput(status, logFile).getStdoutLines()
+          .collect(Collectors.joining("\n"));
 
       if (output.startsWith(activeClusterStart)) {
         return Status.ACTIVE;
@@ -76,48 +91,64 @@ public class PgCtlWrapper {
   }
 
 
-  public void start(@Nullable Path logFile)
+  public ProcessResult start(@Nullable Path logFile)
       throws IOException, BadProcessExecutionException, InterruptedException {
-    getProcessOutput(start, logFile, waitUntilProcessEnds);
+    return getProcessOutput(start, logFile, waitUntilProcessEnds);
   }
 
 
-  public void stop(@Nullable Path logFile)
+  public ProcessResult stop(@Nullable Path logFile)
       throws IOException, BadProcessExecutionException, InterruptedException {
-    getProcessOutput(stop, logFile, waitUntilProcessEnds);
+    return getProcessOutput(stop, logFile, waitUntilProcessEnds);
   }
 
 
-  public void restart(@Nullable Path logFile)
+  public ProcessResult restart(@Nullable Path logFile)
       throws IOException, BadProcessExecutionException, InterruptedException {
-    getProcessOutput(restart, logFile, waitUntilProcessEnds);
+    return getProcessOutput(restart, logFile, waitUntilProcessEnds);
   }
 
 
-  public void reload(@Nullable Path logFile)
+  /** Starts the server without letting pg_ctl wait for it, and then waits for the server to be
+   * ready by watching its postmaster.pid file, which avoids the fixed sleeps of pg_ctl.
+   * @return the time from the launch of pg_ctl to the server being ready
+   * @throws ProcessTimeoutException if the server is not ready in the timeout of this wrapper
+   */
+  public Duration startAndAwaitReady(@Nullable Path logFile)
       throws IOException, BadProcessExecutionException, InterruptedException {
-    getProcessOutput(reload, logFile);
-  }
+    long launchNanos = System.nanoTime();
+    // The pid file stores the start time in whole seconds
+    long launchEpochSecond = Instant.now().getEpochSecond();
+
+    getProcessOutput(start, logFile, doNotWait);
 
+    return ReadinessProbe.awaitReady(clusterPath, launchNanos, launchEpochSecond, timeout);
+  }
 
+  /** Stops the server, waiting for it to be stopped, and starts it as
+   * {@link #startAndAwaitReady(Path)} does.
+   * @return the time from the launch of pg_ctl start to the server being ready
+   */
+  public Duration restartAndAwaitReady(@Nullable Path logFile)
+      throws IOException, BadProcessExecutionException, InterruptedException {
+    stop(logFile);
+    return startAndAwaitReady(logFile);
+  }
 
 
-  private Stream<String> getProcessOutput(
-      String command, @Nullable Path logFile, String ... arguments)
+  public ProcessResult reload(@Nullable Path logFile)
       throws IOException, BadProcessExecutionException, InterruptedException {
+    return getProcessOutput(reload, logFile);
+  }
 
-    String processDescription = descriptionFirstPart + command;
 
-    Process process = getProcess(command, logFile, processDescription, arguments);
 
-    return ProcessBuilderWrapper.getOutputFromProcess(process);
-  }
 
+  private ProcessResult getProcessOutput(
+      String command, @Nullable Path logFile, String ... arguments)
+      throws IOException, BadProcessExecutionException, InterruptedException {
 
-  private Process getProcess(
-      String command, @Nullable Path logFile,
-      String processDescription, String [] arguments)
-      throws IOException, BadProcessExecutionException {
+    final String processDescription = descriptionFirstPart + command;
 
     final String message = "pg_ctl file "
         + pgCtlPath.toAbsolutePath().toString()
@@ -137,12 +168,12 @@ public class PgCtlWrapper {
 
     args.addAll(Arrays.asList(arguments));
 
-    try {
-      return ProcessBuilderWrapper.runProcess(
-          pgCtlPath, message, args, processDescription);
-    } catch (InterruptedException e) {
-      return null;
-    }
+    // Without a log file, the postmaster writes to the outputs of pg_ctl
+    boolean outputsInherited = logFile == null
+        && (command.equals(start) || command.equals(restart));
+
+    return ProcessBuilderWrapper.runProcess(
+        pgCtlPath, message, args, processDescription, timeout, outputsInherited);
   }
 
 
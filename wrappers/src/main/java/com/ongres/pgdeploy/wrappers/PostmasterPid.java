@@ -0,0 +1,192 @@
+/*
+ * Copyright 2017, OnGres.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.ongres.pgdeploy.wrappers;
+
+import com.google.common.base.Preconditions;
+import net.jcip.annotations.Immutable;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * The contents of the <tt>postmaster.pid</tt> file that a running server keeps in its data
+ * directory. Its lines are, in order: the pid of the postmaster, the data directory, the start
+ * time, the port, the first socket directory, the first listen address, the shared memory key
+ * and, since PostgreSQL 10, the state of the server.
+ */
+@Immutable
+public class PostmasterPid {
+
+  public static final String fileName = "postmaster.pid";
+
+  private final long pid;
+  private final Path dataDirectory;
+  private final long startTime;
+  private final int port;
+  @Nullable
+  private final String socketDirectory;
+  @Nullable
+  private final String listenAddress;
+  @Nullable
+  private final String state;
+
+  private PostmasterPid(long pid, Path dataDirectory, long startTime, int port,
+      @Nullable String socketDirectory, @Nullable String listenAddress, @Nullable String state) {
+    this.pid = pid;
+    this.dataDirectory = dataDirectory;
+    this.startTime = startTime;
+    this.port = port;
+    this.socketDirectory = socketDirectory;
+    this.listenAddress = listenAddress;
+    this.state = state;
+  }
+
+  /** Reads the <tt>postmaster.pid</tt> file of a data directory.
+   * @return the contents of the file, or empty if there is no such file or it is not complete,
+   *     as it happens while the server writes it
+   * @throws IOException if the file exists but can't be read
+   */
+  public static Optional<PostmasterPid> read(@Nonnull Path dataDirectory) throws IOException {
+    Preconditions.checkNotNull(dataDirectory);
+
+    List<String> lines;
+    try {
+      lines = Files.readAllLines(dataDirectory.resolve(fileName));
+    } catch (NoSuchFileException ex) {
+      return Optional.empty();
+    }
+
+    if (lines.size() < 4) {
+      return Optional.empty();
+    }
+
+    try {
+      return Optional.of(new PostmasterPid(
+          Long.parseLong(lines.get(0).trim()),
+          Paths.get(lines.get(1).trim()),
+          Long.parseLong(lines.get(2).trim()),
+          Integer.parseInt(lines.get(3).trim()),
+          optionalLine(lines, 4),
+          optionalLine(lines, 5),
+          optionalLine(lines, 7)));
+    } catch (NumberFormatException ex) {
+      return Optional.empty();
+    }
+  }
+
+  @Nullable
+  private static String optionalLine(List<String> lines, int index) {
+    if (index >= lines.size() || lines.get(index).trim().isEmpty()) {
+      return null;
+    }
+    return lines.get(index).trim();
+  }
+
+  public long getPid() {
+    return pid;
+  }
+
+  public Path getDataDirectory() {
+    return dataDirectory;
+  }
+
+  /** The start time of the postmaster, in seconds since the epoch. */
+  public long getStartTime() {
+    return startTime;
+  }
+
+  public int getPort() {
+    return port;
+  }
+
+  public Optional<String> getSocketDirectory() {
+    return Optional.ofNullable(socketDirectory);
+  }
+
+  public Optional<String> getListenAddress() {
+    return Optional.ofNullable(listenAddress);
+  }
+
+  /** The state of the server, like <tt>starting</tt>, <tt>ready</tt>, <tt>stopping</tt> or
+   * <tt>standby</tt>. Servers older than PostgreSQL 10 don't report it.
+   */
+  public Optional<String> getState() {
+    return Optional.ofNullable(state);
+  }
+
+  /** Whether the postmaster process is still alive. */
+  public boolean isAlive() {
+    return ProcessTree.isAlive(pid);
+  }
+
+  /** Returns a future completed with this object when the postmaster exits. It is notified by the
+   * JVM on Java 9 or newer; before that, the liveness of the postmaster is checked on
+   * <tt>poller</tt> every <tt>pollInterval</tt>.
+   */
+  public CompletableFuture<PostmasterPid> onExit(
+      @Nonnull ScheduledExecutorService poller, @Nonnull Duration pollInterval) {
+    Preconditions.checkNotNull(poller);
+    Preconditions.checkNotNull(pollInterval);
+
+    CompletableFuture<PostmasterPid> result = new CompletableFuture<>();
+
+    Optional<CompletableFuture<?>> processExit = ProcessTree.onExit(pid);
+    if (processExit.isPresent()) {
+      processExit.get().whenComplete((ignored, ex) -> result.complete(this));
+      return result;
+    }
+
+    ScheduledFuture<?> poll = poller.scheduleWithFixedDelay(() -> {
+      if (!isAlive()) {
+        result.complete(this);
+      }
+    }, 0, pollInterval.toMillis(), TimeUnit.MILLISECONDS);
+    result.whenComplete((ignored, ex) -> poll.cancel(false));
+    return result;
+  }
+
+  @Override
+  public String toString() {
+    return "PostmasterPid{"
+        + "pid=" + pid
+        + ", dataDirectory=" + dataDirectory
+        + ", port=" + port
+        + ", state=" + state
+        + '}';
+  }
+}
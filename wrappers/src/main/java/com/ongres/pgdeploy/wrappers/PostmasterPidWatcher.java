@@ -0,0 +1,248 @@
+/*
+ * Copyright 2017, OnGres.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.ongres.pgdeploy.wrappers;
+
+import com.google.common.base.Preconditions;
+import net.jcip.annotations.ThreadSafe;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Keeps the status of many clusters up to date from their <tt>postmaster.pid</tt> files, instead
+ * of running <tt>pg_ctl status</tt> for each query. A cluster is active when its pid file is
+ * complete and names a live process, which is what <tt>pg_ctl status</tt> checks.
+ *
+ * <p>Changes of the pid files are notified by a {@link WatchService}. A postmaster that dies
+ * without removing its pid file is detected by checking, every <tt>livenessInterval</tt>, the
+ * processes of the active clusters; the pid files of the stopped ones are read again then, so a
+ * missed event doesn't leave their status stale. Listeners are called on the thread of the
+ * watcher, which must not be blocked by them.
+ */
+@ThreadSafe
+public class PostmasterPidWatcher implements Closeable {
+
+  public interface Listener {
+    void statusChanged(Path dataDirectory, PgCtlWrapper.Status status);
+  }
+
+  private final WatchService watchService;
+  private final long livenessIntervalNanos;
+  private final ConcurrentMap<Path, Watched> watched = new ConcurrentHashMap<>();
+  private final ConcurrentMap<WatchKey, Path> directories = new ConcurrentHashMap<>();
+  private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+  private final Thread thread;
+
+  public PostmasterPidWatcher() throws IOException {
+    this(Duration.ofSeconds(1));
+  }
+
+  /** Creates a watcher, whose thread is already running, for clusters in the default file system.
+   * @param livenessInterval how often the postmasters of the active clusters are checked
+   */
+  public PostmasterPidWatcher(@Nonnull Duration livenessInterval) throws IOException {
+    this.watchService = FileSystems.getDefault().newWatchService();
+    this.livenessIntervalNanos = livenessInterval.toNanos();
+    Preconditions.checkArgument(livenessIntervalNanos > 0, "livenessInterval must be positive");
+
+    thread = new Thread(this::run, "pgdeploy-postmaster-pid-watcher");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  public void addListener(@Nonnull Listener listener) {
+    listeners.add(Preconditions.checkNotNull(listener));
+  }
+
+  public void removeListener(@Nonnull Listener listener) {
+    listeners.remove(listener);
+  }
+
+  /** Starts watching a data directory, if it was not already watched.
+   * @throws IOException if the directory can't be watched
+   */
+  public void watch(@Nonnull Path dataDirectory) throws IOException {
+    Path directory = normalize(dataDirectory);
+    if (watched.containsKey(directory)) {
+      return;
+    }
+
+    synchronized (watched) {
+      if (watched.containsKey(directory)) {
+        return;
+      }
+      WatchKey key = directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+          StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+      directories.put(key, directory);
+      // Put before reading the pid file, so its events are not dropped meanwhile
+      Watched entry = new Watched(key);
+      watched.put(directory, entry);
+      entry.refresh();
+    }
+  }
+
+  public void unwatch(@Nonnull Path dataDirectory) {
+    Watched entry = watched.remove(normalize(dataDirectory));
+    if (entry != null) {
+      entry.key.cancel();
+      directories.remove(entry.key);
+    }
+  }
+
+  /** The current status of the cluster. The data directory is watched from then on.
+   * @throws IOException if the directory can't be watched
+   */
+  public PgCtlWrapper.Status status(@Nonnull Path dataDirectory) throws IOException {
+    Path directory = normalize(dataDirectory);
+    watch(directory);
+    Watched entry = watched.get(directory);
+    return entry != null ? entry.status : PgCtlWrapper.Status.STOPPED;
+  }
+
+  /** The contents of the pid file of the cluster, if it is active. The data directory is watched
+   * from then on.
+   * @throws IOException if the directory can't be watched
+   */
+  public Optional<PostmasterPid> postmasterPid(@Nonnull Path dataDirectory) throws IOException {
+    Path directory = normalize(dataDirectory);
+    watch(directory);
+    Watched entry = watched.get(directory);
+    return entry != null ? entry.pid : Optional.empty();
+  }
+
+  @Override
+  public void close() throws IOException {
+    watchService.close();
+  }
+
+  private static Path normalize(Path dataDirectory) {
+    return Preconditions.checkNotNull(dataDirectory).toAbsolutePath().normalize();
+  }
+
+  private void run() {
+    long nextLivenessCheck = System.nanoTime() + livenessIntervalNanos;
+    try {
+      while (true) {
+        WatchKey key = watchService.poll(
+            Math.max(0, nextLivenessCheck - System.nanoTime()), TimeUnit.NANOSECONDS);
+        if (key != null) {
+          onEvents(key);
+        }
+
+        if (System.nanoTime() - nextLivenessCheck >= 0) {
+          for (Watched entry : watched.values()) {
+            if (entry.status != PgCtlWrapper.Status.ACTIVE
+                || !entry.pid.map(PostmasterPid::isAlive).orElse(false)) {
+              entry.refresh();
+            }
+          }
+          nextLivenessCheck = System.nanoTime() + livenessIntervalNanos;
+        }
+      }
+    } catch (ClosedWatchServiceException | InterruptedException ex) {
+      // The watcher has been closed
+    }
+  }
+
+  private void onEvents(WatchKey key) {
+    Path directory = directories.get(key);
+    boolean pidFileChanged = false;
+    for (WatchEvent<?> event : key.pollEvents()) {
+      pidFileChanged |= event.kind() == StandardWatchEventKinds.OVERFLOW
+          || PostmasterPid.fileName.equals(String.valueOf(event.context()));
+    }
+
+    if (directory != null) {
+      Watched entry = watched.get(directory);
+      if (entry != null && (pidFileChanged || !key.isValid())) {
+        entry.refresh();
+      }
+    }
+
+    if (!key.reset()) {
+      directories.remove(key);
+    }
+  }
+
+  private void notifyListeners(Path directory, PgCtlWrapper.Status status) {
+    for (Listener listener : listeners) {
+      try {
+        listener.statusChanged(directory, status);
+      } catch (RuntimeException ex) {
+        // A failing listener must not stop the watcher
+      }
+    }
+  }
+
+  private class Watched {
+    private final WatchKey key;
+    private volatile Optional<PostmasterPid> pid = Optional.empty();
+    private volatile PgCtlWrapper.Status status = PgCtlWrapper.Status.STOPPED;
+    /** Whether the pid file was read, as listeners are only told about later changes. */
+    private boolean loaded;
+
+    private Watched(WatchKey key) {
+      this.key = key;
+    }
+
+    private synchronized void refresh() {
+      Path directory = (Path) key.watchable();
+
+      Optional<PostmasterPid> newPid;
+      try {
+        newPid = PostmasterPid.read(directory).filter(PostmasterPid::isAlive);
+      } catch (IOException ex) {
+        newPid = Optional.empty();
+      }
+
+      PgCtlWrapper.Status newStatus =
+          newPid.isPresent() ? PgCtlWrapper.Status.ACTIVE : PgCtlWrapper.Status.STOPPED;
+      PgCtlWrapper.Status oldStatus = status;
+      pid = newPid;
+      status = newStatus;
+
+      if (loaded && newStatus != oldStatus && watched.get(directory) == this) {
+        notifyListeners(directory, newStatus);
+      }
+      loaded = true;
+    }
+  }
+}
@@ -25,28 +25,62 @@
 package com.ongres.pgdeploy.wrappers;
 
 import com.ongres.pgdeploy.wrappers.exceptions.BadProcessExecutionException;
+import com.ongres.pgdeploy.wrappers.exceptions.ProcessTimeoutException;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
- 
+/** Runs external processes, draining their stdout and stderr while they run so that they never
+ * block on a full pipe. Processes lasting more than their timeout are killed, along with their
+ * descendants when the JVM can find them.
+ */
 class ProcessBuilderWrapper {
 
+  /** The timeout used when none is given, configurable through the
+   * <tt>pgdeploy.process.timeout</tt> system property, in seconds.
+   */
+  static final Duration defaultTimeout =
+      Duration.ofSeconds(Long.getLong("pgdeploy.process.timeout", 600));
+
+  /** Bytes kept of each of the outputs of a process. */
+  private static final int outputCapacity = 64 * 1024;
+
+  /** How long the outputs are waited for once the process has been killed, or has exited leaving
+   * them to a longer lived process.
+   */
+  private static final long drainGraceMillis = 200;
 
-  static Process runProcess(
+  static ProcessResult runProcess(
       Path pathToCommand, String exceptionMessage,
       List<String> arguments, String processDescription)
       throws IOException, InterruptedException, BadProcessExecutionException {
+    return runProcess(pathToCommand, exceptionMessage, arguments, processDescription,
+        defaultTimeout);
+  }
+
+  static ProcessResult runProcess(
+      Path pathToCommand, String exceptionMessage,
+      List<String> arguments, String processDescription, Duration timeout)
+      throws IOException, InterruptedException, BadProcessExecutionException {
+    return runProcess(pathToCommand, exceptionMessage, arguments, processDescription, timeout,
+        false);
+  }
+
+  /** Runs a process, returning its result once it exits and its outputs end.
+   * @param outputsInherited whether the process leaves its outputs to a longer lived process, like
+   *                         pg_ctl start does to the postmaster when there is no log file, so
+   *                         their end is only waited for a short time
+   */
+  static ProcessResult runProcess(
+      Path pathToCommand, String exceptionMessage,
+      List<String> arguments, String processDescription, Duration timeout,
+      boolean outputsInherited)
+      throws IOException, InterruptedException, BadProcessExecutionException {
 
     if (!Files.exists(pathToCommand)) {
       throw new IOException(exceptionMessage);
@@ -58,36 +92,59 @@ class ProcessBuilderWrapper {
 
     ProcessBuilder processBuilder = new ProcessBuilder().command(args);
 
+    long startTime = System.nanoTime();
     Process process = processBuilder.start();
-
-    process.waitFor();
-
-    if (process.exitValue() != 0) {
-      String errorOutput = getErrorOutputFromProcess(process).collect(Collectors.joining("\n"));
-
-      if (errorOutput.isEmpty()) {
-        errorOutput = getOutputFromProcess(process).collect(Collectors.joining("\n"));
-      }
-
-      throw BadProcessExecutionException.create(errorOutput, processDescription);
+    process.getOutputStream().close();
+
+    final OutputDrainer stdout = OutputDrainer.start(
+        process.getInputStream(), outputCapacity, processDescription + " stdout");
+    final OutputDrainer stderr = OutputDrainer.start(
+        process.getErrorStream(), outputCapacity, processDescription + " stderr");
+
+    boolean finished;
+    try {
+      finished = process.waitFor(timeout.toNanos(), TimeUnit.NANOSECONDS);
+    } catch (InterruptedException e) {
+      ProcessTree.destroyForcibly(process);
+      throw e;
     }
+    final Duration duration = Duration.ofNanos(System.nanoTime() - startTime);
 
+    if (!finished) {
+      ProcessTree.destroyForcibly(process);
+      process.waitFor(drainGraceMillis, TimeUnit.MILLISECONDS);
+    }
 
-    return process;
-  }
+    if (finished && !outputsInherited) {
+      // Callers parse the output, so it is read until its end, up to the timeout
+      long deadline = Math.max(startTime + timeout.toNanos(),
+          System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(drainGraceMillis));
+      stdout.await(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+      stderr.await(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+    } else {
+      stdout.await(drainGraceMillis, TimeUnit.MILLISECONDS);
+      stderr.await(drainGraceMillis, TimeUnit.MILLISECONDS);
+    }
 
+    if (!finished) {
+      throw ProcessTimeoutException.create(
+          errorOutput(stdout.getOutput(), stderr.getOutput()), processDescription, timeout);
+    }
 
+    ProcessResult result = new ProcessResult(
+        process.exitValue(), duration, stdout.getOutput(), stderr.getOutput());
 
-  static Stream<String> getOutputFromProcess(Process process) throws IOException {
-    return fromStream(process.getInputStream());
-  }
+    if (result.getExitCode() != 0) {
+      throw BadProcessExecutionException.create(
+          errorOutput(result.getStdout(), result.getStderr()), processDescription);
+    }
 
-  static Stream<String> getErrorOutputFromProcess(Process process) throws IOException {
-    return fromStream(process.getErrorStream());
+    return result;
   }
 
-  private static Stream<String> fromStream(InputStream is) throws IOException {
-    return new BufferedReader(new InputStreamReader(is, Charset.forName("UTF-8"))).lines();
+  private static String errorOutput(String stdout, String stderr) {
+    String result = stderr.trim().isEmpty() ? stdout : stderr;
+    return result.replaceFirst("\\s+$", "");
   }
 
 }
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2017, OnGres.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.ongres.pgdeploy.wrappers;
+
+import com.google.common.base.Preconditions;
+import net.jcip.annotations.Immutable;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+import javax.annotation.Nonnull;
+
+/** The outcome of running an external process: its exit code, how long it took and what it
+ * wrote. Outputs are bounded, so only their tail is kept for processes that write a lot.
+ */
+@Immutable
+public class ProcessResult {
+
+  private final int exitCode;
+  private final Duration duration;
+  private final String stdout;
+  private final String stderr;
+
+  public ProcessResult(int exitCode, @Nonnull Duration duration,
+      @Nonnull String stdout, @Nonnull String stderr) {
+    this.exitCode = exitCode;
+    this.duration = Preconditions.checkNotNull(duration);
+    this.stdout = Preconditions.checkNotNull(stdout);
+    this.stderr = Preconditions.checkNotNull(stderr);
+  }
+
+  public int getExitCode() {
+    return exitCode;
+  }
+
+  public Duration getDuration() {
+    return duration;
+  }
+
+  public String getStdout() {
+    return stdout;
+  }
+
+  public String getStderr() {
+    return stderr;
+  }
+
+  public Stream<String> getStdoutLines() {
+    return lines(stdout);
+  }
+
+  public Stream<String> getStderrLines() {
+    return lines(stderr);
+  }
+
+  private static Stream<String> lines(String output) {
+    return output.isEmpty() ? Stream.empty() : Arrays.stream(output.split("\r?\n"));
+  }
+
+  @Override
+  public String toString() {
+    return "ProcessResult{exitCode=" + exitCode + ", duration=" + duration + "}";
+  }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2017, OnGres.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.ongres.pgdeploy.wrappers;
+
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+
+/** Kills a process together with its descendants, and checks whether a process is alive or waits
+ * for it to exit. The descendants are only known on Java 9 or newer, through
+ * <tt>ProcessHandle</tt>, which is reached by reflection so that this code still runs on Java 8,
+ * where only the process itself is killed and liveness is checked through <tt>/proc</tt>.
+ */
+class ProcessTree {
+
+  private static final Method descendants = findMethod(Process.class, "descendants");
+  private static final Method destroyHandleForcibly = findHandleMethod("destroyForcibly");
+  private static final Method handleOf = findHandleMethod("of", long.class);
+  private static final Method handleIsAlive = findHandleMethod("isAlive");
+  private static final Method handleOnExit = findHandleMethod("onExit");
+  private static final Path proc = Paths.get("/proc");
+
+  private ProcessTree() {
+  }
+
+  static void destroyForcibly(Process process) {
+    if (descendants != null && destroyHandleForcibly != null) {
+      try {
+        // Collected before killing anything, as children of killed processes get reparented
+        Object[] handles = ((Stream<?>) descendants.invoke(process)).toArray();
+        for (Object handle : handles) {
+          destroyHandleForcibly.invoke(handle);
+        }
+      } catch (ReflectiveOperationException | RuntimeException e) {
+        // The process itself is killed anyway
+      }
+    }
+    process.destroyForcibly();
+  }
+
+  /** Whether there is a live process with that pid. If it can't be known, it is assumed to be.
+   */
+  static boolean isAlive(long pid) {
+    if (handleOf != null && handleIsAlive != null) {
+      try {
+        Optional<?> handle = (Optional<?>) handleOf.invoke(null, pid);
+        return handle.isPresent() && (Boolean) handleIsAlive.invoke(handle.get());
+      } catch (ReflectiveOperationException | RuntimeException e) {
+        // Try with /proc
+      }
+    }
+    if (Files.isDirectory(proc.resolve("self"))) {
+      return Files.exists(proc.resolve(Long.toString(pid)));
+    }
+    return true;
+  }
+
+  /** A future completed when the process with that pid exits, or empty if that can't be known
+   * without polling, as it happens before Java 9.
+   */
+  static Optional<CompletableFuture<?>> onExit(long pid) {
+    if (handleOf != null && handleOnExit != null) {
+      try {
+        Optional<?> handle = (Optional<?>) handleOf.invoke(null, pid);
+        if (!handle.isPresent()) {
+          return Optional.of(CompletableFuture.completedFuture(null));
+        }
+        return Optional.of((CompletableFuture<?>) handleOnExit.invoke(handle.get()));
+      } catch (ReflectiveOperationException | RuntimeException e) {
+        // Polled then
+      }
+    }
+    return Optional.empty();
+  }
+
+  private static Method findMethod(Class<?> type, String name, Class<?>... parameterTypes) {
+    try {
+      return type.getMethod(name, parameterTypes);
+    } catch (NoSuchMethodException e) {
+      return null;
+    }
+  }
+
+  private static Method findHandleMethod(String name, Class<?>... parameterTypes) {
+    try {
+      return findMethod(Class.forName("java.lang.ProcessHandle"), name, parameterTypes);
+    } catch (ClassNotFoundException e) {
+      return null;
+    }
+  }
+}
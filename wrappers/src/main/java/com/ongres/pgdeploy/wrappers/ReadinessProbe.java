@@ -0,0 +1,265 @@
+/*
+ * Copyright 2017, OnGres.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.ongres.pgdeploy.wrappers;
+
+import com.ongres.pgdeploy.wrappers.exceptions.BadProcessExecutionException;
+import com.ongres.pgdeploy.wrappers.exceptions.ProcessTimeoutException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.net.ProtocolFamily;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/** Waits for a starting server to accept connections, looking at its <tt>postmaster.pid</tt>
+ * file as soon as it changes instead of polling with fixed sleeps.
+ *
+ * <p>Since PostgreSQL 10 the server writes its state in the file, and it is ready when the state
+ * is <tt>ready</tt> or <tt>standby</tt>. Older servers don't, and they accept connections while
+ * still recovering, rejecting them with <i>the database system is starting up</i>, so they are
+ * pinged the way <tt>PQping</tt> does: a startup message is sent and any reply but that rejection
+ * means the server is ready. Servers only listening on Unix sockets are pinged through
+ * <tt>UnixDomainSocketAddress</tt>, reached by reflection as it is only there since Java 16; on
+ * older runtimes the socket file existing is all that can be checked.
+ *
+ * <p>A server that exits before writing the file, like one with a broken configuration, leaves no
+ * pid to check, so the start fails when no new pid file shows up in
+ * <tt>pgdeploy.startup.pidFileTimeout</tt> seconds (10 by default).
+ */
+class ReadinessProbe {
+
+  private static final String description = "postgres startup";
+  private static final long probeIntervalNanos = TimeUnit.MILLISECONDS.toNanos(10);
+  private static final int connectTimeoutMillis = 100;
+  private static final int replyTimeoutMillis = 1000;
+  private static final int protocolVersion = 3 << 16;
+  /** The SQLSTATE of <i>the database system is starting up</i>. */
+  private static final String cannotConnectNow = "57P03";
+  private static final Method unixSocketAddressOf = findUnixSocketAddressOf();
+
+  static final Duration defaultPidFileTimeout =
+      Duration.ofSeconds(Long.getLong("pgdeploy.startup.pidFileTimeout", 10));
+
+  private ReadinessProbe() {
+  }
+
+  /** Waits until the server started at <tt>launchNanos</tt> is ready.
+   * @param launchEpochSecond the time the server was launched, in seconds since the epoch, so a
+   *                          pid file left by a former server is not taken as the current one
+   * @return the time from the launch to the server being ready
+   * @throws BadProcessExecutionException if the postmaster exits before being ready
+   * @throws ProcessTimeoutException if the server is not ready in <tt>timeout</tt>
+   */
+  static Duration awaitReady(
+      Path dataDirectory, long launchNanos, long launchEpochSecond, Duration timeout)
+      throws IOException, InterruptedException, BadProcessExecutionException {
+    return awaitReady(
+        dataDirectory, launchNanos, launchEpochSecond, timeout, defaultPidFileTimeout);
+  }
+
+  /** Waits until the server started at <tt>launchNanos</tt> is ready, failing when it doesn't
+   * write its pid file in <tt>pidFileTimeout</tt>.
+   * @see #awaitReady(Path, long, long, Duration)
+   */
+  static Duration awaitReady(Path dataDirectory, long launchNanos, long launchEpochSecond,
+      Duration timeout, Duration pidFileTimeout)
+      throws IOException, InterruptedException, BadProcessExecutionException {
+
+    long deadline = launchNanos + timeout.toNanos();
+    long pidFileDeadline = launchNanos + pidFileTimeout.toNanos();
+
+    try (WatchService watchService = dataDirectory.getFileSystem().newWatchService()) {
+      dataDirectory.register(watchService,
+          StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+
+      while (true) {
+        Optional<PostmasterPid> pid = PostmasterPid.read(dataDirectory)
+            .filter(current -> current.getStartTime() >= launchEpochSecond);
+
+        if (pid.isPresent()) {
+          if (isReady(pid.get())) {
+            return Duration.ofNanos(System.nanoTime() - launchNanos);
+          }
+          if (!pid.get().isAlive()) {
+            throw BadProcessExecutionException.create(
+                "The postmaster exited before being ready", description);
+          }
+        } else if (System.nanoTime() - pidFileDeadline >= 0) {
+          throw BadProcessExecutionException.create("The postmaster didn't write "
+              + PostmasterPid.fileName + " in " + pidFileTimeout
+              + ", so it most likely exited; look at its log", description);
+        }
+
+        long remaining = deadline - System.nanoTime();
+        if (remaining <= 0) {
+          throw new ProcessTimeoutException("The server in " + dataDirectory
+              + " was not ready in " + timeout);
+        }
+
+        // Woken up by changes of the pid file; the interval only matters for servers that don't
+        // report their state
+        WatchKey key = watchService.poll(
+            Math.min(remaining, probeIntervalNanos), TimeUnit.NANOSECONDS);
+        if (key != null) {
+          key.pollEvents();
+          key.reset();
+        }
+      }
+    }
+  }
+
+  private static boolean isReady(PostmasterPid pid) {
+    if (pid.getState().isPresent()) {
+      String state = pid.getState().get();
+      return state.equals("ready") || state.equals("standby");
+    }
+
+    Optional<String> listenAddress = pid.getListenAddress();
+    if (listenAddress.isPresent()) {
+      String host = listenAddress.get().equals("*") ? "localhost" : listenAddress.get();
+      try (Socket socket = new Socket()) {
+        socket.connect(new InetSocketAddress(host, pid.getPort()), connectTimeoutMillis);
+        socket.setSoTimeout(replyTimeoutMillis);
+        return ping(socket.getInputStream(), socket.getOutputStream());
+      } catch (IOException ex) {
+        return false;
+      }
+    }
+
+    Optional<Path> socketFile = pid.getSocketDirectory()
+        .map(directory -> Paths.get(directory, ".s.PGSQL." + pid.getPort()));
+    if (!socketFile.isPresent() || !Files.exists(socketFile.get())) {
+      return false;
+    }
+    if (unixSocketAddressOf == null) {
+      return true;
+    }
+    // Channels have no read timeout, but the postmaster replies right away or closes the socket
+    try (SocketChannel channel = openUnixSocket(socketFile.get())) {
+      return ping(Channels.newInputStream(channel), Channels.newOutputStream(channel));
+    } catch (IOException ex) {
+      return false;
+    }
+  }
+
+  /** Sends a startup message and tells whether the reply is anything but a rejection because the
+   * server is starting up; an authentication request or any other error means it is ready.
+   */
+  private static boolean ping(InputStream input, OutputStream output) throws IOException {
+    String user = System.getProperty("user.name", "postgres");
+    ByteArrayOutputStream parameters = new ByteArrayOutputStream();
+    for (String parameter : new String[] {"user", user, "database", user}) {
+      parameters.write(parameter.getBytes(StandardCharsets.UTF_8));
+      parameters.write(0);
+    }
+    parameters.write(0);
+
+    ByteArrayOutputStream startup = new ByteArrayOutputStream();
+    DataOutputStream message = new DataOutputStream(startup);
+    message.writeInt(8 + parameters.size());
+    message.writeInt(protocolVersion);
+    parameters.writeTo(message);
+    // Written at once, as a single packet
+    startup.writeTo(output);
+    output.flush();
+
+    DataInputStream reply = new DataInputStream(input);
+    int type = reply.read();
+    if (type == -1) {
+      return false;
+    }
+    if (type != 'E') {
+      return true;
+    }
+
+    byte[] fields = new byte[reply.readInt() - 4];
+    reply.readFully(fields);
+    // Each field is a type byte followed by a null terminated string, 'C' being the SQLSTATE
+    int start = 0;
+    while (start < fields.length && fields[start] != 0) {
+      int end = start + 1;
+      while (end < fields.length && fields[end] != 0) {
+        end++;
+      }
+      if (fields[start] == 'C') {
+        String sqlState = new String(fields, start + 1, end - start - 1, StandardCharsets.UTF_8);
+        return !sqlState.equals(cannotConnectNow);
+      }
+      start = end + 1;
+    }
+    return true;
+  }
+
+  private static SocketChannel openUnixSocket(Path socketFile) throws IOException {
+    SocketChannel channel = null;
+    try {
+      channel = (SocketChannel) SocketChannel.class.getMethod("open", ProtocolFamily.class)
+          .invoke(null, StandardProtocolFamily.valueOf("UNIX"));
+      channel.connect((SocketAddress) unixSocketAddressOf.invoke(null, socketFile));
+      return channel;
+    } catch (InvocationTargetException ex) {
+      if (channel != null) {
+        channel.close();
+      }
+      if (ex.getCause() instanceof IOException) {
+        throw (IOException) ex.getCause();
+      }
+      throw new IOException(ex.getCause());
+    } catch (ReflectiveOperationException | RuntimeException ex) {
+      if (channel != null) {
+        channel.close();
+      }
+      throw new IOException(ex);
+    }
+  }
+
+  private static Method findUnixSocketAddressOf() {
+    try {
+      return Class.forName("java.net.UnixDomainSocketAddress").getMethod("of", Path.class);
+    } catch (ReflectiveOperationException ex) {
+      return null;
+    }
+  }
+}
@@ -28,12 +28,15 @@ import com.ongres.pgdeploy.pgconfig.properties.Property;
 import com.ongres.pgdeploy.pgconfig.properties.PropertyValue;
 
 import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
-import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
+import javax.annotation.Nullable;
+
 /**
  * This class implements the {@link UpdateLinesStrategy} necessary for the
  * {@link PostgreSqlConfWrapper} to work. Its policy is to: <ul>
@@ -52,7 +55,7 @@ public class BasicUpdateLinesStrategy implements UpdateLinesStrategy {
   private static String equals = "="; //TODO: ^\s#?([^=]+)=([^#]+)#?.*$
   private static String comment = "#";
 
-  private static Map.Entry<String, String> getEntryFromLine(String line) {
+  static Map.Entry<String, String> getEntryFromLine(String line) {
 
     int eqPosition = line.indexOf(equals);
 
@@ -74,84 +77,89 @@ public class BasicUpdateLinesStrategy implements UpdateLinesStrategy {
   public List<String> updateLines(
       List<String> currentProperties, Stream<Map.Entry<Property, PropertyValue>> newProperties) {
 
-    List<Map.Entry<String, String>> adaptedProperties =
-        currentProperties.stream()
-            .map(BasicUpdateLinesStrategy::getEntryFromLine)
-            .collect(Collectors.toList());
-
-    newProperties
-        .map(entry -> new AbstractMap.SimpleEntry<>(
-            entry.getKey().getName(), entry.getValue().toWritableString()))
-        .forEachOrdered(entry -> {
-
-          int indexOfProperty = -1;
-          int indexOfCommentedProperty = -1;
-
-          String key = entry.getKey();
-          String commentedKey = "#" + key;
-
-          //Get the last indexes of the key and the commented key
-          for (int i = 0; i < adaptedProperties.size(); i++) {
-            if (Objects.equals(adaptedProperties.get(i).getKey(), key)) {
-              indexOfProperty = i;
-            }
-            if (Objects.equals(adaptedProperties.get(i).getKey(), commentedKey)) {
-              indexOfCommentedProperty = i;
-            }
-          }
-
-          //The property doesn't exist
-          if (indexOfProperty == -1 && indexOfCommentedProperty == -1) {
-            adaptedProperties.add(entry);
-          }
-
-          //The property exists but it's commented
-          if (indexOfProperty == -1 && indexOfCommentedProperty > -1) {
-            updateCommentedProperty(adaptedProperties, entry, indexOfCommentedProperty);
-          }
-
-          //The uncommented property exists
-          if (indexOfProperty > -1) {
-            updateUncommentedProperty(adaptedProperties, entry,
-                indexOfProperty, indexOfCommentedProperty);
-          }
-
-
-        });
-
-    return adaptedProperties.stream()
-        .map(entry -> entry.getKey().isEmpty()
-            ? entry.getValue()
-            : (entry.getKey() + equals + entry.getValue()))
-        .collect(Collectors.toList());
+    Lines lines = new Lines();
+    Map<String, List<Line>> linesByProperty = new HashMap<>();
+
+    for (String currentProperty : currentProperties) {
+      Map.Entry<String, String> entry = getEntryFromLine(currentProperty);
+      Line line = lines.append(entry.getKey(), entry.getValue());
+      if (!line.key.isEmpty()) {
+        linesByProperty.computeIfAbsent(propertyName(line.key), name -> new ArrayList<>())
+            .add(line);
+      }
+    }
+
+    newProperties.forEachOrdered(entry -> updateProperty(
+        lines, linesByProperty, entry.getKey().getName(), entry.getValue().toWritableString()));
+
+    List<String> result = new ArrayList<>(currentProperties.size());
+    for (Line line = lines.first(); line != null; line = lines.next(line)) {
+      result.add(line.key.isEmpty() ? line.value : (line.key + equals + line.value));
+    }
+    return result;
+  }
+
+  private static String propertyName(String key) {
+    return key.startsWith(comment) ? key.substring(1) : key;
+  }
+
+  /** Applies a new property through the index of the lines declaring it, either commented or not,
+   * which are kept in the order they have in the file.
+   */
+  private static void updateProperty(Lines lines, Map<String, List<Line>> linesByProperty,
+      String key, String value) {
+
+    String commentedKey = comment + key;
+    List<Line> propertyLines =
+        linesByProperty.computeIfAbsent(key, name -> new ArrayList<>());
+
+    //Get the last lines of the key and the commented key
+    Line property = null;
+    Line commentedProperty = null;
+    for (int i = propertyLines.size() - 1;
+        i >= 0 && (property == null || commentedProperty == null); i--) {
+      Line line = propertyLines.get(i);
+      if (property == null && line.key.equals(key)) {
+        property = line;
+      }
+      if (commentedProperty == null && line.key.equals(commentedKey)) {
+        commentedProperty = line;
+      }
+    }
+
+    //The property doesn't exist
+    if (property == null && commentedProperty == null) {
+      propertyLines.add(lines.append(key, value));
+    }
+
+    //The property exists but it's commented
+    if (property == null && commentedProperty != null) {
+      updateCommentedProperty(lines, propertyLines, key, value, commentedProperty);
+    }
+
+    //The uncommented property exists
+    if (property != null) {
+      updateUncommentedProperty(lines, propertyLines, key, value, property, commentedProperty);
+    }
   }
 
   /** If the property exists, if it has the same value there's nothing to do, but if its
    * value is different, we comment it and add the new one just afterwards.
    * In that case, if there was also the commented version of the property, it is removed.
    **/
-  private void updateUncommentedProperty(List<Map.Entry<String, String>> adaptedProperties,
-      AbstractMap.SimpleEntry<String, String> entry, int indexOfProperty,
-      int indexOfCommentedProperty) {
-
-    String currentValue = adaptedProperties.get(indexOfProperty).getValue();
+  private static void updateUncommentedProperty(Lines lines, List<Line> propertyLines,
+      String key, String value, Line property, @Nullable Line commentedProperty) {
 
-    if (!Objects.equals(currentValue, entry.getValue())) {
+    if (!Objects.equals(property.value, value)) {
 
-      String commentedKey = "#" + entry.getKey();
+      property.key = comment + key;
+      propertyLines.add(propertyLines.indexOf(property) + 1,
+          lines.insertAfter(property, key, value));
 
-      adaptedProperties.set(indexOfProperty,
-          new AbstractMap.SimpleEntry<>(commentedKey,currentValue));
-      adaptedProperties.add(indexOfProperty + 1, entry);
-
-      //Removing a former commented version , but being careful because the newly added
-      //property may have moved the commented one forward
-      if (indexOfCommentedProperty > -1) {
-        if (indexOfProperty > indexOfCommentedProperty) {
-          adaptedProperties.remove(indexOfCommentedProperty);
-        } else {
-          adaptedProperties.remove(indexOfCommentedProperty + 1 );
-        }
+      //Removing a former commented version
+      if (commentedProperty != null) {
+        lines.remove(commentedProperty);
+        propertyLines.remove(commentedProperty);
       }
     }
   }
@@ -159,15 +167,66 @@ public class BasicUpdateLinesStrategy implements UpdateLinesStrategy {
   /** If the property is commented, we will add the new one just afterwards,
    * unless the commented property has the same value, in which case we simply uncomment it.
    */
-  private void updateCommentedProperty(List<Map.Entry<String, String>> adaptedProperties,
-      AbstractMap.SimpleEntry<String, String> entry, int indexOfCommentedProperty) {
-
-    String currentValue = adaptedProperties.get(indexOfCommentedProperty).getValue();
+  private static void updateCommentedProperty(Lines lines, List<Line> propertyLines,
+      String key, String value, Line commentedProperty) {
 
-    if (Objects.equals(currentValue, entry.getValue())) {
-      adaptedProperties.set(indexOfCommentedProperty, entry);
+    if (Objects.equals(commentedProperty.value, value)) {
+      commentedProperty.key = key;
     } else {
-      adaptedProperties.add(indexOfCommentedProperty + 1, entry);
+      propertyLines.add(propertyLines.indexOf(commentedProperty) + 1,
+          lines.insertAfter(commentedProperty, key, value));
+    }
+  }
+
+  private static class Line {
+    private String key;
+    private final String value;
+    private Line previous;
+    private Line next;
+
+    private Line(String key, String value) {
+      this.key = key;
+      this.value = value;
+    }
+  }
+
+  /** The lines of the file as a doubly linked list, so inserting or removing a line next to a
+   * known one does not shift the others.
+   */
+  private static class Lines {
+    private final Line head = new Line("", "");
+
+    private Lines() {
+      head.previous = head;
+      head.next = head;
+    }
+
+    @Nullable
+    private Line first() {
+      return next(head);
+    }
+
+    @Nullable
+    private Line next(Line line) {
+      return line.next == head ? null : line.next;
+    }
+
+    private Line append(String key, String value) {
+      return insertAfter(head.previous, key, value);
+    }
+
+    private Line insertAfter(Line line, String key, String value) {
+      Line inserted = new Line(key, value);
+      inserted.previous = line;
+      inserted.next = line.next;
+      line.next.previous = inserted;
+      line.next = inserted;
+      return inserted;
+    }
+
+    private void remove(Line line) {
+      line.previous.next = line.next;
+      line.next.previous = line.previous;
     }
   }
 }
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2017, OnGres.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.ongres.pgdeploy.wrappers.postgresqlconf;
+
+import com.google.common.collect.ImmutableSet;
+import com.ongres.pgdeploy.pgconfig.PostgresConfig;
+import com.ongres.pgdeploy.pgconfig.properties.Property;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Where the properties set on a cluster are written to. Every backend is given the path of the
+ * main <tt>postgresql.conf</tt> of the cluster and decides which file to update.
+ */
+public interface ConfBackend {
+
+  /** Merges the properties of <tt>config</tt> into the configuration of the cluster.
+   * @param postgresqlConf the path of the main configuration file of the cluster
+   * @param config the properties to be set
+   * @return the properties whose value has changed, which is empty if no file was modified
+   * @throws IOException if the configuration cannot be read or written
+   */
+  ImmutableSet<Property> update(Path postgresqlConf, PostgresConfig config) throws IOException;
+
+  /** Updates the main <tt>postgresql.conf</tt> in place, through a {@link UpdateLinesStrategy}.
+   */
+  static ConfBackend mainFile() {
+    return PostgreSqlConfWrapper::updateConfFile;
+  }
+
+  /** Writes the properties to <tt>conf.d/pgdeploy.conf</tt>, a file completely managed by
+   * pgdeploy, which is included at the end of <tt>postgresql.conf</tt>. PostgreSQL 9.3 or later
+   * is required.
+   */
+  static ConfBackend dropIn() {
+    return DropInConfBackend.confD;
+  }
+
+  /** Writes the properties to <tt>postgresql.auto.conf</tt>, which PostgreSQL reads after
+   * <tt>postgresql.conf</tt>. It is the file of <tt>ALTER SYSTEM</tt>, so PostgreSQL 9.4 or later
+   * is required, and both must not be used to set the same properties.
+   */
+  static ConfBackend autoConf() {
+    return DropInConfBackend.autoConf;
+  }
+}
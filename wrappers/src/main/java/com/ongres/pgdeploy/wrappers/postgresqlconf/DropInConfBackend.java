@@ -0,0 +1,140 @@
+/*
+ * Copyright 2017, OnGres.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.ongres.pgdeploy.wrappers.postgresqlconf;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.ongres.pgdeploy.pgconfig.PostgresConfig;
+import com.ongres.pgdeploy.pgconfig.properties.Property;
+import com.ongres.pgdeploy.pgconfig.properties.PropertyValue;
+import net.jcip.annotations.Immutable;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import javax.annotation.Nullable;
+
+/**
+ * A {@link ConfBackend} that owns a small file which is read after <tt>postgresql.conf</tt>, so
+ * its properties take precedence. Only that file is parsed and written on each update, which
+ * keeps updates cheap no matter how big the main file is.
+ *
+ * <p>The file holds one <tt>name = value</tt> line per property. Its leading comments are kept,
+ * and any other line is dropped when it is rewritten.
+ */
+@Immutable
+class DropInConfBackend implements ConfBackend {
+
+  static final DropInConfBackend confD = new DropInConfBackend(
+      "conf.d/pgdeploy.conf",
+      "include_if_exists = 'conf.d/pgdeploy.conf'",
+      ImmutableList.of("# Managed by pgdeploy. Do not edit this file manually!"));
+
+  static final DropInConfBackend autoConf = new DropInConfBackend(
+      "postgresql.auto.conf",
+      null,
+      ImmutableList.of("# Do not edit this file manually!",
+          "# It will be overwritten by the ALTER SYSTEM command."));
+
+  private static final String equals = "=";
+  private static final String comment = "#";
+
+  private final String relativePath;
+  @Nullable
+  private final String includeDirective;
+  private final ImmutableList<String> header;
+
+  private DropInConfBackend(String relativePath, @Nullable String includeDirective,
+      ImmutableList<String> header) {
+    this.relativePath = relativePath;
+    this.includeDirective = includeDirective;
+    this.header = header;
+  }
+
+  @Override
+  public ImmutableSet<Property> update(Path postgresqlConf, PostgresConfig config)
+      throws IOException {
+    Path dropIn = postgresqlConf.toAbsolutePath().resolveSibling(relativePath);
+
+    List<String> comments = new ArrayList<>();
+    Map<String, String> properties = new LinkedHashMap<>();
+    if (Files.exists(dropIn)) {
+      for (String line : Files.readAllLines(dropIn)) {
+        int eqPosition = line.indexOf(equals);
+        if (eqPosition < 0 || line.trim().startsWith(comment)) {
+          if (properties.isEmpty() && line.trim().startsWith(comment)) {
+            comments.add(line);
+          }
+          continue;
+        }
+        properties.put(line.substring(0, eqPosition).trim(),
+            line.substring(eqPosition + 1).trim());
+      }
+    } else {
+      comments.addAll(header);
+    }
+
+    ImmutableSet.Builder<Property> changedProperties = ImmutableSet.builder();
+    for (Map.Entry<Property, PropertyValue> entry
+        : (Iterable<Map.Entry<Property, PropertyValue>>) config.asStream()::iterator) {
+      String value = entry.getValue().toWritableString();
+      String previous = properties.put(entry.getKey().getName(), value);
+      if (!Objects.equals(previous, value)) {
+        changedProperties.add(entry.getKey());
+      }
+    }
+
+    ImmutableSet<Property> result = changedProperties.build();
+    if (result.isEmpty()) {
+      return result;
+    }
+
+    // The main file is only checked, and written, when the drop-in file is created. It is done
+    // first so an update that fails in between, which will create the file again, never leaves a
+    // drop-in file that is not included
+    if (!Files.exists(dropIn)) {
+      if (includeDirective != null) {
+        List<String> mainLines = Files.readAllLines(postgresqlConf);
+        if (!mainLines.contains(includeDirective)) {
+          mainLines.add(includeDirective);
+          PostgreSqlConfWrapper.writeAtomically(postgresqlConf, mainLines);
+        }
+      }
+      Files.createDirectories(dropIn.getParent());
+    }
+
+    List<String> lines = new ArrayList<>(comments);
+    properties.forEach((name, value) -> lines.add(name + " " + equals + " " + value));
+    PostgreSqlConfWrapper.writeAtomically(dropIn, lines);
+
+    return result;
+  }
+}
@@ -0,0 +1,414 @@
+/*
+ * Copyright 2017, OnGres.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.ongres.pgdeploy.wrappers.postgresqlconf;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+import com.ongres.pgdeploy.pgconfig.PostgresConfig;
+import com.ongres.pgdeploy.pgconfig.PropertyParser;
+import com.ongres.pgdeploy.pgconfig.properties.DataType;
+import com.ongres.pgdeploy.pgconfig.properties.Property;
+import com.ongres.pgdeploy.pgconfig.properties.PropertyValue;
+import com.ongres.pgdeploy.pgconfig.properties.Unit;
+import net.jcip.annotations.Immutable;
+import net.jcip.annotations.ThreadSafe;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Reads the configuration a server would load from its files: <tt>postgresql.conf</tt>, the files
+ * it includes through <tt>include</tt>, <tt>include_if_exists</tt> and <tt>include_dir</tt>, and
+ * <tt>postgresql.auto.conf</tt>, in that order, the last value of each property winning.
+ *
+ * <p>Values are typed after the property they belong to, with their units, the base unit of the
+ * property for integers given without one. Values that don't fit the type of their property, and
+ * properties unknown to the parser, are kept as strings.
+ *
+ * <p>The result of each read is cached until any of the files involved, or of the directories
+ * included, changes its modification time or size, so repeated reads only cost a few stats.
+ */
+@ThreadSafe
+public class PostgreSqlConfReader {
+
+  private static final String autoConfFile = "postgresql.auto.conf";
+  private static final int maxIncludeDepth = 10;
+
+  private static final Pattern namePattern =
+      Pattern.compile("[A-Za-z_][A-Za-z0-9_$]*(\\.[A-Za-z_][A-Za-z0-9_$]*)?");
+  private static final Pattern integerPattern = Pattern.compile("(-?\\d+)\\s*([A-Za-z]*)");
+
+  private final PropertyParser parser;
+  private final ConcurrentMap<Path, Snapshot> cache = new ConcurrentHashMap<>();
+
+  public PostgreSqlConfReader(@Nonnull PropertyParser parser) {
+    this.parser = Preconditions.checkNotNull(parser);
+  }
+
+  /** Returns the configuration set in the files of a server.
+   * @param postgresqlConf the main configuration file, which is in the data directory
+   * @throws IOException if any of the files can't be read or has a syntax error
+   */
+  public PostgresConfig read(@Nonnull Path postgresqlConf) throws IOException {
+    Path path = Preconditions.checkNotNull(postgresqlConf).toAbsolutePath().normalize();
+
+    Snapshot snapshot = cache.get(path);
+    if (snapshot != null && snapshot.isCurrent()) {
+      return snapshot.config;
+    }
+
+    snapshot = load(path);
+    cache.put(path, snapshot);
+    return snapshot.config;
+  }
+
+  private Snapshot load(Path postgresqlConf) throws IOException {
+    Loader loader = new Loader();
+    loader.parseFile(postgresqlConf, 0, true);
+    loader.parseFile(postgresqlConf.resolveSibling(autoConfFile), 0, false);
+
+    PostgresConfig.Builder builder = new PostgresConfig.Builder(parser);
+    for (Map.Entry<String, String> setting : loader.settings.values()) {
+      Optional<Property> property = parser.parse(setting.getKey());
+      builder.withPropertyUnsafe(setting.getKey(), typedValue(property, setting.getValue()));
+    }
+
+    return new Snapshot(ImmutableMap.copyOf(loader.files), builder.build());
+  }
+
+  private static PropertyValue typedValue(Optional<Property> property, String value) {
+    DataType type = property.map(Property::getType).orElse(DataType.STRING);
+    switch (type) {
+      case BOOLEAN:
+        Boolean bool = parseBoolean(value);
+        return bool != null ? PropertyValue.from(bool) : PropertyValue.from(value);
+      case INTEGER:
+        Matcher matcher = integerPattern.matcher(value.trim());
+        if (matcher.matches()) {
+          Optional<Unit> unit = unitFromName(matcher.group(2));
+          if (unit.isPresent()) {
+            try {
+              return integerValue(property.get(), Long.parseLong(matcher.group(1)), unit.get());
+            } catch (NumberFormatException | ArithmeticException ex) {
+              return PropertyValue.from(value);
+            }
+          }
+        }
+        return PropertyValue.from(value);
+      case DOUBLE:
+        try {
+          return PropertyValue.from(Double.parseDouble(value.trim()));
+        } catch (NumberFormatException ex) {
+          return PropertyValue.from(value);
+        }
+      default:
+        return PropertyValue.from(value);
+    }
+  }
+
+  /** Values without unit are in the base unit of their property, as the server reads them, so
+   * <tt>shared_buffers = 16384</tt> is 131072kB. Negative values, like the -1 that disables or
+   * defaults many of them, are special and kept as they are.
+   */
+  private static PropertyValue<Long> integerValue(Property property, long value, Unit unit) {
+    if (unit != Unit.NONE || property.getBaseUnit() == Unit.NONE || value < 0) {
+      return new PropertyValue<>(value, unit);
+    }
+    return new PropertyValue<>(
+        Math.multiplyExact(value, property.getBaseUnitSize()), property.getBaseUnit());
+  }
+
+  private static Optional<Unit> unitFromName(String name) {
+    for (Unit unit : Unit.values()) {
+      if (unit.getUnitName().equals(name)) {
+        return Optional.of(unit);
+      }
+    }
+    return Optional.empty();
+  }
+
+  /** Booleans as the server accepts them, including unambiguous prefixes. */
+  @Nullable
+  private static Boolean parseBoolean(String value) {
+    String lower = value.trim().toLowerCase(Locale.ROOT);
+    if (lower.isEmpty()) {
+      return null;
+    }
+    if (lower.equals("1") || "true".startsWith(lower) || "yes".startsWith(lower)
+        || (lower.length() > 1 && "on".startsWith(lower))) {
+      return Boolean.TRUE;
+    }
+    if (lower.equals("0") || "false".startsWith(lower) || "no".startsWith(lower)
+        || (lower.length() > 1 && "off".startsWith(lower))) {
+      return Boolean.FALSE;
+    }
+    return null;
+  }
+
+  private static class Loader {
+
+    /** The state of every file and directory read, empty for the missing ones. */
+    private final Map<Path, Optional<FileState>> files = new LinkedHashMap<>();
+    /** Keyed by lower case name, as names are case insensitive. */
+    private final Map<String, Map.Entry<String, String>> settings = new LinkedHashMap<>();
+
+    private void parseFile(Path file, int depth, boolean required) throws IOException {
+      if (depth > maxIncludeDepth) {
+        throw new IOException("Could not open configuration file " + file
+            + ": maximum nesting depth exceeded");
+      }
+
+      List<String> lines;
+      try {
+        files.put(file, Optional.of(FileState.of(file)));
+        lines = Files.readAllLines(file);
+      } catch (NoSuchFileException ex) {
+        if (required) {
+          throw ex;
+        }
+        files.put(file, Optional.empty());
+        return;
+      }
+
+      for (int i = 0; i < lines.size(); i++) {
+        Map.Entry<String, String> entry = parseLine(lines.get(i), file, i + 1);
+        if (entry != null) {
+          apply(file, depth, entry.getKey(), entry.getValue());
+        }
+      }
+    }
+
+    private void apply(Path file, int depth, String name, String value) throws IOException {
+      Path base = file.getParent();
+      switch (name.toLowerCase(Locale.ROOT)) {
+        case "include":
+          parseFile(base.resolve(value).normalize(), depth + 1, true);
+          break;
+        case "include_if_exists":
+          parseFile(base.resolve(value).normalize(), depth + 1, false);
+          break;
+        case "include_dir":
+          parseDirectory(base.resolve(value).normalize(), depth + 1);
+          break;
+        default:
+          String key = name.toLowerCase(Locale.ROOT);
+          // Re-inserted, so the order is the one of the last assignments
+          settings.remove(key);
+          settings.put(key, new AbstractMap.SimpleImmutableEntry<>(name, value));
+          break;
+      }
+    }
+
+    private void parseDirectory(Path directory, int depth) throws IOException {
+      files.put(directory, Optional.of(FileState.of(directory)));
+
+      List<Path> confFiles = new ArrayList<>();
+      try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*.conf")) {
+        for (Path file : stream) {
+          if (!file.getFileName().toString().startsWith(".") && Files.isRegularFile(file)) {
+            confFiles.add(file);
+          }
+        }
+      }
+      Collections.sort(confFiles);
+
+      for (Path file : confFiles) {
+        parseFile(file, depth, true);
+      }
+    }
+  }
+
+  /** Parses a line as the server does: <tt>name [=] value [# comment]</tt>, where the value is
+   * either a single quoted string or a word.
+   * @return the name and value, or null if the line is empty or a comment
+   */
+  @Nullable
+  static Map.Entry<String, String> parseLine(String line, Path file, int lineNumber)
+      throws IOException {
+    String rest = line.trim();
+    if (rest.isEmpty() || rest.startsWith("#")) {
+      return null;
+    }
+
+    Matcher nameMatcher = namePattern.matcher(rest);
+    if (!nameMatcher.lookingAt()) {
+      throw syntaxError(file, lineNumber);
+    }
+    String name = nameMatcher.group();
+
+    rest = rest.substring(name.length()).trim();
+    if (rest.startsWith("=")) {
+      rest = rest.substring(1).trim();
+    }
+
+    String value;
+    if (rest.startsWith("'")) {
+      StringBuilder builder = new StringBuilder();
+      int i = 1;
+      while (true) {
+        if (i >= rest.length()) {
+          throw syntaxError(file, lineNumber);
+        }
+        char current = rest.charAt(i);
+        if (current == '\'') {
+          if (i + 1 < rest.length() && rest.charAt(i + 1) == '\'') {
+            builder.append('\'');
+            i += 2;
+            continue;
+          }
+          i++;
+          break;
+        }
+        if (current == '\\' && i + 1 < rest.length()) {
+          builder.append(unescape(rest.charAt(i + 1)));
+          i += 2;
+          continue;
+        }
+        builder.append(current);
+        i++;
+      }
+      value = builder.toString();
+      rest = rest.substring(i).trim();
+    } else {
+      int end = 0;
+      while (end < rest.length() && !Character.isWhitespace(rest.charAt(end))
+          && rest.charAt(end) != '#') {
+        end++;
+      }
+      if (end == 0) {
+        throw syntaxError(file, lineNumber);
+      }
+      value = rest.substring(0, end);
+      rest = rest.substring(end).trim();
+    }
+
+    if (!rest.isEmpty() && !rest.startsWith("#")) {
+      throw syntaxError(file, lineNumber);
+    }
+
+    return new AbstractMap.SimpleImmutableEntry<>(name, value);
+  }
+
+  private static char unescape(char escaped) {
+    switch (escaped) {
+      case 'b':
+        return '\b';
+      case 'f':
+        return '\f';
+      case 'n':
+        return '\n';
+      case 'r':
+        return '\r';
+      case 't':
+        return '\t';
+      default:
+        return escaped;
+    }
+  }
+
+  private static IOException syntaxError(Path file, int lineNumber) {
+    return new IOException("Syntax error in file " + file + " line " + lineNumber);
+  }
+
+  @Immutable
+  private static class FileState {
+    private final FileTime lastModifiedTime;
+    private final long size;
+
+    private FileState(FileTime lastModifiedTime, long size) {
+      this.lastModifiedTime = lastModifiedTime;
+      this.size = size;
+    }
+
+    private static FileState of(Path path) throws IOException {
+      BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+      return new FileState(attributes.lastModifiedTime(), attributes.size());
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (!(obj instanceof FileState)) {
+        return false;
+      }
+      FileState other = (FileState) obj;
+      return size == other.size && lastModifiedTime.equals(other.lastModifiedTime);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(lastModifiedTime, size);
+    }
+  }
+
+  @Immutable
+  private static class Snapshot {
+    private final ImmutableMap<Path, Optional<FileState>> files;
+    private final PostgresConfig config;
+
+    private Snapshot(ImmutableMap<Path, Optional<FileState>> files, PostgresConfig config) {
+      this.files = files;
+      this.config = config;
+    }
+
+    private boolean isCurrent() {
+      for (Map.Entry<Path, Optional<FileState>> file : files.entrySet()) {
+        Optional<FileState> current;
+        try {
+          current = Optional.of(FileState.of(file.getKey()));
+        } catch (IOException ex) {
+          current = Optional.empty();
+        }
+        if (!current.equals(file.getValue())) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+}
@@ -24,13 +24,25 @@
  */
 package com.ongres.pgdeploy.wrappers.postgresqlconf;
 
+import com.google.common.collect.ImmutableSet;
 import com.ongres.pgdeploy.pgconfig.PostgresConfig;
+import com.ongres.pgdeploy.pgconfig.properties.Property;
 
 import java.io.IOException;
-import java.nio.charset.Charset;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import javax.annotation.Nullable;
 
 /**
  * Created by pablo on 3/05/17.
@@ -39,14 +51,98 @@ public class PostgreSqlConfWrapper {
 
   private static UpdateLinesStrategy strategy = new BasicUpdateLinesStrategy();
 
-  public static void updateConfFile(Path path, PostgresConfig config) throws IOException {
+  /** Merges the properties of <tt>config</tt> into the file. The file is only written if the
+   * value of some property changes, and then it is replaced atomically by a synced temporary copy,
+   * so a crash never leaves it truncated.
+   * @return the properties whose value has changed, which is empty if the file was not modified
+   */
+  public static ImmutableSet<Property> updateConfFile(Path path, PostgresConfig config)
+      throws IOException {
     List<String> lines = Files.readAllLines(path);
 
-    lines = strategy.updateLines(lines, config.asStream());
+    //The current value of a property is the one of its last uncommented line
+    Map<String, String> currentValues = new HashMap<>();
+    for (int i = 0; i < lines.size(); i++) {
+      Map.Entry<String, String> entry = readEntry(lines.get(i), path, i + 1);
+      if (entry != null) {
+        currentValues.put(entry.getKey(), entry.getValue());
+      }
+    }
+
+    ImmutableSet<Property> changedProperties = config.asStream()
+        .filter(entry -> !Objects.equals(currentValues.get(entry.getKey().getName()),
+            readValue(entry.getKey().getName(), entry.getValue().toWritableString(), path)))
+        .map(Map.Entry::getKey)
+        .collect(ImmutableSet.toImmutableSet());
 
-    Files.write(path, lines, Charset.forName("UTF-8"));
+    if (!changedProperties.isEmpty()) {
+      writeAtomically(path, strategy.updateLines(lines, config.asStream()));
+    }
+
+    return changedProperties;
+  }
 
+  /** Reads the name and value of a line as the server does, so values compare without their
+   * quotes nor trailing comments.
+   * @return the entry, or null if the line is empty, a comment or malformed
+   */
+  @Nullable
+  private static Map.Entry<String, String> readEntry(String line, Path path, int lineNumber) {
+    try {
+      return PostgreSqlConfReader.parseLine(line, path, lineNumber);
+    } catch (IOException ex) {
+      return null;
+    }
   }
 
+  private static String readValue(String name, String writableValue, Path path) {
+    Map.Entry<String, String> entry = readEntry(name + " = " + writableValue, path, 0);
+    return entry != null ? entry.getValue() : writableValue;
+  }
+
+  /** Replaces or creates the file with a synced temporary copy, so a crash never leaves it
+   * truncated. Replaced files keep their permissions.
+   */
+  static void writeAtomically(Path path, List<String> lines) throws IOException {
+    StringBuilder content = new StringBuilder();
+    for (String line : lines) {
+      content.append(line).append(System.lineSeparator());
+    }
+
+    Path directory = path.toAbsolutePath().getParent();
+    Path temporary = Files.createTempFile(directory, path.getFileName().toString(), ".tmp");
+    try {
+      try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+        ByteBuffer buffer = StandardCharsets.UTF_8.encode(content.toString());
+        while (buffer.hasRemaining()) {
+          channel.write(buffer);
+        }
+        channel.force(true);
+      }
+
+      PosixFileAttributeView view =
+          Files.getFileAttributeView(temporary, PosixFileAttributeView.class);
+      if (view != null && Files.exists(path)) {
+        view.setPermissions(Files.getPosixFilePermissions(path));
+      }
+
+      Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(temporary);
+    }
+
+    syncDirectory(directory);
+  }
+
+  /** Makes the rename durable. Not every platform allows to open a directory, in which case the
+   * rename is left to the file system.
+   */
+  private static void syncDirectory(Path directory) {
+    try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+      channel.force(true);
+    } catch (IOException ex) {
+      // Nothing else can be done
+    }
+  }
 
 }
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2017, OnGres.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.ongres.pgdeploy.wrappers.serverlog;
+
+import com.google.common.base.Preconditions;
+import net.jcip.annotations.Immutable;
+
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/** A line of the server log, split in the fields of the default <tt>log_line_prefix</tt> of
+ * PostgreSQL 10 and newer, <tt>'%m [%p] '</tt>, followed by the level and the message. Other
+ * prefixes are understood as long as the timestamp and the pid, if any, come first. Lines that
+ * don't have a level, like the continuation lines of multiline statements, only have a message.
+ */
+@Immutable
+public class ServerLogRecord {
+
+  private static final Pattern linePattern = Pattern.compile(
+      "^(?:(\\d{4}-\\d{2}-\\d{2} \\d{2}:\\d{2}:\\d{2}(?:\\.\\d+)?(?: [A-Za-z0-9+:-]+)?) )?"
+      + "(?:\\[(\\d+)\\] )?"
+      + "(?:\\S+ )*?"
+      + "(LOG|ERROR|FATAL|PANIC|WARNING|NOTICE|INFO|DEBUG[1-5]?|DETAIL|HINT|STATEMENT|CONTEXT"
+      + "|QUERY|LOCATION):  (.*)$");
+
+  private final String line;
+  @Nullable
+  private final String timestamp;
+  private final long pid;
+  @Nullable
+  private final String level;
+  private final String message;
+
+  private ServerLogRecord(String line, @Nullable String timestamp, long pid,
+      @Nullable String level, String message) {
+    this.line = line;
+    this.timestamp = timestamp;
+    this.pid = pid;
+    this.level = level;
+    this.message = message;
+  }
+
+  public static ServerLogRecord parse(@Nonnull String line) {
+    Preconditions.checkNotNull(line);
+
+    Matcher matcher = linePattern.matcher(line);
+    if (!matcher.matches()) {
+      return new ServerLogRecord(line, null, -1, null, line);
+    }
+    return new ServerLogRecord(line, matcher.group(1),
+        matcher.group(2) == null ? -1 : Long.parseLong(matcher.group(2)),
+        matcher.group(3), matcher.group(4));
+  }
+
+  /** The whole line, as written by the server. */
+  public String getLine() {
+    return line;
+  }
+
+  /** The timestamp as the server wrote it, in its <tt>log_timezone</tt>. */
+  public Optional<String> getTimestamp() {
+    return Optional.ofNullable(timestamp);
+  }
+
+  /** The pid of the backend that wrote the line. */
+  public OptionalLong getPid() {
+    return pid < 0 ? OptionalLong.empty() : OptionalLong.of(pid);
+  }
+
+  /** The level, like <tt>LOG</tt>, <tt>ERROR</tt> or <tt>DETAIL</tt>. */
+  public Optional<String> getLevel() {
+    return Optional.ofNullable(level);
+  }
+
+  public String getMessage() {
+    return message;
+  }
+
+  @Override
+  public String toString() {
+    return line;
+  }
+}
@@ -0,0 +1,274 @@
+/*
+ * Copyright 2017, OnGres.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.ongres.pgdeploy.wrappers.serverlog;
+
+import com.google.common.base.Preconditions;
+import net.jcip.annotations.ThreadSafe;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+
+/** Follows a server log file, like the one given to <tt>pg_ctl -l</tt> or written by the logging
+ * collector, and hands its lines as {@link ServerLogRecord records} to its subscriptions.
+ *
+ * <p>The file is read incrementally from the last position read. When it is replaced by a new
+ * file, as log rotation does, the rest of the old file is read before following the new one, and
+ * when it is truncated it is read again from the start. Lines are only handed once they are
+ * complete. Reading starts from the start of the file with the first subscription.
+ *
+ * <p>Every subscription has a bounded queue. When any of them is full, the tailer stops reading
+ * until there is room, so that no record is lost: the log file itself holds the records that
+ * don't fit in the queues.
+ */
+@ThreadSafe
+public class ServerLogTailer implements Closeable {
+
+  private static final int bufferSize = 64 * 1024;
+
+  private final Path logFile;
+  private final long pollIntervalMillis;
+  private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+  private final Thread thread;
+  private volatile boolean closed;
+
+  // Only used by the tailer thread
+  private final ByteBuffer buffer = ByteBuffer.allocate(bufferSize);
+  private final ByteArrayOutputStream partialLine = new ByteArrayOutputStream();
+  private final Deque<ServerLogRecord> pending = new ArrayDeque<>();
+  private FileChannel channel;
+  private Object fileKey;
+  private long position;
+
+  /** Starts following <tt>logFile</tt>, which may not exist yet, looking for new lines every
+   * <tt>pollInterval</tt>.
+   */
+  public ServerLogTailer(@Nonnull Path logFile, @Nonnull Duration pollInterval) {
+    this.logFile = Preconditions.checkNotNull(logFile);
+    this.pollIntervalMillis = Math.max(1, pollInterval.toMillis());
+    this.thread = new Thread(this::run, "pgdeploy-log-tailer-" + logFile.getFileName());
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /** Subscribes to the lines not read yet.
+   * @param capacity The number of records the subscription holds before the tailer waits for
+   *                 them to be taken
+   */
+  public Subscription subscribe(int capacity) {
+    Preconditions.checkArgument(capacity > 0, "The capacity must be positive");
+    Preconditions.checkState(!closed, "The tailer is closed");
+
+    Subscription subscription = new Subscription(capacity);
+    subscriptions.add(subscription);
+    return subscription;
+  }
+
+  public Path getLogFile() {
+    return logFile;
+  }
+
+  @Override
+  public void close() {
+    closed = true;
+    thread.interrupt();
+    try {
+      thread.join(TimeUnit.SECONDS.toMillis(1));
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void run() {
+    try {
+      while (!closed) {
+        if (subscriptions.isEmpty() || !deliverPending()) {
+          Thread.sleep(pollIntervalMillis);
+          continue;
+        }
+        try {
+          if (!readAvailable()) {
+            Thread.sleep(pollIntervalMillis);
+          }
+        } catch (IOException ex) {
+          // Probably rotated while being read, it will be reopened
+          closeChannel();
+          Thread.sleep(pollIntervalMillis);
+        }
+      }
+    } catch (InterruptedException ex) {
+      // Closed
+    } finally {
+      closeChannel();
+    }
+  }
+
+  /** Delivers the pending records while every subscription has room.
+   * @return whether all the pending records were delivered
+   */
+  private boolean deliverPending() {
+    while (!pending.isEmpty()) {
+      // Subscribers only take records, so room is never lost meanwhile
+      for (Subscription subscription : subscriptions) {
+        if (subscription.queue.remainingCapacity() == 0) {
+          return false;
+        }
+      }
+      ServerLogRecord record = pending.poll();
+      for (Subscription subscription : subscriptions) {
+        subscription.queue.offer(record);
+      }
+    }
+    return true;
+  }
+
+  /** Reads what was appended since the last read, if anything.
+   * @return whether something was read
+   */
+  private boolean readAvailable() throws IOException {
+    BasicFileAttributes attributes;
+    try {
+      attributes = Files.readAttributes(logFile, BasicFileAttributes.class);
+    } catch (NoSuchFileException ex) {
+      // Rotated away, what was left in the old file is still read
+      return channel != null && read() > 0;
+    }
+
+    if (channel != null && !Objects.equals(fileKey, attributes.fileKey())) {
+      if (read() > 0) {
+        return true;
+      }
+      closeChannel();
+    }
+
+    if (channel == null) {
+      channel = FileChannel.open(logFile, StandardOpenOption.READ);
+      fileKey = attributes.fileKey();
+      position = 0;
+      partialLine.reset();
+    } else if (attributes.size() < position) {
+      // Truncated
+      position = 0;
+      partialLine.reset();
+    }
+
+    return read() > 0;
+  }
+
+  private int read() throws IOException {
+    buffer.clear();
+    int read = channel.read(buffer, position);
+    if (read <= 0) {
+      return 0;
+    }
+    position += read;
+    buffer.flip();
+
+    byte[] bytes = buffer.array();
+    int lineStart = 0;
+    for (int i = 0; i < buffer.limit(); i++) {
+      if (bytes[i] == '\n') {
+        partialLine.write(bytes, lineStart, i - lineStart);
+        addLine();
+        lineStart = i + 1;
+      }
+    }
+    partialLine.write(bytes, lineStart, buffer.limit() - lineStart);
+    return read;
+  }
+
+  private void addLine() {
+    String line = new String(partialLine.toByteArray(), StandardCharsets.UTF_8);
+    partialLine.reset();
+    if (line.endsWith("\r")) {
+      line = line.substring(0, line.length() - 1);
+    }
+    pending.add(ServerLogRecord.parse(line));
+  }
+
+  private void closeChannel() {
+    if (channel != null) {
+      try {
+        channel.close();
+      } catch (IOException ex) {
+        // Nothing else to read from it
+      }
+      channel = null;
+    }
+  }
+
+  /** The records of a {@link ServerLogTailer}, taken in the order they were written. Records
+   * that are not taken keep the tailer from reading further.
+   */
+  @ThreadSafe
+  public class Subscription implements Closeable {
+
+    private final BlockingQueue<ServerLogRecord> queue;
+
+    private Subscription(int capacity) {
+      this.queue = new ArrayBlockingQueue<>(capacity);
+    }
+
+    /** Takes the next record, waiting up to <tt>timeout</tt> for it. */
+    public Optional<ServerLogRecord> poll(long timeout, TimeUnit unit)
+        throws InterruptedException {
+      return Optional.ofNullable(queue.poll(timeout, unit));
+    }
+
+    /** Takes all the records available without waiting.
+     * @return the number of records taken
+     */
+    public int drainTo(@Nonnull Collection<? super ServerLogRecord> records) {
+      return queue.drainTo(records);
+    }
+
+    /** Stops receiving records. */
+    @Override
+    public void close() {
+      subscriptions.remove(this);
+    }
+  }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2017, OnGres.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.ongres.pgdeploy.wrappers;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class PostmasterPidWatcherTest {
+
+  private Path dataDirectory;
+  private Process postmaster;
+  private long postmasterPid;
+  private PostmasterPidWatcher watcher;
+  private final BlockingQueue<PgCtlWrapper.Status> events = new LinkedBlockingQueue<>();
+
+  @Before
+  public void setup() throws Exception {
+    dataDirectory = Files.createTempDirectory("pgdeploy-data");
+
+    // A process standing for the postmaster, which prints its own pid
+    postmaster = new ProcessBuilder("/bin/sh", "-c", "echo $$; exec sleep 60").start();
+    try (BufferedReader reader = new BufferedReader(
+        new InputStreamReader(postmaster.getInputStream(), StandardCharsets.UTF_8))) {
+      postmasterPid = Long.parseLong(reader.readLine().trim());
+    }
+
+    watcher = new PostmasterPidWatcher(Duration.ofMillis(100));
+    watcher.addListener((directory, status) -> events.add(status));
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    watcher.close();
+    postmaster.destroyForcibly().waitFor();
+    Files.deleteIfExists(dataDirectory.resolve(PostmasterPid.fileName));
+    Files.delete(dataDirectory);
+  }
+
+  @Test
+  public void readPidFile() throws Exception {
+    assertFalse(PostmasterPid.read(dataDirectory).isPresent());
+
+    writePidFile(postmasterPid, "ready   ");
+    PostmasterPid pid = PostmasterPid.read(dataDirectory).get();
+
+    assertEquals(postmasterPid, pid.getPid());
+    assertEquals(dataDirectory, pid.getDataDirectory());
+    assertEquals(1500000000L, pid.getStartTime());
+    assertEquals(5432, pid.getPort());
+    assertEquals(Optional.of("/tmp"), pid.getSocketDirectory());
+    assertEquals(Optional.of("localhost"), pid.getListenAddress());
+    assertEquals(Optional.of("ready"), pid.getState());
+    assertTrue(pid.isAlive());
+
+    Files.write(dataDirectory.resolve(PostmasterPid.fileName), Arrays.asList("123", "/data"));
+    assertFalse("Incomplete files are ignored", PostmasterPid.read(dataDirectory).isPresent());
+  }
+
+  @Test(timeout = 30000)
+  public void statusChangesArePushed() throws Exception {
+    assertEquals(PgCtlWrapper.Status.STOPPED, watcher.status(dataDirectory));
+
+    writePidFile(postmasterPid, "ready");
+    assertEquals(PgCtlWrapper.Status.ACTIVE, events.poll(10, TimeUnit.SECONDS));
+    assertEquals(PgCtlWrapper.Status.ACTIVE, watcher.status(dataDirectory));
+    assertEquals(postmasterPid, watcher.postmasterPid(dataDirectory).get().getPid());
+
+    Files.delete(dataDirectory.resolve(PostmasterPid.fileName));
+    assertEquals(PgCtlWrapper.Status.STOPPED, events.poll(10, TimeUnit.SECONDS));
+    assertEquals(PgCtlWrapper.Status.STOPPED, watcher.status(dataDirectory));
+  }
+
+  @Test(timeout = 30000)
+  public void deadPostmastersAreDetected() throws Exception {
+    writePidFile(postmasterPid, "ready");
+    assertEquals(PgCtlWrapper.Status.ACTIVE, watcher.status(dataDirectory));
+
+    // Killed without removing its pid file
+    postmaster.destroyForcibly().waitFor();
+
+    assertEquals(PgCtlWrapper.Status.STOPPED, events.poll(10, TimeUnit.SECONDS));
+    assertEquals(PgCtlWrapper.Status.STOPPED, watcher.status(dataDirectory));
+    assertTrue(Files.exists(dataDirectory.resolve(PostmasterPid.fileName)));
+  }
+
+  @Test(timeout = 30000)
+  public void stoppedClustersAreReadAgain() throws Exception {
+    Path pidFile = Files.createFile(dataDirectory.resolve(PostmasterPid.fileName));
+    assertEquals(PgCtlWrapper.Status.STOPPED, watcher.status(dataDirectory));
+
+    // Written through a link out of the data directory, which raises no event on it
+    Path otherDirectory = Files.createTempDirectory("pgdeploy-link");
+    Path link = Files.createLink(otherDirectory.resolve("pid"), pidFile);
+    try {
+      Files.write(link, Arrays.asList(Long.toString(postmasterPid), dataDirectory.toString(),
+          "1500000000", "5432", "/tmp", "localhost", "  5432001    163840", "ready"));
+
+      assertEquals(PgCtlWrapper.Status.ACTIVE, events.poll(10, TimeUnit.SECONDS));
+      assertEquals(PgCtlWrapper.Status.ACTIVE, watcher.status(dataDirectory));
+    } finally {
+      Files.delete(link);
+      Files.delete(otherDirectory);
+    }
+  }
+
+  private void writePidFile(long pid, String state) throws Exception {
+    Files.write(dataDirectory.resolve(PostmasterPid.fileName), Arrays.asList(
+        Long.toString(pid),
+        dataDirectory.toString(),
+        "1500000000",
+        "5432",
+        "/tmp",
+        "localhost",
+        "  5432001    163840",
+        state));
+  }
+}
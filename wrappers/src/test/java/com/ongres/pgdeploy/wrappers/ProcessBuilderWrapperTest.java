@@ -0,0 +1,128 @@
+/*
+ * Copyright 2017, OnGres.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.ongres.pgdeploy.wrappers;
+
+import com.ongres.pgdeploy.wrappers.exceptions.BadProcessExecutionException;
+import com.ongres.pgdeploy.wrappers.exceptions.ProcessTimeoutException;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ProcessBuilderWrapperTest {
+
+  private static final Path shell = Paths.get("/bin/sh");
+
+  private static ProcessResult sh(String script, Duration timeout) throws Exception {
+    return ProcessBuilderWrapper.runProcess(
+        shell, "sh not found", Arrays.asList("-c", script), "sh", timeout);
+  }
+
+  @Test(timeout = 30000)
+  public void bigOutputsDoNotBlockTheProcess() throws Exception {
+    // Several times the size of a pipe buffer, on both streams
+    ProcessResult result = sh("i=0; while [ $i -lt 20000 ]; do "
+        + "echo \"out line $i with some padding to make it longer\"; "
+        + "echo \"err line $i with some padding to make it longer\" >&2; "
+        + "i=$((i+1)); done", Duration.ofSeconds(20));
+
+    assertEquals(0, result.getExitCode());
+    assertTrue(result.getStdout().endsWith("out line 19999 with some padding to make it longer\n"));
+    assertTrue(result.getStderr().endsWith("err line 19999 with some padding to make it longer\n"));
+    assertTrue(result.getStdout().startsWith("out line "));
+    assertTrue(result.getStdout().length() <= 64 * 1024);
+  }
+
+  @Test
+  public void structuredResult() throws Exception {
+    ProcessResult result = sh("echo hello; echo world; echo warning >&2", Duration.ofSeconds(10));
+
+    assertEquals(0, result.getExitCode());
+    assertArrayEquals(new Object[] {"hello", "world"}, result.getStdoutLines().toArray());
+    assertEquals("warning\n", result.getStderr());
+    assertFalse(result.getDuration().isNegative());
+  }
+
+  @Test
+  public void failureReportsStderrFirst() throws Exception {
+    try {
+      sh("echo out; echo broken >&2; exit 3", Duration.ofSeconds(10));
+      fail("A non zero exit code must fail");
+    } catch (BadProcessExecutionException e) {
+      assertTrue(e.getMessage(), e.getMessage().endsWith("output:\nbroken"));
+    }
+
+    try {
+      sh("echo only stdout; exit 1", Duration.ofSeconds(10));
+      fail("A non zero exit code must fail");
+    } catch (BadProcessExecutionException e) {
+      assertTrue(e.getMessage(), e.getMessage().endsWith("output:\nonly stdout"));
+    }
+  }
+
+  @Test(timeout = 30000)
+  public void inheritedOutputsAreNotAwaited() throws Exception {
+    long start = System.nanoTime();
+    ProcessResult result = ProcessBuilderWrapper.runProcess(shell, "sh not found",
+        Arrays.asList("-c", "sleep 10 & echo started"), "sh", Duration.ofSeconds(20), true);
+
+    assertEquals("started\n", result.getStdout());
+    assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(10));
+  }
+
+  @Test(timeout = 30000)
+  public void timeoutKillsTheProcessTree() throws Exception {
+    Path pidFile = Files.createTempFile("pgdeploy-child", ".pid");
+    try {
+      sh("sleep 60 & echo $! > " + pidFile + "; echo started; wait", Duration.ofMillis(500));
+      fail("The process must time out");
+    } catch (ProcessTimeoutException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains("started"));
+    }
+
+    String childPid = new String(Files.readAllBytes(pidFile), "UTF-8").trim();
+    Path childProc = Paths.get("/proc", childPid);
+    for (int i = 0; i < 50 && isAlive(childProc); i++) {
+      TimeUnit.MILLISECONDS.sleep(100);
+    }
+    assertFalse("The child of the process must have been killed", isAlive(childProc));
+    Files.delete(pidFile);
+  }
+
+  private static boolean isAlive(Path proc) throws Exception {
+    if (!Files.exists(proc)) {
+      return false;
+    }
+    // A killed child not reaped yet is a zombie
+    String stat = new String(Files.readAllBytes(proc.resolve("stat")), "UTF-8");
+    return !stat.substring(stat.lastIndexOf(')') + 2).startsWith("Z");
+  }
+}
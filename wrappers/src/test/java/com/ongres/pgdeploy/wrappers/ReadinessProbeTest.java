@@ -0,0 +1,234 @@
+/*
+ * Copyright 2017, OnGres.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.ongres.pgdeploy.wrappers;
+
+import com.ongres.pgdeploy.wrappers.exceptions.BadProcessExecutionException;
+import com.ongres.pgdeploy.wrappers.exceptions.ProcessTimeoutException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ReadinessProbeTest {
+
+  private Path dataDirectory;
+  private Process postmaster;
+  private long postmasterPid;
+  private long launchEpochSecond;
+
+  @Before
+  public void setup() throws Exception {
+    dataDirectory = Files.createTempDirectory("pgdeploy-data");
+
+    // A process standing for the postmaster, which prints its own pid
+    postmaster = new ProcessBuilder("/bin/sh", "-c", "echo $$; exec sleep 60").start();
+    try (BufferedReader reader = new BufferedReader(
+        new InputStreamReader(postmaster.getInputStream(), StandardCharsets.UTF_8))) {
+      postmasterPid = Long.parseLong(reader.readLine().trim());
+    }
+
+    launchEpochSecond = Instant.now().getEpochSecond();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    postmaster.destroyForcibly().waitFor();
+    Files.deleteIfExists(dataDirectory.resolve(PostmasterPid.fileName));
+    Files.delete(dataDirectory);
+  }
+
+  @Test(timeout = 30000)
+  public void readyStateIsAwaited() throws Exception {
+    // Left by a former server, so it must not be taken as ready
+    writePidFile(launchEpochSecond - 60, 5432, "ready");
+
+    Thread server = new Thread(() -> {
+      try {
+        Thread.sleep(200);
+        writePidFile(launchEpochSecond, 5432, "starting");
+        Thread.sleep(200);
+        writePidFile(launchEpochSecond, 5432, "ready");
+      } catch (Exception ex) {
+        throw new AssertionError(ex);
+      }
+    });
+    server.start();
+
+    Duration timeToReady = ReadinessProbe.awaitReady(
+        dataDirectory, System.nanoTime(), launchEpochSecond, Duration.ofSeconds(20));
+    server.join();
+
+    assertTrue(timeToReady.toString(), timeToReady.compareTo(Duration.ofMillis(400)) >= 0);
+    assertTrue(timeToReady.toString(), timeToReady.compareTo(Duration.ofSeconds(20)) < 0);
+  }
+
+  @Test(timeout = 30000)
+  public void serversWithoutStateAreProbed() throws Exception {
+    try (ServerSocket socket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+      Thread server = serve(socket, 0);
+      writePidFile(launchEpochSecond, socket.getLocalPort(), null);
+
+      ReadinessProbe.awaitReady(
+          dataDirectory, System.nanoTime(), launchEpochSecond, Duration.ofSeconds(20));
+      server.join();
+    }
+  }
+
+  @Test(timeout = 30000)
+  public void serversStartingUpAreNotReady() throws Exception {
+    try (ServerSocket socket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+      Thread server = serve(socket, 3);
+      writePidFile(launchEpochSecond, socket.getLocalPort(), null);
+
+      ReadinessProbe.awaitReady(
+          dataDirectory, System.nanoTime(), launchEpochSecond, Duration.ofSeconds(20));
+      server.join();
+    }
+  }
+
+  @Test(timeout = 30000, expected = ProcessTimeoutException.class)
+  public void serversAlwaysStartingUpTimeOut() throws Exception {
+    try (ServerSocket socket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+      serve(socket, Integer.MAX_VALUE);
+      writePidFile(launchEpochSecond, socket.getLocalPort(), null);
+
+      ReadinessProbe.awaitReady(
+          dataDirectory, System.nanoTime(), launchEpochSecond, Duration.ofMillis(300));
+    }
+  }
+
+  @Test(timeout = 30000, expected = ProcessTimeoutException.class)
+  public void notReadyServersTimeOut() throws Exception {
+    writePidFile(launchEpochSecond, 5432, "starting");
+
+    ReadinessProbe.awaitReady(
+        dataDirectory, System.nanoTime(), launchEpochSecond, Duration.ofMillis(300));
+  }
+
+  @Test(timeout = 30000)
+  public void deadPostmastersFailTheStart() throws Exception {
+    writePidFile(launchEpochSecond, 5432, "starting");
+    postmaster.destroyForcibly().waitFor();
+
+    try {
+      ReadinessProbe.awaitReady(
+          dataDirectory, System.nanoTime(), launchEpochSecond, Duration.ofSeconds(20));
+      fail("The postmaster is not alive");
+    } catch (BadProcessExecutionException ex) {
+      assertFalse(ex instanceof ProcessTimeoutException);
+    }
+  }
+
+  @Test(timeout = 30000)
+  public void serversWithoutPidFileFailTheStart() throws Exception {
+    // Left by a former server, so it doesn't count as written by this one
+    writePidFile(launchEpochSecond - 60, 5432, "ready");
+
+    long launchNanos = System.nanoTime();
+    try {
+      ReadinessProbe.awaitReady(dataDirectory, launchNanos, launchEpochSecond,
+          Duration.ofSeconds(20), Duration.ofMillis(300));
+      fail("The server never wrote its pid file");
+    } catch (BadProcessExecutionException ex) {
+      assertFalse(ex instanceof ProcessTimeoutException);
+    }
+    Duration elapsed = Duration.ofNanos(System.nanoTime() - launchNanos);
+    assertTrue(elapsed.toString(), elapsed.compareTo(Duration.ofSeconds(20)) < 0);
+  }
+
+  /** Answers startup messages like a server starting up <tt>rejections</tt> times and then like a
+   * ready one asking for a password, until the socket is closed.
+   */
+  private static Thread serve(ServerSocket socket, int rejections) {
+    Thread server = new Thread(() -> {
+      try {
+        for (int connection = 0; ; connection++) {
+          try (Socket client = socket.accept()) {
+            DataInputStream input = new DataInputStream(client.getInputStream());
+            byte[] startup = new byte[input.readInt() - 4];
+            input.readFully(startup);
+            assertEquals(3 << 16, ByteBuffer.wrap(startup).getInt());
+
+            DataOutputStream output = new DataOutputStream(client.getOutputStream());
+            if (connection < rejections) {
+              byte[] fields = "SFATAL\0C57P03\0Mthe database system is starting up\0\0"
+                  .getBytes(StandardCharsets.UTF_8);
+              output.writeByte('E');
+              output.writeInt(4 + fields.length);
+              output.write(fields);
+            } else {
+              output.writeByte('R');
+              output.writeInt(8);
+              output.writeInt(3);
+            }
+            output.flush();
+            if (connection >= rejections) {
+              return;
+            }
+          }
+        }
+      } catch (IOException ex) {
+        // The socket was closed
+      }
+    });
+    server.setDaemon(true);
+    server.start();
+    return server;
+  }
+
+  private void writePidFile(long startTime, int port, String state) throws Exception {
+    List<String> lines = new ArrayList<>(Arrays.asList(
+        Long.toString(postmasterPid),
+        dataDirectory.toString(),
+        Long.toString(startTime),
+        Integer.toString(port),
+        "",
+        InetAddress.getLoopbackAddress().getHostAddress(),
+        "  5432001    163840"));
+    if (state != null) {
+      lines.add(state);
+    }
+    Files.write(dataDirectory.resolve(PostmasterPid.fileName), lines);
+  }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2017, OnGres.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.ongres.pgdeploy.wrappers.postgresqlconf;
+
+import com.ongres.pgdeploy.pgconfig.properties.Property;
+import com.ongres.pgdeploy.pgconfig.properties.PropertyValue;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link BasicUpdateLinesStrategy} against the former implementation when merging
+ * growing sets of properties into <tt>postgresql.conf</tt> files of growing sizes. The default
+ * file of PostgreSQL has around 800 lines.
+ *
+ * <p>Run it from the test classpath, e.g. with
+ * <tt>mvn -pl wrappers test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.ongres.pgdeploy.wrappers.postgresqlconf.BasicUpdateLinesStrategyBenchmark
+ * </tt>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BasicUpdateLinesStrategyBenchmark {
+
+  @Param({"800", "10000"})
+  private int lineCount;
+
+  @Param({"10", "300", "3000"})
+  private int newPropertyCount;
+
+  private List<String> lines;
+  private List<Map.Entry<Property, PropertyValue>> properties;
+
+  private final BasicUpdateLinesStrategy strategy = new BasicUpdateLinesStrategy();
+  private final LegacyUpdateLinesStrategy legacyStrategy = new LegacyUpdateLinesStrategy();
+
+  @Setup
+  public void setup() {
+    Random random = new Random(42);
+    // Around a third of the lines declare a property, commented or not
+    int propertyCount = Math.max(1, lineCount / 3);
+    lines = RandomConf.lines(random, lineCount, propertyCount);
+    properties = RandomConf.properties(random, newPropertyCount, propertyCount);
+  }
+
+  @Benchmark
+  public List<String> indexedMerge() {
+    return strategy.updateLines(lines, properties.stream());
+  }
+
+  @Benchmark
+  public List<String> scanPerProperty() {
+    return legacyStrategy.updateLines(lines, properties.stream());
+  }
+
+  public static void main(String[] args) throws Exception {
+    new Runner(new OptionsBuilder()
+        .include(BasicUpdateLinesStrategyBenchmark.class.getSimpleName())
+        .build())
+        .run();
+  }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2017, OnGres.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.ongres.pgdeploy.wrappers.postgresqlconf;
+
+import com.ongres.pgdeploy.pgconfig.properties.DataType;
+import com.ongres.pgdeploy.pgconfig.properties.Property;
+import com.ongres.pgdeploy.pgconfig.properties.PropertyValue;
+import com.ongres.pgdeploy.pgconfig.properties.Unit;
+import org.junit.Test;
+
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+
+public class BasicUpdateLinesStrategyTest {
+
+  private final BasicUpdateLinesStrategy strategy = new BasicUpdateLinesStrategy();
+  private final LegacyUpdateLinesStrategy legacyStrategy = new LegacyUpdateLinesStrategy();
+
+  @Test
+  public void sameOutputAsTheFormerImplementation() {
+    Random random = new Random(42);
+
+    for (int i = 0; i < 2000; i++) {
+      int propertyCount = 1 + random.nextInt(20);
+      List<String> lines = RandomConf.lines(random, random.nextInt(60), propertyCount);
+      List<Map.Entry<Property, PropertyValue>> properties =
+          RandomConf.properties(random, random.nextInt(40), propertyCount);
+
+      assertEquals("Merging " + properties + " into " + lines,
+          legacyStrategy.updateLines(lines, properties.stream()),
+          strategy.updateLines(lines, properties.stream()));
+    }
+  }
+
+  @Test
+  public void bigFiles() {
+    Random random = new Random(7);
+    List<String> lines = RandomConf.lines(random, 5000, 800);
+    List<Map.Entry<Property, PropertyValue>> properties = RandomConf.properties(random, 3000, 900);
+
+    assertEquals(legacyStrategy.updateLines(lines, properties.stream()),
+        strategy.updateLines(lines, properties.stream()));
+  }
+
+  @Test
+  public void policy() {
+    List<String> lines = Arrays.asList(
+        "# header",
+        "#a = 1",
+        "a = 2",
+        "#b = 3",
+        "c = 4",
+        "#d = 5");
+
+    List<String> merged = strategy.updateLines(lines, Stream.of(
+        entry("a", "5"), entry("b", "3"), entry("c", "4"), entry("d", "6"), entry("e", "7")));
+
+    assertEquals(
+        Arrays.asList("# header", "#a=2", "a=5", "b=3", "c=4", "#d=5", "d=6", "e=7"), merged);
+  }
+
+  private static Map.Entry<Property, PropertyValue> entry(String name, String value) {
+    return new AbstractMap.SimpleEntry<>(
+        new Property(name, false, DataType.STRING, Unit.noneList),
+        new PropertyValue<>(value, Unit.NONE));
+  }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2017, OnGres.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.ongres.pgdeploy.wrappers.postgresqlconf;
+
+import com.ongres.pgdeploy.pgconfig.PostgresConfig;
+import com.ongres.pgdeploy.pgconfig.properties.DataType;
+import com.ongres.pgdeploy.pgconfig.properties.Property;
+import com.ongres.pgdeploy.pgconfig.properties.Unit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class DropInConfBackendTest {
+
+  private Path directory;
+  private Path confFile;
+  private List<String> confLines = Arrays.asList("# comment", "port = 5432");
+
+  @Before
+  public void setup() throws Exception {
+    directory = Files.createTempDirectory("pgdeploy-conf");
+    confFile = directory.resolve("postgresql.conf");
+    Files.write(confFile, confLines);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    try (Stream<Path> paths = Files.walk(directory)) {
+      for (Path path : paths.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+        Files.delete(path);
+      }
+    }
+  }
+
+  @Test
+  public void confDirectory() throws Exception {
+    assertFalse(ConfBackend.dropIn().update(confFile, config("port", 5433)).isEmpty());
+
+    Path dropIn = directory.resolve("conf.d").resolve("pgdeploy.conf");
+    assertEquals(Arrays.asList("# comment", "port = 5432",
+        "include_if_exists = 'conf.d/pgdeploy.conf'"), Files.readAllLines(confFile));
+    assertEquals(Arrays.asList("# Managed by pgdeploy. Do not edit this file manually!",
+        "port = 5433"), Files.readAllLines(dropIn));
+
+    // Later updates only touch the drop-in file
+    Files.setLastModifiedTime(confFile, FileTime.fromMillis(0));
+    assertFalse(ConfBackend.dropIn().update(confFile, config("work_mem", 64)).isEmpty());
+    assertFalse(ConfBackend.dropIn().update(confFile, config("port", 5434)).isEmpty());
+
+    assertEquals(FileTime.fromMillis(0), Files.getLastModifiedTime(confFile));
+    assertEquals(Arrays.asList("# Managed by pgdeploy. Do not edit this file manually!",
+        "port = 5434", "work_mem = 64"), Files.readAllLines(dropIn));
+  }
+
+  @Test
+  public void unchangedDropInIsNotWritten() throws Exception {
+    assertFalse(ConfBackend.dropIn().update(confFile, config("port", 5433)).isEmpty());
+
+    Path dropIn = directory.resolve("conf.d").resolve("pgdeploy.conf");
+    Files.setLastModifiedTime(dropIn, FileTime.fromMillis(0));
+
+    assertTrue(ConfBackend.dropIn().update(confFile, config("port", 5433)).isEmpty());
+    assertEquals(FileTime.fromMillis(0), Files.getLastModifiedTime(dropIn));
+  }
+
+  @Test
+  public void includeIsWrittenBeforeTheDropIn() throws Exception {
+    // Makes the drop-in file fail to be written
+    Path confD = Files.createFile(directory.resolve("conf.d"));
+    try {
+      ConfBackend.dropIn().update(confFile, config("port", 5433));
+      fail("conf.d is not a directory");
+    } catch (IOException ex) {
+      assertTrue(Files.readAllLines(confFile)
+          .contains("include_if_exists = 'conf.d/pgdeploy.conf'"));
+    }
+
+    Files.delete(confD);
+    assertFalse(ConfBackend.dropIn().update(confFile, config("port", 5433)).isEmpty());
+
+    assertEquals(Arrays.asList("# comment", "port = 5432",
+        "include_if_exists = 'conf.d/pgdeploy.conf'"), Files.readAllLines(confFile));
+  }
+
+  @Test
+  public void autoConf() throws Exception {
+    Path autoConf = directory.resolve("postgresql.auto.conf");
+    Files.write(autoConf, Arrays.asList("# Do not edit this file manually!",
+        "# It will be overwritten by the ALTER SYSTEM command.",
+        "shared_buffers = '128MB'"));
+
+    assertFalse(ConfBackend.autoConf().update(confFile, config("port", 5433)).isEmpty());
+
+    assertEquals(confLines, Files.readAllLines(confFile));
+    assertEquals(Arrays.asList("# Do not edit this file manually!",
+        "# It will be overwritten by the ALTER SYSTEM command.",
+        "shared_buffers = '128MB'", "port = 5433"), Files.readAllLines(autoConf));
+  }
+
+  private static PostgresConfig config(String property, int value) throws Exception {
+    return new PostgresConfig.Builder(
+        name -> Optional.of(new Property(name, false, DataType.INTEGER, Unit.noneList)))
+        .withProperty(property, value)
+        .build();
+  }
+}
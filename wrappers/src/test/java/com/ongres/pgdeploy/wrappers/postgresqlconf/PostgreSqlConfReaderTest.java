@@ -0,0 +1,156 @@
+/*
+ * Copyright 2017, OnGres.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.ongres.pgdeploy.wrappers.postgresqlconf;
+
+import com.ongres.pgdeploy.pgconfig.DefaultPropertyParser;
+import com.ongres.pgdeploy.pgconfig.PostgresConfig;
+import com.ongres.pgdeploy.pgconfig.properties.PropertyValue;
+import com.ongres.pgdeploy.pgconfig.properties.Unit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class PostgreSqlConfReaderTest {
+
+  private Path directory;
+  private Path confFile;
+  private PostgreSqlConfReader reader;
+
+  @Before
+  public void setup() throws Exception {
+    directory = Files.createTempDirectory("pgdeploy-conf");
+    confFile = directory.resolve("postgresql.conf");
+    reader = new PostgreSqlConfReader(DefaultPropertyParser.getInstance());
+
+    Files.write(confFile, Arrays.asList(
+        "# A comment",
+        "",
+        "shared_buffers = 128MB\t\t# min 128kB",
+        "#work_mem = 4MB",
+        "port 5432",
+        "fsync = off",
+        "cursor_tuple_fraction = 0.5",
+        "log_line_prefix = '%m [%p] ''quoted'' '",
+        "DateStyle = 'iso, mdy'",
+        "my.custom = 'value'",
+        "include 'extra.conf'",
+        "include_if_exists 'missing.conf'",
+        "include_dir 'conf.d'"));
+    Files.write(directory.resolve("extra.conf"), Arrays.asList("port = 5433"));
+    Files.createDirectory(directory.resolve("conf.d"));
+    Files.write(directory.resolve("conf.d").resolve("01-first.conf"),
+        Arrays.asList("max_connections = 50", "work_mem = 8MB"));
+    Files.write(directory.resolve("conf.d").resolve("02-second.conf"),
+        Arrays.asList("max_connections = 60"));
+    Files.write(directory.resolve("conf.d").resolve("ignored.txt"),
+        Arrays.asList("max_connections = 70"));
+    Files.write(directory.resolve("postgresql.auto.conf"), Arrays.asList(
+        "# Do not edit this file manually!",
+        "fsync = 'on'"));
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    try (Stream<Path> paths = Files.walk(directory)) {
+      for (Path path : paths.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+        Files.delete(path);
+      }
+    }
+  }
+
+  @Test
+  public void effectiveValues() throws Exception {
+    Map<String, PropertyValue> values = asMap(reader.read(confFile));
+
+    assertEquals(new PropertyValue<>(128L, Unit.MB), values.get("shared_buffers"));
+    assertEquals(PropertyValue.from(5433L), values.get("port"));
+    assertEquals(PropertyValue.from(true), values.get("fsync"));
+    assertEquals(PropertyValue.from(0.5), values.get("cursor_tuple_fraction"));
+    assertEquals(PropertyValue.from("%m [%p] 'quoted' "), values.get("log_line_prefix"));
+    assertEquals(PropertyValue.from("iso, mdy"), values.get("DateStyle"));
+    assertEquals(PropertyValue.from("value"), values.get("my.custom"));
+    assertEquals(PropertyValue.from(60L), values.get("max_connections"));
+    assertEquals(new PropertyValue<>(8L, Unit.MB), values.get("work_mem"));
+    assertEquals(9, values.size());
+  }
+
+  @Test
+  public void readsAreCachedUntilAFileChanges() throws Exception {
+    PostgresConfig first = reader.read(confFile);
+    assertSame(first, reader.read(confFile));
+
+    Path included = directory.resolve("conf.d").resolve("02-second.conf");
+    Files.write(included, Arrays.asList("max_connections = 61"));
+    Files.setLastModifiedTime(included, FileTime.fromMillis(0));
+
+    PostgresConfig second = reader.read(confFile);
+    assertNotSame(first, second);
+    assertEquals(PropertyValue.from(61L), asMap(second).get("max_connections"));
+
+    Files.write(directory.resolve("missing.conf"), Arrays.asList("port = 6000"));
+    assertEquals(PropertyValue.from(6000L), asMap(reader.read(confFile)).get("port"));
+  }
+
+  @Test
+  public void valuesWithoutUnitAreInTheBaseUnit() throws Exception {
+    Files.write(confFile, Arrays.asList(
+        "shared_buffers = 16384",
+        "checkpoint_timeout = 300",
+        "work_mem = 4096",
+        "wal_buffers = -1",
+        "max_connections = 100"));
+
+    Map<String, PropertyValue> values = asMap(reader.read(confFile));
+
+    assertEquals(new PropertyValue<>(131072L, Unit.KB), values.get("shared_buffers"));
+    assertEquals(new PropertyValue<>(300L, Unit.S), values.get("checkpoint_timeout"));
+    assertEquals(new PropertyValue<>(4096L, Unit.KB), values.get("work_mem"));
+    assertEquals(PropertyValue.from(-1L), values.get("wal_buffers"));
+    assertEquals(PropertyValue.from(100L), values.get("max_connections"));
+  }
+
+  @Test(expected = IOException.class)
+  public void syntaxErrors() throws Exception {
+    Files.write(confFile, Arrays.asList("port = 5432 5433"));
+    reader.read(confFile);
+  }
+
+  private static Map<String, PropertyValue> asMap(PostgresConfig config) {
+    return config.asStream()
+        .collect(Collectors.toMap(entry -> entry.getKey().getName(), Map.Entry::getValue));
+  }
+}
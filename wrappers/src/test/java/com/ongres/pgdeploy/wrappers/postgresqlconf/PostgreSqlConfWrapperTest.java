@@ -0,0 +1,133 @@
+/*
+ * Copyright 2017, OnGres.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.ongres.pgdeploy.wrappers.postgresqlconf;
+
+import com.ongres.pgdeploy.pgconfig.PostgresConfig;
+import com.ongres.pgdeploy.pgconfig.properties.DataType;
+import com.ongres.pgdeploy.pgconfig.properties.Property;
+import com.ongres.pgdeploy.pgconfig.properties.Unit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class PostgreSqlConfWrapperTest {
+
+  private Path directory;
+  private Path confFile;
+
+  @Before
+  public void setup() throws Exception {
+    directory = Files.createTempDirectory("pgdeploy-conf");
+    confFile = directory.resolve("postgresql.conf");
+    Files.write(confFile, Arrays.asList("# comment", "port=5432", "#work_mem = 4MB"));
+    Files.setPosixFilePermissions(confFile, PosixFilePermissions.fromString("rw-------"));
+    Files.setLastModifiedTime(confFile, FileTime.fromMillis(0));
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    try (Stream<Path> files = Files.list(directory)) {
+      for (Path file : (Iterable<Path>) files::iterator) {
+        Files.delete(file);
+      }
+    }
+    Files.delete(directory);
+  }
+
+  @Test
+  public void unchangedFilesAreNotWritten() throws Exception {
+    assertTrue(PostgreSqlConfWrapper.updateConfFile(confFile, config("port", 5432)).isEmpty());
+
+    assertEquals(FileTime.fromMillis(0), Files.getLastModifiedTime(confFile));
+  }
+
+  @Test
+  public void trailingCommentsAreNotPartOfTheValue() throws Exception {
+    // As initdb writes them
+    Files.write(confFile, Arrays.asList(
+        "max_connections = 100\t\t\t# (change requires restart)",
+        "port = '5432'\t\t\t\t# (change requires restart)"));
+    Files.setLastModifiedTime(confFile, FileTime.fromMillis(0));
+
+    PostgresConfig config = new PostgresConfig.Builder(
+        name -> Optional.of(new Property(name, false, DataType.INTEGER, Unit.noneList)))
+        .withProperty("port", 5432)
+        .withProperty("max_connections", 100)
+        .build();
+
+    assertTrue(PostgreSqlConfWrapper.updateConfFile(confFile, config).isEmpty());
+    assertEquals(FileTime.fromMillis(0), Files.getLastModifiedTime(confFile));
+  }
+
+  @Test
+  public void changedFilesAreReplaced() throws Exception {
+    assertFalse(PostgreSqlConfWrapper.updateConfFile(confFile, config("port", 5433)).isEmpty());
+
+    assertEquals(Arrays.asList("# comment", "#port=5432", "port=5433", "#work_mem=4MB"),
+        Files.readAllLines(confFile));
+    assertEquals("rw-------",
+        PosixFilePermissions.toString(Files.getPosixFilePermissions(confFile)));
+    try (Stream<Path> files = Files.list(directory)) {
+      assertEquals("No temporary file must be left", 1, files.count());
+    }
+
+    assertTrue(PostgreSqlConfWrapper.updateConfFile(confFile, config("port", 5433)).isEmpty());
+  }
+
+  @Test
+  public void onlyChangedPropertiesAreReported() throws Exception {
+    PostgresConfig config = new PostgresConfig.Builder(
+        name -> Optional.of(new Property(name, false, DataType.INTEGER, Unit.noneList)))
+        .withProperty("port", 5432)
+        .withProperty("max_connections", 10)
+        .build();
+
+    Set<String> changed = PostgreSqlConfWrapper.updateConfFile(confFile, config).stream()
+        .map(Property::getName)
+        .collect(Collectors.toSet());
+
+    assertEquals(Collections.singleton("max_connections"), changed);
+  }
+
+  private static PostgresConfig config(String property, int value) throws Exception {
+    return new PostgresConfig.Builder(
+        name -> Optional.of(new Property(name, false, DataType.INTEGER, Unit.noneList)))
+        .withProperty(property, value)
+        .build();
+  }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2017, OnGres.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.ongres.pgdeploy.wrappers.postgresqlconf;
+
+import com.ongres.pgdeploy.pgconfig.properties.DataType;
+import com.ongres.pgdeploy.pgconfig.properties.Property;
+import com.ongres.pgdeploy.pgconfig.properties.PropertyValue;
+import com.ongres.pgdeploy.pgconfig.properties.Unit;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Generates <tt>postgresql.conf</tt> like files, with blank lines, comments, commented and
+ * repeated properties, and sets of new properties to merge into them. Values are taken from a
+ * small set so that the new values often match the current ones.
+ */
+class RandomConf {
+
+  private static final String[] values = {"on", "off", "10", "'x'"};
+
+  private RandomConf() {
+  }
+
+  static List<String> lines(Random random, int lineCount, int propertyCount) {
+    List<String> lines = new ArrayList<>(lineCount);
+    for (int i = 0; i < lineCount; i++) {
+      String name = name(random, propertyCount);
+      String value = value(random);
+      switch (random.nextInt(6)) {
+        case 0:
+          lines.add("");
+          break;
+        case 1:
+          lines.add("# Some comment about " + name);
+          break;
+        case 2:
+          lines.add("#" + name + " = " + value + "\t\t# default");
+          break;
+        case 3:
+          lines.add("# " + name + "=" + value);
+          break;
+        default:
+          lines.add(name + " = " + value);
+          break;
+      }
+    }
+    return lines;
+  }
+
+  static List<Map.Entry<Property, PropertyValue>> properties(
+      Random random, int count, int propertyCount) {
+    List<Map.Entry<Property, PropertyValue>> properties = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      properties.add(new AbstractMap.SimpleEntry<>(
+          new Property(name(random, propertyCount), false, DataType.STRING, Unit.noneList),
+          new PropertyValue<>(value(random), Unit.NONE)));
+    }
+    return properties;
+  }
+
+  private static String name(Random random, int propertyCount) {
+    return "property_" + random.nextInt(propertyCount);
+  }
+
+  private static String value(Random random) {
+    return values[random.nextInt(values.length)];
+  }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2017, OnGres.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.ongres.pgdeploy.wrappers.serverlog;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class ServerLogTailerTest {
+
+  private Path directory;
+  private Path logFile;
+  private ServerLogTailer tailer;
+
+  @Before
+  public void setup() throws Exception {
+    directory = Files.createTempDirectory("pgdeploy-log");
+    logFile = directory.resolve("server.log");
+    tailer = new ServerLogTailer(logFile, Duration.ofMillis(10));
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    tailer.close();
+    try (Stream<Path> files = Files.list(directory)) {
+      for (Path file : (Iterable<Path>) files::iterator) {
+        Files.delete(file);
+      }
+    }
+    Files.delete(directory);
+  }
+
+  @Test
+  public void parseDefaultPrefix() {
+    ServerLogRecord record = ServerLogRecord.parse(
+        "2017-10-18 10:00:00.123 UTC [1234] LOG:  database system is ready to accept connections");
+    assertEquals(Optional.of("2017-10-18 10:00:00.123 UTC"), record.getTimestamp());
+    assertEquals(OptionalLong.of(1234), record.getPid());
+    assertEquals(Optional.of("LOG"), record.getLevel());
+    assertEquals("database system is ready to accept connections", record.getMessage());
+
+    record = ServerLogRecord.parse("FATAL:  the database system is starting up");
+    assertFalse(record.getTimestamp().isPresent());
+    assertFalse(record.getPid().isPresent());
+    assertEquals(Optional.of("FATAL"), record.getLevel());
+    assertEquals("the database system is starting up", record.getMessage());
+
+    record = ServerLogRecord.parse("2017-10-18 10:00:00 CEST [99] app@db ERROR:  syntax error");
+    assertEquals(OptionalLong.of(99), record.getPid());
+    assertEquals(Optional.of("ERROR"), record.getLevel());
+
+    record = ServerLogRecord.parse("\tFROM pg_class");
+    assertFalse(record.getLevel().isPresent());
+    assertEquals("\tFROM pg_class", record.getMessage());
+  }
+
+  @Test(timeout = 30000)
+  public void appendedLinesAreHandedOnceComplete() throws Exception {
+    ServerLogTailer.Subscription subscription = tailer.subscribe(10);
+
+    append(logFile, "LOG:  first\nLOG:  sec");
+    assertEquals("first", next(subscription).getMessage());
+    assertFalse(subscription.poll(100, TimeUnit.MILLISECONDS).isPresent());
+
+    append(logFile, "ond\r\n");
+    assertEquals("second", next(subscription).getMessage());
+  }
+
+  @Test(timeout = 30000)
+  public void rotationAndTruncationAreFollowed() throws Exception {
+    ServerLogTailer.Subscription subscription = tailer.subscribe(10);
+
+    append(logFile, "LOG:  before rotation\n");
+    assertEquals("before rotation", next(subscription).getMessage());
+
+    Path rotated = directory.resolve("server.log.1");
+    Files.move(logFile, rotated);
+    append(rotated, "LOG:  late in the old file\n");
+    append(logFile, "LOG:  after rotation\n");
+
+    assertEquals("late in the old file", next(subscription).getMessage());
+    assertEquals("after rotation", next(subscription).getMessage());
+
+    Files.write(logFile, new byte[0], StandardOpenOption.TRUNCATE_EXISTING);
+    append(logFile, "LOG:  truncated\n");
+    assertEquals("truncated", next(subscription).getMessage());
+  }
+
+  @Test(timeout = 30000)
+  public void fullSubscriptionsHoldTheReading() throws Exception {
+    ServerLogTailer.Subscription slow = tailer.subscribe(2);
+    ServerLogTailer.Subscription fast = tailer.subscribe(100);
+
+    StringBuilder lines = new StringBuilder();
+    for (int i = 0; i < 50; i++) {
+      lines.append("LOG:  line ").append(i).append('\n');
+    }
+    append(logFile, lines.toString());
+
+    List<ServerLogRecord> records = new ArrayList<>();
+    for (int i = 0; i < 50; i++) {
+      records.add(next(slow));
+    }
+    for (int i = 0; i < 50; i++) {
+      assertEquals("line " + i, records.get(i).getMessage());
+      assertEquals("line " + i, next(fast).getMessage());
+    }
+  }
+
+  private static ServerLogRecord next(ServerLogTailer.Subscription subscription)
+      throws InterruptedException {
+    return subscription.poll(10, TimeUnit.SECONDS).get();
+  }
+
+  private static void append(Path file, String content) throws Exception {
+    Files.write(file, content.getBytes(StandardCharsets.UTF_8),
+        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+  }
+}